@@ -0,0 +1,47 @@
+package com.managelab.managelab.actions;
+
+import java.util.*;
+
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.servicios.*;
+
+/**
+ * Vuelve a calcular el plan con los datos actuales y aprueba sus reservas en
+ * una sola aprobacion masiva. Recalcular evita aplicar un plan viejo si
+ * alguien aprobo o rechazo algo mientras el dialogo estaba abierto.
+ */
+public class AplicarPlanAprobacionAction extends PlanAprobacionBaseAction {
+
+    @Override
+    public void execute() throws Exception {
+        List<PlanificadorAprobacion.Dia> plan = calcularPlan();
+        if (plan == null) return;
+
+        List<Long> ids = new ArrayList<>();
+        for (PlanificadorAprobacion.Dia dia : plan) ids.addAll(dia.getAprobar());
+        if (ids.isEmpty()) {
+            addWarning("El plan no tiene reservas para aprobar.");
+            return;
+        }
+
+        List<AprobacionMasiva.Resultado> resultados = new AprobacionMasiva().aprobar(ids);
+        XPersistence.commit();
+
+        int aprobadas = 0;
+        int errores = 0;
+        for (AprobacionMasiva.Resultado r : resultados) {
+            if (r.isAprobada()) {
+                aprobadas++;
+            } else if (errores++ < 20) {
+                addError("Reserva " + r.getId() + " " + r.getDescripcion() + ": " + r.getMotivo());
+            }
+        }
+        if (errores > 20) addError((errores - 20) + " reserva(s) mas no se pudieron aprobar.");
+
+        closeDialog();
+        if (aprobadas > 0) addMessage(aprobadas + " reserva(s) aprobada(s) segun el plan.");
+        getTab().deselectAll();
+        getTab().reset();
+    }
+}
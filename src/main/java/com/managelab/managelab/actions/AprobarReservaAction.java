@@ -5,8 +5,11 @@ import java.util.*;
 import org.openxava.actions.*;
 import org.openxava.jpa.*;
 
-import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.servicios.*;
 
+/**
+ * Aprueba todas las reservas seleccionadas en la lista en una sola transaccion.
+ */
 public class AprobarReservaAction extends TabBaseAction {
 
     @Override
@@ -14,73 +17,33 @@ public class AprobarReservaAction extends TabBaseAction {
 
         Map[] keys = getTab().getSelectedKeys();
         if (keys == null || keys.length == 0) {
-            addError("Debe seleccionar una reserva (marque el checkbox de la izquierda).");
+            addError("Debe seleccionar al menos una reserva (marque el checkbox de la izquierda).");
             return;
         }
 
-        Long id = (Long) keys[0].get("id");
-        Reserva reserva = XPersistence.getManager().find(Reserva.class, id);
-
-        if (reserva == null) { addError("Reserva no encontrada."); return; }
-        if (reserva.getEstadoReserva() != EstadoReserva.PENDIENTE) {
-            addError("Solo se pueden aprobar reservas PENDIENTES.");
-            return;
+        List<Long> ids = new ArrayList<>(keys.length);
+        for (Map key : keys) {
+            Long id = (Long) key.get("id");
+            if (id != null) ids.add(id);
         }
 
-        // Validar traslape SOLO aqu (fuera del callback)
-        validarTraslapeAlAprobar(reserva);
-
-        // Aprobar evitando que el callback dispare la query interna
-        reserva.setOmitirValidacionDisponibilidad(true);
-        reserva.setEstadoReserva(EstadoReserva.APROBADA);
-
-        XPersistence.getManager().merge(reserva);
+        List<AprobacionMasiva.Resultado> resultados = new AprobacionMasiva().aprobar(ids);
         XPersistence.commit();
 
-        addMessage("Reserva aprobada exitosamente.");
-        getTab().reset();
-    }
-
-    private void validarTraslapeAlAprobar(Reserva reserva) {
-
-        String q = "SELECT r FROM Reserva r " +
-                "WHERE r.laboratorio.id = :labId " +
-                "AND r.fecha = :fecha " +
-                "AND r.estadoReserva = :estadoAprobada " +
-                "AND r.id <> :idActual";
-
-        @SuppressWarnings("unchecked")
-        List<Reserva> aprobadas = XPersistence.getManager()
-                .createQuery(q)
-                .setParameter("labId", reserva.getLaboratorio().getId())
-                .setParameter("fecha", reserva.getFecha())
-                .setParameter("estadoAprobada", EstadoReserva.APROBADA)
-                .setParameter("idActual", reserva.getId())
-                .getResultList();
-
-        int inicio = toMinutesOrFail(reserva.getHoraInicio(), "horaInicio");
-        int fin = toMinutesOrFail(reserva.getHoraFin(), "horaFin");
-
-        for (Reserva r : aprobadas) {
-            int rInicio = toMinutesOrFail(r.getHoraInicio(), "horaInicio existente");
-            int rFin = toMinutesOrFail(r.getHoraFin(), "horaFin existente");
-            if (rInicio < fin && rFin > inicio) {
-                throw new javax.validation.ValidationException(
-                        "No se puede aprobar: ya existe una reserva aprobada que se traslapa en ese horario."
-                );
+        int aprobadas = 0;
+        for (AprobacionMasiva.Resultado r : resultados) {
+            if (r.isAprobada()) {
+                aprobadas++;
+            } else {
+                addError("Reserva " + r.getId() + " " + r.getDescripcion() + ": " + r.getMotivo());
             }
         }
-    }
 
-    private int toMinutesOrFail(String h, String campo) {
-        try {
-            String[] parts = h.trim().split(":");
-            int hh = Integer.parseInt(parts[0]);
-            int mm = Integer.parseInt(parts[1]);
-            if (hh < 0 || hh > 23 || mm < 0 || mm > 59) throw new IllegalArgumentException();
-            return hh * 60 + mm;
-        } catch (Exception ex) {
-            throw new javax.validation.ValidationException("Formato invalido en " + campo + ". Use HH:mm (ej: 09:30)");
+        if (aprobadas > 0) {
+            addMessage(aprobadas == 1 ? "Reserva aprobada exitosamente."
+                                      : aprobadas + " reservas aprobadas exitosamente.");
         }
+        getTab().deselectAll();
+        getTab().reset();
     }
 }
@@ -0,0 +1,32 @@
+package com.managelab.managelab.actions;
+
+import org.openxava.actions.*;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.servicios.*;
+
+/**
+ * Aprueba de una vez todas las reservas PENDIENTES de la serie en pantalla.
+ */
+public class AprobarSerieAction extends ViewBaseAction {
+
+    @Override
+    public void execute() throws Exception {
+        Long id = (Long) getView().getKeyValues().get("id");
+
+        if (id == null) {
+            addError("Debe seleccionar una serie");
+            return;
+        }
+
+        int aprobadas = new SeriesReserva().aprobar(id);
+        XPersistence.commit();
+
+        if (aprobadas == 0) {
+            addWarning("La serie no tiene reservas PENDIENTES que se puedan aprobar");
+        } else {
+            addMessage(aprobadas + " reserva(s) de la serie aprobada(s)");
+        }
+        getView().refresh();
+    }
+}
@@ -0,0 +1,19 @@
+package com.managelab.managelab.actions;
+
+import org.openxava.actions.*;
+
+import com.managelab.managelab.procesos.*;
+
+/**
+ * Revisa todas las reservas aprobadas y lista las que se traslapan.
+ */
+public class AuditarTraslapesAction extends TabBaseAction {
+
+    @Override
+    public void execute() throws Exception {
+        int traslapes = new AuditoriaTraslapes().ejecutar();
+        if (traslapes == 0) addMessage("No hay reservas aprobadas que se traslapen.");
+        else addWarning("Se encontraron " + traslapes + " traslape(s) entre reservas aprobadas.");
+        getTab().reset();
+    }
+}
@@ -0,0 +1,23 @@
+package com.managelab.managelab.actions;
+
+import java.time.*;
+
+import org.openxava.actions.*;
+
+/**
+ * Abre el dialogo de busqueda de huecos libres.
+ */
+public class BuscarHorarioLibreAction extends ViewBaseAction {
+
+    @Override
+    public void execute() throws Exception {
+        showDialog();
+        getView().setTitle("Buscar horario libre");
+        getView().setModelName("BusquedaHorarioLibre");
+        getView().setValue("desde", LocalDate.now());
+        getView().setValue("hasta", LocalDate.now().plusDays(7));
+        getView().setValue("duracionMinutos", 60);
+        getView().setValue("cantidad", 10);
+        setControllers("BusquedaHorarioLibre");
+    }
+}
@@ -0,0 +1,23 @@
+package com.managelab.managelab.actions;
+
+import java.time.*;
+
+import org.openxava.actions.*;
+
+import com.managelab.managelab.modelo.*;
+
+/**
+ * Abre el dialogo de busqueda de laboratorios libres.
+ */
+public class BuscarLaboratorioLibreAction extends ViewBaseAction {
+
+    @Override
+    public void execute() throws Exception {
+        showDialog();
+        getView().setTitle("Buscar laboratorio libre");
+        getView().setModelName("BusquedaLaboratorioLibre");
+        getView().setValue("fecha", LocalDate.now());
+        getView().setValue("ordenarPor", OrdenLaboratorios.NOMBRE);
+        setControllers("BusquedaLaboratorioLibre");
+    }
+}
@@ -0,0 +1,44 @@
+package com.managelab.managelab.actions;
+
+import java.util.*;
+
+import com.managelab.managelab.servicios.*;
+
+/**
+ * Calcula el plan y lo muestra en el dialogo sin aprobar nada, para poder
+ * revisarlo o cambiar el rango y el criterio antes de aplicarlo.
+ */
+public class CalcularPlanAprobacionAction extends PlanAprobacionBaseAction {
+
+    private static final int MAXIMO_LINEAS = 200;
+
+    @Override
+    public void execute() throws Exception {
+        List<PlanificadorAprobacion.Dia> plan = calcularPlan();
+        if (plan == null) return;
+
+        int pendientes = 0;
+        int aprobar = 0;
+        StringBuilder detalle = new StringBuilder();
+        int lineas = 0;
+        for (PlanificadorAprobacion.Dia dia : plan) {
+            pendientes += dia.getPendientes();
+            aprobar += dia.getAprobar().size();
+            if (lineas++ < MAXIMO_LINEAS) {
+                detalle.append(dia.getClave().getFechaSql()).append(' ').append(dia.getLaboratorio())
+                    .append(": ").append(dia.getAprobar().size()).append(" de ").append(dia.getPendientes())
+                    .append(' ').append(dia.getAprobar()).append('\n');
+            }
+        }
+        if (lineas > MAXIMO_LINEAS) detalle.append("... y ").append(lineas - MAXIMO_LINEAS).append(" dia(s) mas\n");
+
+        if (plan.isEmpty()) {
+            getView().setValue("resumen", null);
+            addWarning("No hay reservas PENDIENTES en ese rango de fechas.");
+            return;
+        }
+        getView().setValue("resumen", "Se aprobarian " + aprobar + " de " + pendientes
+            + " reserva(s) PENDIENTE(S) en " + plan.size() + " dia(s).\n" + detalle);
+        addMessage("Plan calculado: " + aprobar + " de " + pendientes + " reserva(s). Pulse aplicar para aprobarlas.");
+    }
+}
@@ -0,0 +1,40 @@
+package com.managelab.managelab.actions;
+
+import java.time.*;
+import java.util.*;
+
+import org.openxava.actions.*;
+
+import com.managelab.managelab.servicios.*;
+
+/**
+ * Muestra los primeros huecos libres que cumplen lo pedido en el dialogo.
+ * El dialogo queda abierto para poder afinar la busqueda.
+ */
+public class ConfirmarBusquedaHorarioLibreAction extends ViewBaseAction {
+
+    @Override
+    public void execute() throws Exception {
+        Long laboratorioId = (Long) getView().getValue("laboratorio.id");
+        LocalDate desde = (LocalDate) getView().getValue("desde");
+        LocalDate hasta = (LocalDate) getView().getValue("hasta");
+        Integer duracion = (Integer) getView().getValue("duracionMinutos");
+        Integer cantidad = (Integer) getView().getValue("cantidad");
+
+        if (duracion == null || cantidad == null) {
+            addError("Indique la duracion y la cantidad de huecos a buscar.");
+            return;
+        }
+
+        List<BuscadorHorarios.Hueco> huecos =
+            new BuscadorHorarios().buscar(laboratorioId, desde, hasta, duracion, cantidad);
+
+        if (huecos.isEmpty()) {
+            addWarning("No hay huecos libres de " + duracion + " minutos en ese rango de fechas.");
+            return;
+        }
+        for (BuscadorHorarios.Hueco hueco : huecos) {
+            addMessage("Libre: " + hueco);
+        }
+    }
+}
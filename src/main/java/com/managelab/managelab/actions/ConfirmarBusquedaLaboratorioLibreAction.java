@@ -0,0 +1,42 @@
+package com.managelab.managelab.actions;
+
+import java.time.*;
+import java.util.*;
+
+import org.openxava.actions.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.servicios.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Lista los laboratorios activos libres en la ventana pedida en el dialogo.
+ */
+public class ConfirmarBusquedaLaboratorioLibreAction extends ViewBaseAction {
+
+    @Override
+    public void execute() throws Exception {
+        LocalDate fecha = (LocalDate) getView().getValue("fecha");
+        String horaInicio = getView().getValueString("horaInicio");
+        String horaFin = getView().getValueString("horaFin");
+        OrdenLaboratorios orden = (OrdenLaboratorios) getView().getValue("ordenarPor");
+
+        if (horaInicio == null || horaInicio.trim().isEmpty() || horaFin == null || horaFin.trim().isEmpty()) {
+            addError("Indique la hora inicio y la hora fin.");
+            return;
+        }
+        int inicio = Horas.aMinutos(horaInicio, "horaInicio");
+        int fin = Horas.aMinutos(horaFin, "horaFin");
+
+        List<BuscadorLaboratorios.LaboratorioLibre> libres =
+            new BuscadorLaboratorios().buscarLibres(fecha, inicio, fin, orden);
+
+        if (libres.isEmpty()) {
+            addWarning("No hay laboratorios libres el " + fecha + " de " + Horas.formato(inicio) + " a " + Horas.formato(fin) + ".");
+            return;
+        }
+        for (BuscadorLaboratorios.LaboratorioLibre lab : libres) {
+            addMessage("Libre: " + lab.getCodigo() + " - " + lab.getNombre() + " (" + lab.getUbicacion() + ")");
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.managelab.managelab.actions;
+
+import java.util.*;
+
+import org.openxava.actions.*;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.servicios.*;
+
+/**
+ * Rechaza las reservas seleccionadas con el motivo escrito en el dialogo.
+ */
+public class ConfirmarRechazoReservasAction extends TabBaseAction {
+
+    @Override
+    public void execute() throws Exception {
+
+        String motivo = getView().getValueString("motivoRechazo");
+        if (motivo == null || motivo.trim().isEmpty()) {
+            addError("Debe indicar el motivo de rechazo.");
+            return;
+        }
+
+        Map[] keys = getTab().getSelectedKeys();
+        List<Long> ids = new ArrayList<>();
+        if (keys != null) {
+            for (Map key : keys) {
+                Long id = (Long) key.get("id");
+                if (id != null) ids.add(id);
+            }
+        }
+        if (ids.isEmpty()) {
+            addError("No se pudo obtener el id de las reservas seleccionadas.");
+            return;
+        }
+
+        RechazoMasivo.Resultado resultado = new RechazoMasivo().rechazar(ids, motivo.trim());
+        XPersistence.commit();
+
+        closeDialog();
+        if (resultado.getRechazadas() > 0) {
+            addMessage(resultado.getRechazadas() + " reserva(s) rechazada(s).");
+        }
+        if (resultado.getOmitidas() > 0) {
+            addWarning(resultado.getOmitidas() + " reserva(s) omitida(s): solo se pueden rechazar reservas PENDIENTES.");
+        }
+        getTab().deselectAll();
+        getTab().reset();
+    }
+}
@@ -0,0 +1,34 @@
+package com.managelab.managelab.actions;
+
+import org.openxava.actions.*;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.servicios.*;
+
+/**
+ * Rechaza las reservas PENDIENTES de la serie con el motivo escrito en el dialogo.
+ */
+public class ConfirmarRechazoSerieAction extends ViewBaseAction {
+
+    @Override
+    public void execute() throws Exception {
+
+        String motivo = getView().getValueString("motivoRechazo");
+        if (motivo == null || motivo.trim().isEmpty()) {
+            addError("Debe indicar el motivo de rechazo.");
+            return;
+        }
+
+        Long id = (Long) getPreviousView().getKeyValues().get("id");
+        int rechazadas = new SeriesReserva().rechazar(id, motivo.trim());
+        XPersistence.commit();
+
+        closeDialog();
+        if (rechazadas == 0) {
+            addWarning("La serie no tiene reservas PENDIENTES");
+        } else {
+            addMessage(rechazadas + " reserva(s) de la serie rechazada(s).");
+        }
+        getView().refresh();
+    }
+}
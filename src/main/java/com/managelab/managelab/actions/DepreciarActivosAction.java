@@ -0,0 +1,23 @@
+package com.managelab.managelab.actions;
+
+import org.openxava.actions.*;
+
+import com.managelab.managelab.procesos.*;
+
+/**
+ * Deprecia todos los activos en una corrida (o retoma la que quedo a medias).
+ */
+public class DepreciarActivosAction extends TabBaseAction {
+
+    @Override
+    public void execute() throws Exception {
+        DepreciacionMasiva.Resultado r = new DepreciacionMasiva().ejecutar();
+        if (r.isReanudada()) addMessage("Se retomo la depreciacion del " + r.getFechaCalculo() + " que habia quedado a medias.");
+        addMessage(String.format("Depreciacion del %s: %d activo(s) en %.1f s (%.0f filas/s).",
+            r.getFechaCalculo(), r.getProcesados(), r.getSegundos(), r.getFilasPorSegundo()));
+        if (r.getOmitidos() > 0) {
+            addWarning(r.getOmitidos() + " activo(s) omitido(s) por no tener costo, vida util o fecha de adquisicion.");
+        }
+        getTab().reset();
+    }
+}
@@ -0,0 +1,36 @@
+package com.managelab.managelab.actions;
+
+import org.openxava.actions.*;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.servicios.*;
+
+/**
+ * Crea todas las reservas de la serie en pantalla, o ninguna si alguna fecha
+ * tiene conflicto de horario.
+ */
+public class GenerarReservasSerieAction extends ViewBaseAction {
+
+    @Override
+    public void execute() throws Exception {
+        Long id = (Long) getView().getKeyValues().get("id");
+
+        if (id == null) {
+            addError("Grabe la serie antes de generar sus reservas");
+            return;
+        }
+
+        int generadas;
+        try {
+            generadas = new SeriesReserva().generar(id);
+        } catch (javax.validation.ValidationException ex) {
+            XPersistence.rollback();
+            addError(ex.getMessage());
+            return;
+        }
+        XPersistence.commit();
+
+        addMessage(generadas + " reserva(s) generada(s) en estado PENDIENTE");
+        getView().refresh();
+    }
+}
@@ -0,0 +1,54 @@
+package com.managelab.managelab.actions;
+
+import org.openxava.actions.*;
+import org.openxava.jpa.*;
+import org.openxava.util.*;
+
+import com.managelab.managelab.servicios.*;
+
+/**
+ * Guardar de Reserva con idempotencia: si el alta ya se hizo con la clave
+ * oculta del formulario (reenvio por una conexion que se corto), avisa y
+ * deja el formulario listo para otra, sin validar ni insertar de nuevo. Si
+ * dos envios llegan a la vez, el segundo falla la validacion contra la
+ * reserva del primero; entonces se busca otra vez la clave y se responde
+ * como reenvio en lugar de mostrar el traslape.
+ */
+public class GuardarReservaAction extends SaveAction {
+
+    @Override
+    public void execute() throws Exception {
+        String clave = getView().getValueString("claveSolicitud");
+        boolean alta = getView().getValue("id") == null;
+        if (!alta || clave == null || clave.trim().isEmpty()) {
+            super.execute();
+            return;
+        }
+
+        Long previa = Idempotencia.buscar(Users.getCurrent(), clave);
+        if (previa != null) {
+            addMessage("La reserva " + previa + " ya se habia guardado con este formulario; no se creo otra.");
+            getView().reset();
+            return;
+        }
+
+        boolean limpiar = isResetAfter();
+        setResetAfter(false);
+        super.execute();
+        setResetAfter(limpiar);
+        if (getErrors().contains()) {
+            // Un envio doble espera el bloqueo del horario y choca con la reserva del primero
+            XPersistence.rollback();
+            previa = Idempotencia.buscar(Users.getCurrent(), clave);
+            if (previa == null) return;
+            getErrors().removeAll();
+            addMessage("La reserva " + previa + " ya se habia guardado con este formulario; no se creo otra.");
+            getView().reset();
+            return;
+        }
+
+        Long id = (Long) getView().getValue("id");
+        if (id != null) Idempotencia.registrar(Users.getCurrent(), clave, id);
+        if (limpiar) getView().reset();
+    }
+}
@@ -0,0 +1,28 @@
+package com.managelab.managelab.actions;
+
+import java.util.*;
+
+import org.openxava.actions.*;
+import org.openxava.util.*;
+
+import com.managelab.managelab.servicios.*;
+
+/**
+ * Al abrir la bandeja de aprobacion muestra cuantas reservas PENDIENTES tiene
+ * el usuario en sus laboratorios, leido de los contadores (sin contar Reserva).
+ */
+public class MostrarPendientesAction extends TabBaseAction {
+
+    @Override
+    public void execute() throws Exception {
+        List<Long> laboratorios = PendientesLaboratorios.laboratoriosDe(Users.getCurrent());
+        if (laboratorios.isEmpty()) {
+            addWarning("No es responsable de ningun laboratorio; la bandeja estara vacia.");
+            return;
+        }
+        int total = 0;
+        for (int pendientes : PendientesLaboratorios.contar(laboratorios).values()) total += pendientes;
+        if (total == 0) addMessage("No tiene reservas pendientes de aprobar.");
+        else addMessage("Tiene " + total + " reserva(s) pendiente(s) de aprobar.");
+    }
+}
@@ -0,0 +1,49 @@
+package com.managelab.managelab.actions;
+
+import java.time.*;
+import java.util.*;
+
+import org.openxava.actions.*;
+import org.openxava.util.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.servicios.*;
+
+/**
+ * Calculo del plan de aprobacion comun a calcular y aplicar. Desde la bandeja
+ * (propiedad bandeja = true) el plan se limita a los laboratorios del
+ * responsable actual y no admite otro laboratorio.
+ */
+public abstract class PlanAprobacionBaseAction extends TabBaseAction {
+
+    private boolean bandeja;
+
+    public boolean isBandeja() { return bandeja; }
+    public void setBandeja(boolean bandeja) { this.bandeja = bandeja; }
+
+    /**
+     * Plan con los datos del dialogo, o null si faltan datos o el laboratorio
+     * no esta permitido (ya se anadio el error).
+     */
+    protected List<PlanificadorAprobacion.Dia> calcularPlan() {
+        LocalDate desde = (LocalDate) getView().getValue("desde");
+        LocalDate hasta = (LocalDate) getView().getValue("hasta");
+        CriterioPlan criterio = (CriterioPlan) getView().getValue("criterio");
+        if (desde == null || hasta == null || criterio == null) {
+            addError("Indique el rango de fechas y el criterio.");
+            return null;
+        }
+        Long laboratorioId = (Long) getView().getValue("laboratorio.id");
+        Collection<Long> laboratorios = laboratorioId == null ? null : Collections.singletonList(laboratorioId);
+        if (bandeja) {
+            List<Long> propios = PendientesLaboratorios.laboratoriosDe(Users.getCurrent());
+            if (laboratorioId == null) {
+                laboratorios = propios;
+            } else if (!propios.contains(laboratorioId)) {
+                addError("Solo puede planificar los laboratorios de los que es responsable.");
+                return null;
+            }
+        }
+        return new PlanificadorAprobacion().calcular(laboratorios, desde, hasta, criterio);
+    }
+}
@@ -0,0 +1,31 @@
+package com.managelab.managelab.actions;
+
+import java.time.*;
+
+import org.openxava.actions.*;
+
+import com.managelab.managelab.modelo.*;
+
+/**
+ * Abre el dialogo del plan automatico de aprobacion de reservas PENDIENTES.
+ * Desde la bandeja (propiedad bandeja = true) usa los controladores que
+ * limitan el plan a los laboratorios del responsable.
+ */
+public class PlanificarAprobacionAction extends ViewBaseAction {
+
+    private boolean bandeja;
+
+    public boolean isBandeja() { return bandeja; }
+    public void setBandeja(boolean bandeja) { this.bandeja = bandeja; }
+
+    @Override
+    public void execute() throws Exception {
+        showDialog();
+        getView().setTitle("Planificar aprobacion");
+        getView().setModelName("PlanAprobacion");
+        getView().setValue("desde", LocalDate.now());
+        getView().setValue("hasta", LocalDate.now().plusDays(7));
+        getView().setValue("criterio", CriterioPlan.CANTIDAD);
+        setControllers(bandeja ? "PlanAprobacionBandeja" : "PlanAprobacion");
+    }
+}
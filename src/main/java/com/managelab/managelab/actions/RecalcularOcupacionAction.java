@@ -0,0 +1,18 @@
+package com.managelab.managelab.actions;
+
+import org.openxava.actions.*;
+
+import com.managelab.managelab.procesos.*;
+
+/**
+ * Rehace el resumen de ocupacion desde las reservas aprobadas.
+ */
+public class RecalcularOcupacionAction extends TabBaseAction {
+
+    @Override
+    public void execute() throws Exception {
+        int horas = new RecalculoOcupacion().ejecutar();
+        addMessage("Resumen de ocupacion recalculado: " + horas + " hora(s) con reservas aprobadas.");
+        getTab().reset();
+    }
+}
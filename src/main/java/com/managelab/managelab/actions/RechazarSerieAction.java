@@ -0,0 +1,23 @@
+package com.managelab.managelab.actions;
+
+import org.openxava.actions.*;
+
+/**
+ * Abre el dialogo para escribir el motivo con el que se rechazaran
+ * las reservas PENDIENTES de la serie en pantalla.
+ */
+public class RechazarSerieAction extends ViewBaseAction {
+
+    @Override
+    public void execute() throws Exception {
+        if (getView().getKeyValues().get("id") == null) {
+            addError("Debe seleccionar una serie");
+            return;
+        }
+
+        showDialog();
+        getView().setTitle("Rechazar reservas de la serie");
+        getView().setModelName("RechazoReservas");
+        setControllers("RechazoSerie");
+    }
+}
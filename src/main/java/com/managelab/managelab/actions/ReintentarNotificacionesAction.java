@@ -0,0 +1,49 @@
+package com.managelab.managelab.actions;
+
+import java.util.*;
+
+import org.openxava.actions.*;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+
+/**
+ * Vuelve a poner en cola las notificaciones FALLIDAS seleccionadas.
+ */
+public class ReintentarNotificacionesAction extends TabBaseAction {
+
+    @Override
+    public void execute() throws Exception {
+
+        Map[] keys = getTab().getSelectedKeys();
+        List<Long> ids = new ArrayList<>();
+        if (keys != null) {
+            for (Map key : keys) {
+                Long id = (Long) key.get("id");
+                if (id != null) ids.add(id);
+            }
+        }
+        if (ids.isEmpty()) {
+            addError("Debe seleccionar al menos una notificacion.");
+            return;
+        }
+
+        int reintentadas = XPersistence.getManager()
+            .createQuery(
+                "UPDATE NotificacionCorreo n SET n.estado = :pendiente, n.intentos = 0, n.proximoIntento = :ahora " +
+                "WHERE n.id IN :ids AND n.estado = :fallida")
+            .setParameter("pendiente", EstadoNotificacion.PENDIENTE)
+            .setParameter("ahora", new Date())
+            .setParameter("ids", ids)
+            .setParameter("fallida", EstadoNotificacion.FALLIDA)
+            .executeUpdate();
+        XPersistence.commit();
+
+        addMessage(reintentadas + " notificacion(es) en cola de nuevo.");
+        if (reintentadas < ids.size()) {
+            addWarning((ids.size() - reintentadas) + " omitida(s): solo se reintentan las FALLIDAS.");
+        }
+        getTab().deselectAll();
+        getTab().reset();
+    }
+}
@@ -0,0 +1,39 @@
+package com.managelab.managelab.actions;
+
+import org.openxava.actions.*;
+import org.openxava.tab.*;
+import org.openxava.util.*;
+
+import com.managelab.managelab.servicios.*;
+
+/**
+ * Despues de cada peticion de la bandeja pone TotalPendientesTableModel sobre
+ * la lista, para que el total salga de los contadores y no de un COUNT(*).
+ * Si el usuario ha filtrado la lista se deja el total normal de OpenXava.
+ */
+public class TotalPendientesAction extends TabBaseAction {
+
+    @Override
+    public void execute() throws Exception {
+        Tab tab = getTab();
+        boolean contadores = tab.getTableModel() instanceof TotalPendientesTableModel;
+        if (filtrada(tab)) {
+            if (contadores) tab.setTableModel(null);
+        }
+        else if (!contadores) {
+            tab.setTableModel(new TotalPendientesTableModel(tab.getTableModel(), Users.getCurrent()));
+        }
+    }
+
+    private boolean filtrada(Tab tab) {
+        return conValor(tab.getConditionValues()) || conValor(tab.getConditionValuesTo());
+    }
+
+    private boolean conValor(String[] valores) {
+        if (valores == null) return false;
+        for (String valor : valores) {
+            if (valor != null && !valor.trim().isEmpty()) return true;
+        }
+        return false;
+    }
+}
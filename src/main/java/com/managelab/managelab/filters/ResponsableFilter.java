@@ -0,0 +1,24 @@
+package com.managelab.managelab.filters;
+
+import java.util.*;
+
+import org.openxava.filters.*;
+import org.openxava.util.*;
+
+/**
+ * Pone el usuario actual al principio de los argumentos, para compararlo con
+ * el email (unico) del responsable.
+ */
+public class ResponsableFilter implements IFilter {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Object filter(Object o) throws Exception {
+        String usuario = Users.getCurrent() == null ? "" : Users.getCurrent().trim();
+        List<Object> argumentos = new ArrayList<>();
+        argumentos.add(usuario);
+        if (o instanceof Object[]) argumentos.addAll(Arrays.asList((Object[]) o));
+        else if (o != null) argumentos.add(o);
+        return argumentos.toArray();
+    }
+}
@@ -58,13 +58,36 @@ public class Activo {
     @Stereotype("MONEY")
     @Depends("costoInicial, vidaUtilAnios, fechaAdquisicion")
     public BigDecimal getValorActual() {
-        if (costoInicial == null || vidaUtilAnios == null || vidaUtilAnios <= 0 || fechaAdquisicion == null) {
-            return costoInicial;
-        }
+        return valorAl(LocalDate.now());
+    }
+
+    /**
+     * Valor al dia indicado; sin costo, vida util o fecha de adquisicion es el
+     * costo inicial.
+     */
+    public BigDecimal valorAl(LocalDate dia) {
+        if (!tieneDatosDepreciacion()) return costoInicial;
+        return valorDepreciado(costoInicial, vidaUtilAnios, aLocalDate(fechaAdquisicion), dia);
+    }
+
+    public boolean tieneDatosDepreciacion() {
+        return costoInicial != null && vidaUtilAnios != null && vidaUtilAnios > 0 && fechaAdquisicion != null;
+    }
 
-        LocalDate adq = fechaAdquisicion.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-        LocalDate hoy = LocalDate.now();
+    /**
+     * Las fechas leidas de la base de datos son java.sql.Date, que no admite toInstant().
+     */
+    public static LocalDate aLocalDate(Date fecha) {
+        if (fecha instanceof java.sql.Date) return ((java.sql.Date) fecha).toLocalDate();
+        return fecha.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
 
+    /**
+     * Valor al dia indicado con depreciacion lineal por anios completos, nunca
+     * negativo. Lo usan la vista, CalcularDepreciacionAction, DepreciacionActivo
+     * y DepreciacionMasiva.
+     */
+    public static BigDecimal valorDepreciado(BigDecimal costoInicial, int vidaUtilAnios, LocalDate adq, LocalDate hoy) {
         long aniosTranscurridos = Period.between(adq, hoy).getYears();
         if (aniosTranscurridos < 0) aniosTranscurridos = 0;
         if (aniosTranscurridos > vidaUtilAnios) aniosTranscurridos = vidaUtilAnios;
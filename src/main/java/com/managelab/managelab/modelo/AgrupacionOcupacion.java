@@ -0,0 +1,10 @@
+package com.managelab.managelab.modelo;
+
+/**
+ * Periodo sobre el que se calcula el porcentaje de ocupacion de un laboratorio
+ */
+public enum AgrupacionOcupacion {
+    HORA,
+    DIA,
+    SEMANA
+}
@@ -0,0 +1,41 @@
+package com.managelab.managelab.modelo;
+
+import java.util.*;
+
+import javax.persistence.*;
+
+import org.openxava.annotations.*;
+
+/**
+ * Fila de bloqueo por (laboratorio, fecha). Con reservas.bloqueo=baseDatos se
+ * bloquea con SELECT ... FOR UPDATE para serializar, entre varios nodos, las
+ * altas y aprobaciones de un mismo laboratorio y dia.
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_bloqueo_franja",
+                                             columnNames = { "laboratorioId", "fecha" }))
+@View(members = "laboratorioId; fecha")
+@Tab(properties = "laboratorioId, fecha")
+public class BloqueoFranja {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long laboratorioId;
+
+    @Column(nullable = false)
+    @Temporal(TemporalType.DATE)
+    private Date fecha;
+
+    // Getters y Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getLaboratorioId() { return laboratorioId; }
+    public void setLaboratorioId(Long laboratorioId) { this.laboratorioId = laboratorioId; }
+
+    public Date getFecha() { return fecha; }
+    public void setFecha(Date fecha) { this.fecha = fecha; }
+}
@@ -0,0 +1,46 @@
+package com.managelab.managelab.modelo;
+
+import java.time.*;
+
+import javax.persistence.*;
+
+import org.openxava.annotations.*;
+
+/**
+ * Modelo transitorio del dialogo para buscar huecos libres en un laboratorio.
+ */
+@View(members = "laboratorio; desde, hasta; duracionMinutos, cantidad")
+public class BusquedaHorarioLibre {
+
+    @ManyToOne
+    @Required
+    @DescriptionsList(descriptionProperties = "nombre", condition = "${estado} = 'ACTIVO'")
+    private Laboratorio laboratorio;
+
+    @Required
+    private LocalDate desde;
+
+    @Required
+    private LocalDate hasta;
+
+    @Required
+    private Integer duracionMinutos;
+
+    @Required
+    private Integer cantidad;
+
+    public Laboratorio getLaboratorio() { return laboratorio; }
+    public void setLaboratorio(Laboratorio laboratorio) { this.laboratorio = laboratorio; }
+
+    public LocalDate getDesde() { return desde; }
+    public void setDesde(LocalDate desde) { this.desde = desde; }
+
+    public LocalDate getHasta() { return hasta; }
+    public void setHasta(LocalDate hasta) { this.hasta = hasta; }
+
+    public Integer getDuracionMinutos() { return duracionMinutos; }
+    public void setDuracionMinutos(Integer duracionMinutos) { this.duracionMinutos = duracionMinutos; }
+
+    public Integer getCantidad() { return cantidad; }
+    public void setCantidad(Integer cantidad) { this.cantidad = cantidad; }
+}
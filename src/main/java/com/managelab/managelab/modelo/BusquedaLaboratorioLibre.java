@@ -0,0 +1,38 @@
+package com.managelab.managelab.modelo;
+
+import java.time.*;
+
+import org.openxava.annotations.*;
+
+/**
+ * Modelo transitorio del dialogo para buscar laboratorios libres en una ventana.
+ */
+@View(members = "fecha; horaInicio, horaFin; ordenarPor")
+public class BusquedaLaboratorioLibre {
+
+    @Required
+    private LocalDate fecha;
+
+    @Required
+    @Stereotype("TIME")
+    private String horaInicio;
+
+    @Required
+    @Stereotype("TIME")
+    private String horaFin;
+
+    @Required
+    private OrdenLaboratorios ordenarPor;
+
+    public LocalDate getFecha() { return fecha; }
+    public void setFecha(LocalDate fecha) { this.fecha = fecha; }
+
+    public String getHoraInicio() { return horaInicio; }
+    public void setHoraInicio(String horaInicio) { this.horaInicio = horaInicio; }
+
+    public String getHoraFin() { return horaFin; }
+    public void setHoraFin(String horaFin) { this.horaFin = horaFin; }
+
+    public OrdenLaboratorios getOrdenarPor() { return ordenarPor; }
+    public void setOrdenarPor(OrdenLaboratorios ordenarPor) { this.ordenarPor = ordenarPor; }
+}
@@ -0,0 +1,52 @@
+package com.managelab.managelab.modelo;
+
+import java.util.*;
+
+import javax.persistence.*;
+
+/**
+ * Clave que el cliente manda con cada alta de reserva (formulario o API) y
+ * la reserva que se creo con ella. Si el mismo usuario repite la solicitud se
+ * devuelve esa reserva sin validar ni insertar de nuevo; la misma clave de
+ * otro usuario es otra solicitud. Se borra al cumplir
+ * reservas.idempotencia.horasVida.
+ */
+@Entity
+@Table(
+    uniqueConstraints = @UniqueConstraint(name = "uk_clave_idempotencia_usuario_clave",
+        columnNames = { "usuario", "clave" }),
+    indexes = @Index(name = "idx_clave_idempotencia_creada", columnList = "creada"))
+public class ClaveIdempotencia {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(length = 100, nullable = false)
+    private String usuario;
+
+    @Column(length = 64, nullable = false)
+    private String clave;
+
+    private Long reservaId;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date creada;
+
+    // Getters y Setters
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getUsuario() { return usuario; }
+    public void setUsuario(String usuario) { this.usuario = usuario; }
+
+    public String getClave() { return clave; }
+    public void setClave(String clave) { this.clave = clave; }
+
+    public Long getReservaId() { return reservaId; }
+    public void setReservaId(Long reservaId) { this.reservaId = reservaId; }
+
+    public Date getCreada() { return creada; }
+    public void setCreada(Date creada) { this.creada = creada; }
+}
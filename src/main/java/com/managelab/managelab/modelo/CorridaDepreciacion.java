@@ -0,0 +1,62 @@
+package com.managelab.managelab.modelo;
+
+import java.util.*;
+
+import javax.persistence.*;
+
+import org.openxava.annotations.*;
+
+/**
+ * Una ejecucion de DepreciacionMasiva. ultimoActivoId se confirma junto con
+ * cada lote de DepreciacionActivo, asi que una corrida cortada sigue desde el
+ * ultimo lote confirmado con la misma fechaCalculo.
+ */
+@Entity
+@View(members = "fechaCalculo; iniciada, terminada; procesados, ultimoActivoId")
+@Tab(properties = "fechaCalculo, iniciada, terminada, procesados, ultimoActivoId",
+     defaultOrder = "${iniciada} desc")
+public class CorridaDepreciacion {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ReadOnly
+    @Temporal(TemporalType.DATE)
+    private Date fechaCalculo;
+
+    @ReadOnly
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date iniciada;
+
+    /** Null mientras la corrida no ha terminado. */
+    @ReadOnly
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date terminada;
+
+    @ReadOnly
+    private long ultimoActivoId;
+
+    @ReadOnly
+    private int procesados;
+
+    // Getters y Setters
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Date getFechaCalculo() { return fechaCalculo; }
+    public void setFechaCalculo(Date fechaCalculo) { this.fechaCalculo = fechaCalculo; }
+
+    public Date getIniciada() { return iniciada; }
+    public void setIniciada(Date iniciada) { this.iniciada = iniciada; }
+
+    public Date getTerminada() { return terminada; }
+    public void setTerminada(Date terminada) { this.terminada = terminada; }
+
+    public long getUltimoActivoId() { return ultimoActivoId; }
+    public void setUltimoActivoId(long ultimoActivoId) { this.ultimoActivoId = ultimoActivoId; }
+
+    public int getProcesados() { return procesados; }
+    public void setProcesados(int procesados) { this.procesados = procesados; }
+}
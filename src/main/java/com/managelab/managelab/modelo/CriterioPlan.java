@@ -0,0 +1,11 @@
+package com.managelab.managelab.modelo;
+
+/**
+ * Que maximiza el plan de aprobacion en cada dia de un laboratorio.
+ */
+public enum CriterioPlan {
+    /** El mayor numero de reservas aprobadas. */
+    CANTIDAD,
+    /** La mayor suma de pesos por rol del solicitante (reservas.plan.peso.ROL). */
+    ROL
+}
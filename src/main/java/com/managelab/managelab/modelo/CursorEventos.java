@@ -0,0 +1,24 @@
+package com.managelab.managelab.modelo;
+
+import javax.persistence.*;
+
+/**
+ * Hasta que EventoReserva entrego RelayEventos a cada consumidor.
+ * La fila se bloquea mientras se entrega un lote, asi un solo nodo
+ * atiende a cada consumidor a la vez.
+ */
+@Entity
+public class CursorEventos {
+
+    @Id
+    @Column(length = 100)
+    private String consumidor;
+
+    private long ultimoEventoId;
+
+    public String getConsumidor() { return consumidor; }
+    public void setConsumidor(String consumidor) { this.consumidor = consumidor; }
+
+    public long getUltimoEventoId() { return ultimoEventoId; }
+    public void setUltimoEventoId(long ultimoEventoId) { this.ultimoEventoId = ultimoEventoId; }
+}
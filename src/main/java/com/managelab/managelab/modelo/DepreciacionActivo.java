@@ -8,7 +8,7 @@ import org.openxava.annotations.*;
 /**
  * Entidad DepreciacionActivo - CU 9: Calculo de Depreciacion
  * Registro historico de depreciacion para un activo.
- * Formula: Metodo lineal simple.
+ * Formula: Metodo lineal simple (Activo.valorDepreciado).
  */
 @Entity
 @View(members = "activo; fechaCalculo; valorCalculado")
@@ -41,23 +41,8 @@ public class DepreciacionActivo {
             fechaCalculo = new Date();
         }
 
-        if (activo != null && activo.getCostoInicial() != null && activo.getVidaUtilAnios() != null
-                && activo.getVidaUtilAnios() > 0 && activo.getFechaAdquisicion() != null) {
-
-            long diasTranscurridos = (fechaCalculo.getTime() - activo.getFechaAdquisicion().getTime())
-                    / (1000L * 60 * 60 * 24);
-            long aniosTranscurridos = diasTranscurridos / 365;
-
-            if (aniosTranscurridos < 0)
-                aniosTranscurridos = 0;
-            if (aniosTranscurridos > activo.getVidaUtilAnios())
-                aniosTranscurridos = activo.getVidaUtilAnios();
-
-            BigDecimal depreciacionAnual = activo.getCostoInicial()
-                    .divide(new BigDecimal(activo.getVidaUtilAnios()), 2, BigDecimal.ROUND_HALF_UP);
-            BigDecimal depreciacionTotal = depreciacionAnual.multiply(new BigDecimal(aniosTranscurridos));
-
-            valorCalculado = activo.getCostoInicial().subtract(depreciacionTotal);
+        if (activo != null && activo.tieneDatosDepreciacion()) {
+            valorCalculado = activo.valorAl(Activo.aLocalDate(fechaCalculo));
         }
     }
 
@@ -0,0 +1,142 @@
+package com.managelab.managelab.modelo;
+
+import java.util.*;
+
+import javax.persistence.*;
+
+import org.openxava.annotations.*;
+
+import com.managelab.managelab.servicios.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Solicitud en lista de espera para un horario ya ocupado. Cuando una reserva
+ * de ese laboratorio y dia deja de ocupar (rechazo, expiracion, borrado o cambio
+ * de horario), ListaEspera promueve en orden de llegada las que ahora caben.
+ */
+@Entity
+@View(members = "laboratorio; solicitante; fecha; horaInicio, horaFin; estado; solicitada; reservaId")
+@Tab(properties = "laboratorio.nombre, solicitante.nombre, fecha, horaInicio, horaFin, estado, solicitada",
+     defaultOrder = "${fecha} asc, ${solicitada} asc")
+@Table(indexes = {
+    @Index(name = "idx_espera_lab_fecha_estado_solicitada",
+           columnList = "laboratorio_id, fecha, estado, solicitada, id"),
+    @Index(name = "idx_espera_lab_fecha_estado_inicio",
+           columnList = "laboratorio_id, fecha, estado, minutoInicio, minutoFin")
+})
+public class EsperaReserva {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne
+    @Required
+    @DescriptionsList(descriptionProperties = "nombre")
+    private Laboratorio laboratorio;
+
+    @ManyToOne
+    @Required
+    @DescriptionsList(descriptionProperties = "nombre")
+    private Usuario solicitante;
+
+    @Required
+    @Temporal(TemporalType.DATE)
+    private Date fecha;
+
+    @Required
+    @Stereotype("TIME")
+    private String horaInicio;
+
+    @Required
+    @Stereotype("TIME")
+    private String horaFin;
+
+    @Hidden
+    private Integer minutoInicio;
+
+    @Hidden
+    private Integer minutoFin;
+
+    @ReadOnly
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private EstadoEspera estado = EstadoEspera.ESPERANDO;
+
+    /** Orden de llegada: se promueve primero la mas antigua. */
+    @ReadOnly
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date solicitada;
+
+    /** Reserva creada al promoverla. */
+    @ReadOnly
+    private Long reservaId;
+
+    @PrePersist
+    private void antesDeCrear() {
+        if (estado == null) estado = EstadoEspera.ESPERANDO;
+        solicitada = new Date();
+        // Sin estos datos no hay nada que comprobar; la validacion de @Required lo informa
+        if (laboratorio == null || laboratorio.getId() == null ||
+            fecha == null || horaInicio == null || horaFin == null) {
+            return;
+        }
+        minutoInicio = Horas.aMinutos(horaInicio, "horaInicio");
+        minutoFin = Horas.aMinutos(horaFin, "horaFin");
+        if (minutoFin <= minutoInicio) {
+            throw new javax.validation.ValidationException("La hora fin debe ser mayor a la hora inicio");
+        }
+        // Si ya esta libre nunca se liberara: mejor reservar directamente
+        if (!Disponibilidad.hayTraslape(laboratorio.getId(), fecha, minutoInicio, minutoFin, null)) {
+            throw new javax.validation.ValidationException(
+                "El horario esta libre: registre la reserva directamente en lugar de esperar.");
+        }
+        horaInicio = Horas.formato(minutoInicio);
+        horaFin = Horas.formato(minutoFin);
+    }
+
+    @PreUpdate
+    private void antesDeModificar() {
+        if (horaInicio == null || horaFin == null) return;
+        minutoInicio = Horas.aMinutos(horaInicio, "horaInicio");
+        minutoFin = Horas.aMinutos(horaFin, "horaFin");
+        if (minutoFin <= minutoInicio) {
+            throw new javax.validation.ValidationException("La hora fin debe ser mayor a la hora inicio");
+        }
+    }
+
+    // Getters y Setters
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Laboratorio getLaboratorio() { return laboratorio; }
+    public void setLaboratorio(Laboratorio laboratorio) { this.laboratorio = laboratorio; }
+
+    public Usuario getSolicitante() { return solicitante; }
+    public void setSolicitante(Usuario solicitante) { this.solicitante = solicitante; }
+
+    public Date getFecha() { return fecha; }
+    public void setFecha(Date fecha) { this.fecha = fecha; }
+
+    public String getHoraInicio() { return horaInicio; }
+    public void setHoraInicio(String horaInicio) { this.horaInicio = horaInicio; }
+
+    public String getHoraFin() { return horaFin; }
+    public void setHoraFin(String horaFin) { this.horaFin = horaFin; }
+
+    public Integer getMinutoInicio() { return minutoInicio; }
+    public void setMinutoInicio(Integer minutoInicio) { this.minutoInicio = minutoInicio; }
+
+    public Integer getMinutoFin() { return minutoFin; }
+    public void setMinutoFin(Integer minutoFin) { this.minutoFin = minutoFin; }
+
+    public EstadoEspera getEstado() { return estado; }
+    public void setEstado(EstadoEspera estado) { this.estado = estado; }
+
+    public Date getSolicitada() { return solicitada; }
+    public void setSolicitada(Date solicitada) { this.solicitada = solicitada; }
+
+    public Long getReservaId() { return reservaId; }
+    public void setReservaId(Long reservaId) { this.reservaId = reservaId; }
+}
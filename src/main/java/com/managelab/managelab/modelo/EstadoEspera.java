@@ -0,0 +1,13 @@
+package com.managelab.managelab.modelo;
+
+/**
+ * Estados de una solicitud en lista de espera
+ */
+public enum EstadoEspera {
+    ESPERANDO,
+    /** Se libero su horario y ya tiene una reserva PENDIENTE. */
+    PROMOVIDA,
+    /** Su horario paso sin que se liberara. */
+    VENCIDA,
+    CANCELADA
+}
@@ -0,0 +1,11 @@
+package com.managelab.managelab.modelo;
+
+/**
+ * Estados de una notificacion por correo
+ */
+public enum EstadoNotificacion {
+    PENDIENTE,
+    ENVIADA,
+    /** Agoto los reintentos; queda guardada para revisarla. */
+    FALLIDA
+}
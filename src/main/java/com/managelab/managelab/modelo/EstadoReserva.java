@@ -6,5 +6,7 @@ package com.managelab.managelab.modelo;
 public enum EstadoReserva {
     PENDIENTE,
     APROBADA,
-    RECHAZADA
+    RECHAZADA,
+    /** PENDIENTE que nadie atendio a tiempo; ya no ocupa el laboratorio. */
+    EXPIRADA
 }
@@ -0,0 +1,82 @@
+package com.managelab.managelab.modelo;
+
+import java.util.*;
+
+import javax.persistence.*;
+
+import org.openxava.annotations.*;
+
+/**
+ * Cambio de estado de una reserva (outbox). Se escribe en la misma transaccion
+ * que el cambio y nunca se modifica; RelayEventos lo entrega a los consumidores
+ * en orden de id.
+ */
+@Entity
+@View(members = "momento; usuario; reservaId; laboratorioId, fecha; estadoAnterior, estadoNuevo")
+@Tab(properties = "id, momento, usuario, reservaId, laboratorioId, fecha, estadoAnterior, estadoNuevo",
+     defaultOrder = "${id} desc")
+@Table(indexes = {
+    @Index(name = "idx_evento_reserva_reserva", columnList = "reservaId")
+})
+public class EventoReserva {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ReadOnly
+    private Long reservaId;
+
+    @ReadOnly
+    private Long laboratorioId;
+
+    @ReadOnly
+    @Temporal(TemporalType.DATE)
+    private Date fecha;
+
+    /** Null si la reserva se acaba de crear. */
+    @ReadOnly
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private EstadoReserva estadoAnterior;
+
+    /** Null si la reserva se borro. */
+    @ReadOnly
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private EstadoReserva estadoNuevo;
+
+    @ReadOnly
+    @Column(length = 100)
+    private String usuario;
+
+    @ReadOnly
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date momento;
+
+    // Getters y Setters
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getReservaId() { return reservaId; }
+    public void setReservaId(Long reservaId) { this.reservaId = reservaId; }
+
+    public Long getLaboratorioId() { return laboratorioId; }
+    public void setLaboratorioId(Long laboratorioId) { this.laboratorioId = laboratorioId; }
+
+    public Date getFecha() { return fecha; }
+    public void setFecha(Date fecha) { this.fecha = fecha; }
+
+    public EstadoReserva getEstadoAnterior() { return estadoAnterior; }
+    public void setEstadoAnterior(EstadoReserva estadoAnterior) { this.estadoAnterior = estadoAnterior; }
+
+    public EstadoReserva getEstadoNuevo() { return estadoNuevo; }
+    public void setEstadoNuevo(EstadoReserva estadoNuevo) { this.estadoNuevo = estadoNuevo; }
+
+    public String getUsuario() { return usuario; }
+    public void setUsuario(String usuario) { this.usuario = usuario; }
+
+    public Date getMomento() { return momento; }
+    public void setMomento(Date momento) { this.momento = momento; }
+}
@@ -0,0 +1,79 @@
+package com.managelab.managelab.modelo;
+
+import java.util.*;
+
+import javax.persistence.*;
+
+import org.openxava.annotations.*;
+
+/**
+ * Evento que RelayEventos no pudo entregar a un consumidor, o que espera
+ * detras de uno asi del mismo laboratorio. Se reintentan en orden por
+ * laboratorio; tras eventos.relay.maximoIntentos fallos el evento queda
+ * descartado (cola de eventos muertos) y su laboratorio sigue avanzando.
+ */
+@Entity
+@View(members = "retenido; consumidor; eventoId, laboratorioId; intentos, descartado; ultimoError")
+@Tab(properties = "retenido, consumidor, eventoId, laboratorioId, intentos, descartado, ultimoError",
+     defaultOrder = "${retenido} desc")
+@Table(indexes = {
+    @Index(name = "idx_evento_retenido_consumidor", columnList = "consumidor, descartado, laboratorioId, eventoId")
+})
+public class EventoRetenido {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ReadOnly
+    @Column(length = 100)
+    private String consumidor;
+
+    @ReadOnly
+    private long eventoId;
+
+    @ReadOnly
+    private Long laboratorioId;
+
+    /** Entregas fallidas; 0 si solo espera detras de otro evento. */
+    @ReadOnly
+    private int intentos;
+
+    @ReadOnly
+    private boolean descartado;
+
+    @ReadOnly
+    @Column(length = 500)
+    @Stereotype("MEMO")
+    private String ultimoError;
+
+    @ReadOnly
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date retenido;
+
+    // Getters y Setters
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getConsumidor() { return consumidor; }
+    public void setConsumidor(String consumidor) { this.consumidor = consumidor; }
+
+    public long getEventoId() { return eventoId; }
+    public void setEventoId(long eventoId) { this.eventoId = eventoId; }
+
+    public Long getLaboratorioId() { return laboratorioId; }
+    public void setLaboratorioId(Long laboratorioId) { this.laboratorioId = laboratorioId; }
+
+    public int getIntentos() { return intentos; }
+    public void setIntentos(int intentos) { this.intentos = intentos; }
+
+    public boolean isDescartado() { return descartado; }
+    public void setDescartado(boolean descartado) { this.descartado = descartado; }
+
+    public String getUltimoError() { return ultimoError; }
+    public void setUltimoError(String ultimoError) { this.ultimoError = ultimoError; }
+
+    public Date getRetenido() { return retenido; }
+    public void setRetenido(Date retenido) { this.retenido = retenido; }
+}
@@ -0,0 +1,17 @@
+package com.managelab.managelab.modelo;
+
+/**
+ * Cada cuanto se repite una serie de reservas
+ */
+public enum FrecuenciaSerie {
+    SEMANAL(7),
+    QUINCENAL(14);
+
+    private final int dias;
+
+    FrecuenciaSerie(int dias) {
+        this.dias = dias;
+    }
+
+    public int getDias() { return dias; }
+}
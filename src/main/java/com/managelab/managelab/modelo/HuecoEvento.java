@@ -0,0 +1,42 @@
+package com.managelab.managelab.modelo;
+
+import java.util.*;
+
+import javax.persistence.*;
+
+/**
+ * Id de EventoReserva que el cursor de un consumidor salto porque aun no
+ * estaba visible: su transaccion tomo el id y todavia no habia confirmado, o
+ * se revirtio. RelayEventos lo vuelve a buscar en cada vuelta hasta que
+ * aparece o pasan eventos.relay.minutosHueco.
+ */
+@Entity
+@Table(indexes = {
+    @Index(name = "idx_hueco_evento_consumidor", columnList = "consumidor, eventoId")
+})
+public class HuecoEvento {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(length = 100)
+    private String consumidor;
+
+    private long eventoId;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date detectado;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getConsumidor() { return consumidor; }
+    public void setConsumidor(String consumidor) { this.consumidor = consumidor; }
+
+    public long getEventoId() { return eventoId; }
+    public void setEventoId(long eventoId) { this.eventoId = eventoId; }
+
+    public Date getDetectado() { return detectado; }
+    public void setDetectado(Date detectado) { this.detectado = detectado; }
+}
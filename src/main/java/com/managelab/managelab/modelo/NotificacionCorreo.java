@@ -0,0 +1,105 @@
+package com.managelab.managelab.modelo;
+
+import java.util.*;
+
+import javax.persistence.*;
+
+import org.openxava.annotations.*;
+
+/**
+ * Correo pendiente de enviar al solicitante de una reserva. Lo crea
+ * NotificacionesReserva a partir de un EventoReserva y lo envia
+ * EnvioNotificaciones; las FALLIDAS quedan como registro de lo que no se
+ * pudo entregar.
+ */
+@Entity
+@View(members = "destinatario; asunto; cuerpo; estado; intentos, proximoIntento; ultimoError; creada, enviada")
+@Tab(properties = "creada, destinatario, asunto, estado, intentos, proximoIntento, ultimoError",
+     defaultOrder = "${creada} desc")
+@Table(indexes = {
+    @Index(name = "idx_notificacion_estado_proximo", columnList = "estado, proximoIntento")
+}, uniqueConstraints = {
+    @UniqueConstraint(name = "uk_notificacion_evento", columnNames = "eventoId")
+})
+public class NotificacionCorreo {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /** EventoReserva que la origino; evita duplicados si el evento se entrega de nuevo. */
+    @Hidden
+    private Long eventoId;
+
+    @ReadOnly
+    @Column(length = 100)
+    private String destinatario;
+
+    @ReadOnly
+    @Column(length = 200)
+    private String asunto;
+
+    @ReadOnly
+    @Column(length = 2000)
+    @Stereotype("MEMO")
+    private String cuerpo;
+
+    @ReadOnly
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private EstadoNotificacion estado = EstadoNotificacion.PENDIENTE;
+
+    @ReadOnly
+    private int intentos;
+
+    @ReadOnly
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date proximoIntento;
+
+    @ReadOnly
+    @Column(length = 500)
+    private String ultimoError;
+
+    @ReadOnly
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date creada;
+
+    @ReadOnly
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date enviada;
+
+    // Getters y Setters
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getEventoId() { return eventoId; }
+    public void setEventoId(Long eventoId) { this.eventoId = eventoId; }
+
+    public String getDestinatario() { return destinatario; }
+    public void setDestinatario(String destinatario) { this.destinatario = destinatario; }
+
+    public String getAsunto() { return asunto; }
+    public void setAsunto(String asunto) { this.asunto = asunto; }
+
+    public String getCuerpo() { return cuerpo; }
+    public void setCuerpo(String cuerpo) { this.cuerpo = cuerpo; }
+
+    public EstadoNotificacion getEstado() { return estado; }
+    public void setEstado(EstadoNotificacion estado) { this.estado = estado; }
+
+    public int getIntentos() { return intentos; }
+    public void setIntentos(int intentos) { this.intentos = intentos; }
+
+    public Date getProximoIntento() { return proximoIntento; }
+    public void setProximoIntento(Date proximoIntento) { this.proximoIntento = proximoIntento; }
+
+    public String getUltimoError() { return ultimoError; }
+    public void setUltimoError(String ultimoError) { this.ultimoError = ultimoError; }
+
+    public Date getCreada() { return creada; }
+    public void setCreada(Date creada) { this.creada = creada; }
+
+    public Date getEnviada() { return enviada; }
+    public void setEnviada(Date enviada) { this.enviada = enviada; }
+}
@@ -0,0 +1,75 @@
+package com.managelab.managelab.modelo;
+
+import java.math.*;
+import java.util.*;
+
+import javax.persistence.*;
+
+import org.openxava.annotations.*;
+
+/**
+ * Minutos APROBADOS de un laboratorio en una hora de un dia (resumen para
+ * informes de ocupacion). Lo mantiene OcupacionLaboratorios con cada cambio y
+ * RecalculoOcupacion lo puede rehacer desde cero.
+ */
+@Entity
+@View(members = "laboratorio; fecha, semana; hora; minutosOcupados, porcentaje")
+@Tab(properties = "laboratorio.nombre, semana, fecha, hora, minutosOcupados+, porcentaje",
+     defaultOrder = "${fecha} desc, ${hora} asc")
+@Table(indexes = {
+    @Index(name = "idx_ocupacion_hora_fecha_lab", columnList = "fecha, laboratorio_id")
+}, uniqueConstraints = {
+    @UniqueConstraint(name = "uk_ocupacion_hora", columnNames = { "laboratorio_id", "fecha", "hora" })
+})
+public class OcupacionHora {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne
+    @ReadOnly
+    @DescriptionsList(descriptionProperties = "nombre")
+    private Laboratorio laboratorio;
+
+    @ReadOnly
+    @Temporal(TemporalType.DATE)
+    private Date fecha;
+
+    /** Lunes de la semana de fecha, para agrupar por semana. */
+    @ReadOnly
+    @Temporal(TemporalType.DATE)
+    private Date semana;
+
+    /** 0 a 23 */
+    @ReadOnly
+    private int hora;
+
+    @ReadOnly
+    private int minutosOcupados;
+
+    @Depends("minutosOcupados")
+    public BigDecimal getPorcentaje() {
+        return new BigDecimal(minutosOcupados * 100).divide(new BigDecimal(60), 1, RoundingMode.HALF_UP);
+    }
+
+    // Getters y Setters
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Laboratorio getLaboratorio() { return laboratorio; }
+    public void setLaboratorio(Laboratorio laboratorio) { this.laboratorio = laboratorio; }
+
+    public Date getFecha() { return fecha; }
+    public void setFecha(Date fecha) { this.fecha = fecha; }
+
+    public Date getSemana() { return semana; }
+    public void setSemana(Date semana) { this.semana = semana; }
+
+    public int getHora() { return hora; }
+    public void setHora(int hora) { this.hora = hora; }
+
+    public int getMinutosOcupados() { return minutosOcupados; }
+    public void setMinutosOcupados(int minutosOcupados) { this.minutosOcupados = minutosOcupados; }
+}
@@ -0,0 +1,9 @@
+package com.managelab.managelab.modelo;
+
+/**
+ * Orden de los resultados de la busqueda de laboratorios libres
+ */
+public enum OrdenLaboratorios {
+    NOMBRE,
+    UBICACION
+}
@@ -0,0 +1,25 @@
+package com.managelab.managelab.modelo;
+
+import javax.persistence.*;
+
+/**
+ * Cuantas reservas PENDIENTES tiene un laboratorio. Lo mantiene
+ * PendientesLaboratorios con cada cambio de estado para que la bandeja de
+ * aprobacion no tenga que contar sobre Reserva.
+ */
+@Entity
+public class PendientesLaboratorio {
+
+    @Id
+    private Long laboratorioId;
+
+    private int pendientes;
+
+    // Getters y Setters
+
+    public Long getLaboratorioId() { return laboratorioId; }
+    public void setLaboratorioId(Long laboratorioId) { this.laboratorioId = laboratorioId; }
+
+    public int getPendientes() { return pendientes; }
+    public void setPendientes(int pendientes) { this.pendientes = pendientes; }
+}
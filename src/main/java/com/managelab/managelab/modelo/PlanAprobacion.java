@@ -0,0 +1,48 @@
+package com.managelab.managelab.modelo;
+
+import java.time.*;
+
+import javax.persistence.*;
+
+import org.openxava.annotations.*;
+
+/**
+ * Modelo transitorio del dialogo que calcula y aplica un plan de aprobacion
+ * de reservas PENDIENTES sin traslapes.
+ */
+@View(members = "laboratorio; desde, hasta; criterio; resumen")
+public class PlanAprobacion {
+
+    /** Vacio = todos los laboratorios. */
+    @ManyToOne
+    @DescriptionsList(descriptionProperties = "nombre")
+    private Laboratorio laboratorio;
+
+    @Required
+    private LocalDate desde;
+
+    @Required
+    private LocalDate hasta;
+
+    @Required
+    private CriterioPlan criterio;
+
+    @ReadOnly
+    @Stereotype("MEMO")
+    private String resumen;
+
+    public Laboratorio getLaboratorio() { return laboratorio; }
+    public void setLaboratorio(Laboratorio laboratorio) { this.laboratorio = laboratorio; }
+
+    public LocalDate getDesde() { return desde; }
+    public void setDesde(LocalDate desde) { this.desde = desde; }
+
+    public LocalDate getHasta() { return hasta; }
+    public void setHasta(LocalDate hasta) { this.hasta = hasta; }
+
+    public CriterioPlan getCriterio() { return criterio; }
+    public void setCriterio(CriterioPlan criterio) { this.criterio = criterio; }
+
+    public String getResumen() { return resumen; }
+    public void setResumen(String resumen) { this.resumen = resumen; }
+}
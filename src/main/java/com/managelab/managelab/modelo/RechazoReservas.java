@@ -0,0 +1,17 @@
+package com.managelab.managelab.modelo;
+
+import org.openxava.annotations.*;
+
+/**
+ * Modelo transitorio del dialogo para rechazar varias reservas con un mismo motivo.
+ */
+@View(members = "motivoRechazo")
+public class RechazoReservas {
+
+    @Required
+    @Stereotype("MEMO")
+    private String motivoRechazo;
+
+    public String getMotivoRechazo() { return motivoRechazo; }
+    public void setMotivoRechazo(String motivoRechazo) { this.motivoRechazo = motivoRechazo; }
+}
@@ -5,13 +5,46 @@ import java.util.*;
 import javax.persistence.*;
 
 import org.openxava.annotations.*;
-import org.openxava.jpa.*;
+import org.openxava.calculators.*;
 
 import com.managelab.managelab.calculators.*;
+import com.managelab.managelab.filters.*;
+import com.managelab.managelab.servicios.*;
+import com.managelab.managelab.util.*;
 
 @Entity
-@View(members = "laboratorio; solicitante; fecha; horaInicio, horaFin; estadoReserva; motivoRechazo")
-@Tab(properties = "laboratorio.nombre, solicitante.nombre, fecha, horaInicio, horaFin, estadoReserva")
+@View(members = "laboratorio; solicitante; fecha; horaInicio, horaFin; estadoReserva; motivoRechazo; claveSolicitud")
+@Tabs({
+    // Por defecto solo lo que hay que atender: PENDIENTES de hoy en adelante
+    @Tab(properties = "laboratorio.nombre, solicitante.nombre, fecha, horaInicio, horaFin, estadoReserva",
+         baseCondition = "${estadoReserva} = 'PENDIENTE' and ${fecha} >= current_date",
+         defaultOrder = "${fecha} asc, ${minutoInicio} asc, ${id} asc"),
+    // Bandeja de aprobacion: PENDIENTES de los laboratorios del usuario actual.
+    // Sin corte por fecha: ExpiracionReservas retira las pasadas, y asi el total
+    // coincide con los contadores de PendientesLaboratorio
+    @Tab(name = "Bandeja",
+         properties = "laboratorio.nombre, solicitante.nombre, fecha, horaInicio, horaFin",
+         baseCondition = "${estadoReserva} = 'PENDIENTE' and ${laboratorio.responsable.email} = ?",
+         filter = ResponsableFilter.class,
+         defaultOrder = "${fecha} asc, ${minutoInicio} asc, ${id} asc"),
+    @Tab(name = "Todas",
+         properties = "laboratorio.nombre, solicitante.nombre, fecha, horaInicio, horaFin, estadoReserva",
+         defaultOrder = "${fecha} desc, ${minutoInicio} desc, ${id} desc")
+})
+@Table(indexes = {
+    @Index(name = "idx_reserva_lab_fecha_estado_inicio",
+           columnList = "laboratorio_id, fecha, estadoReserva, minutoInicio"),
+    @Index(name = "idx_reserva_fecha_estado_lab",
+           columnList = "fecha, estadoReserva, laboratorio_id, minutoInicio, minutoFin"),
+    @Index(name = "idx_reserva_estado_id",
+           columnList = "estadoReserva, id"),
+    @Index(name = "idx_reserva_estado_fecha_inicio_id",
+           columnList = "estadoReserva, fecha, minutoInicio, id"),
+    @Index(name = "idx_reserva_lab_estado_fecha",
+           columnList = "laboratorio_id, estadoReserva, fecha"),
+    @Index(name = "idx_reserva_lab_fecha_cambio",
+           columnList = "laboratorio_id, fecha, ultimoCambio")
+})
 public class Reserva {
 
     @Id
@@ -40,6 +73,16 @@ public class Reserva {
     @Stereotype("TIME")
     private String horaFin;
 
+    /**
+     * horaInicio/horaFin en minutos del dia, para que la base de datos pueda
+     * comparar horarios. Se calculan al guardar.
+     */
+    @Hidden
+    private Integer minutoInicio;
+
+    @Hidden
+    private Integer minutoFin;
+
     /**
      * Required + ReadOnly necesita DefaultValueCalculator para que al dar "New"
      * se cargue el valor en pantalla.
@@ -55,11 +98,49 @@ public class Reserva {
     private String motivoRechazo;
 
     /**
-     * Flag para evitar validaciones pesadas cuando se hace merge() desde
-     * las acciones de aprobar/rechazar.
+     * Momento en que se registro la reserva; sirve para expirar las PENDIENTES
+     * que nadie atiende.
+     */
+    @Hidden
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date fechaCreacion;
+
+    /**
+     * Ultima vez que se grabo la reserva; la exportacion de un laboratorio
+     * deriva de aqui su ETag y su Last-Modified.
+     */
+    @Hidden
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date ultimoCambio;
+
+    /**
+     * Serie recurrente que genero esta reserva, si la hay.
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ReadOnly
+    private SerieReserva serie;
+
+    /**
+     * Clave de idempotencia del formulario: se genera al dar "New" y viaja oculta
+     * con el formulario; si el mismo alta llega dos veces, GuardarReservaAction
+     * la reconoce y no vuelve a crear la reserva.
+     */
+    @Transient
+    @Hidden
+    @DefaultValueCalculator(UUIDCalculator.class)
+    private String claveSolicitud;
+
+    /**
+     * Valores de laboratorio, fecha, horario y estado tal como se leyeron de la
+     * base de datos (o como se grabaron por ultima vez). Null si la reserva es nueva.
      */
     @Transient
-    private boolean omitirValidacionDisponibilidad = false;
+    private Object[] guardado;
+
+    @PostLoad
+    private void despuesDeCargar() {
+        guardado = foto();
+    }
 
     /**
      * UN SOLO callback para persist/update.
@@ -69,16 +150,128 @@ public class Reserva {
     private void antesDeGuardar() {
         asegurarEstadoInicial();
 
-        // Si viene de Aprobar/Rechazar y ya validamos fuera, no repetimos la query
-        if (!omitirValidacionDisponibilidad) {
+        // Solo se consulta disponibilidad si cambio algo que afecte el horario ocupado
+        if (cambioOcupacion()) {
+            Metricas.contador("reservas.validacionesDisponibilidad").increment();
             validarDisponibilidadInterna();
+        } else {
+            Metricas.contador("reservas.validacionesOmitidas").increment();
         }
+
+        calcularMinutos();
+        ultimoCambio = new Date();
+    }
+
+    private Object[] foto() {
+        return new Object[] {
+            laboratorio == null ? null : laboratorio.getId(),
+            fecha == null ? null : ClaveFranja.aLocalDate(fecha),
+            minutoInicio,
+            minutoFin,
+            estadoReserva
+        };
+    }
+
+    /**
+     * True si la reserva es nueva, o si ocupa horario y cambio laboratorio,
+     * fecha, horas, o paso a ocupar desde un estado que no ocupaba.
+     */
+    private boolean cambioOcupacion() {
+        if (guardado == null) return true;
+        if (!ocupa(estadoReserva)) return false;
+        if (!ocupa((EstadoReserva) guardado[4])) return true;
+
+        Object[] actual = foto();
+        actual[2] = minutos(horaInicio, "horaInicio");
+        actual[3] = minutos(horaFin, "horaFin");
+        return !Arrays.equals(guardado, actual);
+    }
+
+    private static boolean ocupa(EstadoReserva estado) {
+        return estado == EstadoReserva.APROBADA || estado == EstadoReserva.PENDIENTE;
+    }
+
+    private static Integer minutos(String hora, String campo) {
+        return hora == null ? null : Horas.aMinutos(hora, campo);
     }
 
     private void asegurarEstadoInicial() {
         if (estadoReserva == null) {
             estadoReserva = EstadoReserva.PENDIENTE;
         }
+        if (fechaCreacion == null && id == null) {
+            fechaCreacion = new Date();
+        }
+    }
+
+    private void calcularMinutos() {
+        minutoInicio = minutos(horaInicio, "horaInicio");
+        minutoFin = minutos(horaFin, "horaFin");
+    }
+
+    /**
+     * Mantiene el indice de ocupacion al dia una vez confirmada la transaccion.
+     */
+    @PostPersist
+    @PostUpdate
+    private void despuesDeGuardar() {
+        EstadoReserva anterior = guardado == null ? null : (EstadoReserva) guardado[4];
+        if (anterior != estadoReserva) {
+            // Lo que deja libre es el tramo que ocupaba antes del cambio
+            TransicionesReserva.registrar(id, clave(), minutoGuardado(2), minutoGuardado(3),
+                anterior, estadoReserva);
+        }
+        Object[] actual = foto();
+        if (!Arrays.equals(guardado, actual)) {
+            ajustarOcupacion(guardado, -1);
+            ajustarOcupacion(actual, 1);
+            // Una PENDIENTE que cambia de laboratorio se cuenta en el nuevo
+            if (anterior == EstadoReserva.PENDIENTE && estadoReserva == EstadoReserva.PENDIENTE
+                    && !Objects.equals(guardado[0], actual[0])) {
+                PendientesLaboratorios.ajustar((Long) guardado[0], -1);
+                PendientesLaboratorios.ajustar((Long) actual[0], 1);
+            }
+            // Cambio de horario sin cambio de estado: el tramo anterior quedo libre
+            if (anterior == estadoReserva && ocupa(anterior) && guardado[0] != null && guardado[1] != null) {
+                ListaEspera.liberadoAlConfirmar(new ClaveFranja((Long) guardado[0], (java.time.LocalDate) guardado[1]),
+                    (Integer) guardado[2], (Integer) guardado[3]);
+            }
+        }
+        guardado = actual;
+        IndiceReservas.getInstance().registrarAlConfirmar(this);
+    }
+
+    @PostRemove
+    private void despuesDeBorrar() {
+        TransicionesReserva.registrar(id, clave(), minutoGuardado(2), minutoGuardado(3), estadoReserva, null);
+        ajustarOcupacion(guardado, -1);
+        IndiceReservas.getInstance().quitarAlConfirmar(id);
+    }
+
+    /**
+     * Minuto guardado (2 inicio, 3 fin) si la reserva sigue en el mismo dia; si
+     * no, null, y ListaEspera revisa el dia entero.
+     */
+    private Integer minutoGuardado(int posicion) {
+        if (guardado == null) return null;
+        Object[] actual = foto();
+        if (!Objects.equals(guardado[0], actual[0]) || !Objects.equals(guardado[1], actual[1])) return null;
+        return (Integer) guardado[posicion];
+    }
+
+    /**
+     * Suma o resta del resumen de ocupacion el horario de una foto, si estaba APROBADA.
+     */
+    private static void ajustarOcupacion(Object[] foto, int signo) {
+        if (foto == null || foto[4] != EstadoReserva.APROBADA) return;
+        if (foto[0] == null || foto[1] == null || foto[2] == null || foto[3] == null) return;
+        OcupacionLaboratorios.ajustar(new ClaveFranja((Long) foto[0], (java.time.LocalDate) foto[1]),
+            (Integer) foto[2], (Integer) foto[3], signo);
+    }
+
+    private ClaveFranja clave() {
+        if (laboratorio == null || laboratorio.getId() == null || fecha == null) return null;
+        return ClaveFranja.de(laboratorio.getId(), fecha);
     }
 
     /**
@@ -91,8 +284,8 @@ public class Reserva {
             return;
         }
 
-        int inicio = toMinutesOrFail(horaInicio, "horaInicio");
-        int fin = toMinutesOrFail(horaFin, "horaFin");
+        int inicio = Horas.aMinutos(horaInicio, "horaInicio");
+        int fin = Horas.aMinutos(horaFin, "horaFin");
 
         if (fin <= inicio) {
             throw new javax.validation.ValidationException(
@@ -100,68 +293,18 @@ public class Reserva {
             );
         }
 
-        // Estados que consideramos conflicto: APROBADA y PENDIENTE
-        List<EstadoReserva> estadosConflicto =
-            Arrays.asList(EstadoReserva.APROBADA, EstadoReserva.PENDIENTE);
-
-        String q =
-            "SELECT r FROM Reserva r " +
-            "WHERE r.laboratorio.id = :labId " +
-            "AND r.fecha = :fecha " +
-            "AND r.estadoReserva IN :estados " +
-            "AND (:idActual IS NULL OR r.id <> :idActual)";
-
-        EntityManager em = XPersistence.getManager();
-
-        @SuppressWarnings("unchecked")
-        List<Reserva> reservasConflicto = em
-            .createQuery(q)
-            .setFlushMode(FlushModeType.COMMIT)
-            .setParameter("labId", laboratorio.getId())
-            .setParameter("fecha", fecha)
-            .setParameter("estados", estadosConflicto)
-            .setParameter("idActual", id)
-            .getResultList();
-
-        for (Reserva r : reservasConflicto) {
-            if (r.getHoraInicio() == null || r.getHoraFin() == null) continue;
-
-            int rInicio = toMinutesOrFail(r.getHoraInicio(), "horaInicio existente");
-            int rFin = toMinutesOrFail(r.getHoraFin(), "horaFin existente");
-
-            boolean traslapa = (rInicio < fin) && (rFin > inicio);
-            if (traslapa) {
-                throw new javax.validation.ValidationException(
-                    "El laboratorio ya tiene una reserva registrada (aprobada o pendiente) en ese horario."
-                );
-            }
-        }
-
-        // Normaliza a HH:mm
-        this.horaInicio = formatHHmm(inicio);
-        this.horaFin = formatHHmm(fin);
-    }
+        // Hasta el fin de la transaccion nadie mas puede reservar ni aprobar en este laboratorio y dia
+        BloqueoFranjas.bloquear(ClaveFranja.de(laboratorio.getId(), fecha));
 
-    private int toMinutesOrFail(String h, String campo) {
-        try {
-            String v = h.trim();
-            String[] parts = v.split(":");
-            if (parts.length != 2) throw new IllegalArgumentException();
-            int hh = Integer.parseInt(parts[0]);
-            int mm = Integer.parseInt(parts[1]);
-            if (hh < 0 || hh > 23 || mm < 0 || mm > 59) throw new IllegalArgumentException();
-            return hh * 60 + mm;
-        } catch (Exception ex) {
+        if (Disponibilidad.hayTraslape(laboratorio.getId(), fecha, inicio, fin, id)) {
             throw new javax.validation.ValidationException(
-                "Formato invalido en " + campo + ". Use HH:mm (ej: 09:30)"
+                "El laboratorio ya tiene una reserva registrada (aprobada o pendiente) en ese horario."
             );
         }
-    }
 
-    private String formatHHmm(int minutes) {
-        int hh = minutes / 60;
-        int mm = minutes % 60;
-        return String.format("%02d:%02d", hh, mm);
+        // Normaliza a HH:mm
+        this.horaInicio = Horas.formato(inicio);
+        this.horaFin = Horas.formato(fin);
     }
 
     // Getters y Setters
@@ -184,17 +327,27 @@ public class Reserva {
     public String getHoraFin() { return horaFin; }
     public void setHoraFin(String horaFin) { this.horaFin = horaFin; }
 
+    public Integer getMinutoInicio() { return minutoInicio; }
+    public void setMinutoInicio(Integer minutoInicio) { this.minutoInicio = minutoInicio; }
+
+    public Integer getMinutoFin() { return minutoFin; }
+    public void setMinutoFin(Integer minutoFin) { this.minutoFin = minutoFin; }
+
     public EstadoReserva getEstadoReserva() { return estadoReserva; }
     public void setEstadoReserva(EstadoReserva estadoReserva) { this.estadoReserva = estadoReserva; }
 
     public String getMotivoRechazo() { return motivoRechazo; }
     public void setMotivoRechazo(String motivoRechazo) { this.motivoRechazo = motivoRechazo; }
 
-    public boolean isOmitirValidacionDisponibilidad() {
-        return omitirValidacionDisponibilidad;
-    }
+    public Date getFechaCreacion() { return fechaCreacion; }
+    public void setFechaCreacion(Date fechaCreacion) { this.fechaCreacion = fechaCreacion; }
 
-    public void setOmitirValidacionDisponibilidad(boolean omitirValidacionDisponibilidad) {
-        this.omitirValidacionDisponibilidad = omitirValidacionDisponibilidad;
-    }
+    public Date getUltimoCambio() { return ultimoCambio; }
+    public void setUltimoCambio(Date ultimoCambio) { this.ultimoCambio = ultimoCambio; }
+
+    public String getClaveSolicitud() { return claveSolicitud; }
+    public void setClaveSolicitud(String claveSolicitud) { this.claveSolicitud = claveSolicitud; }
+
+    public SerieReserva getSerie() { return serie; }
+    public void setSerie(SerieReserva serie) { this.serie = serie; }
 }
@@ -0,0 +1,120 @@
+package com.managelab.managelab.modelo;
+
+import java.util.*;
+
+import javax.persistence.*;
+
+import org.openxava.annotations.*;
+
+/**
+ * Reserva antigua movida fuera de la tabla Reserva por ArchivoReservas.
+ * Conserva el id original y solo se consulta; no interviene en la
+ * disponibilidad de los laboratorios.
+ */
+@Entity
+@View(members = "laboratorio; solicitante; fecha; horaInicio, horaFin; estadoReserva; motivoRechazo; fechaCreacion, fechaArchivo")
+@Tab(properties = "laboratorio.nombre, solicitante.nombre, fecha, horaInicio, horaFin, estadoReserva",
+     defaultOrder = "${fecha} desc, ${minutoInicio} desc")
+@Table(indexes = {
+    @Index(name = "idx_reserva_historica_lab_fecha",
+           columnList = "laboratorio_id, fecha"),
+    @Index(name = "idx_reserva_historica_fecha",
+           columnList = "fecha")
+})
+public class ReservaHistorica {
+
+    /** El mismo id que tenia en Reserva. */
+    @Id
+    private Long id;
+
+    @ManyToOne
+    @ReadOnly
+    @DescriptionsList(descriptionProperties = "nombre")
+    private Laboratorio laboratorio;
+
+    @ManyToOne
+    @ReadOnly
+    @DescriptionsList(descriptionProperties = "nombre")
+    private Usuario solicitante;
+
+    @ReadOnly
+    @Temporal(TemporalType.DATE)
+    private Date fecha;
+
+    @ReadOnly
+    @Stereotype("TIME")
+    private String horaInicio;
+
+    @ReadOnly
+    @Stereotype("TIME")
+    private String horaFin;
+
+    @Hidden
+    private Integer minutoInicio;
+
+    @Hidden
+    private Integer minutoFin;
+
+    @ReadOnly
+    @Enumerated(EnumType.STRING)
+    private EstadoReserva estadoReserva;
+
+    @ReadOnly
+    @Column(length = 500)
+    @Stereotype("MEMO")
+    private String motivoRechazo;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ReadOnly
+    private SerieReserva serie;
+
+    @ReadOnly
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date fechaCreacion;
+
+    /** Cuando se movio a esta tabla. */
+    @ReadOnly
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date fechaArchivo;
+
+    // Getters y Setters
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Laboratorio getLaboratorio() { return laboratorio; }
+    public void setLaboratorio(Laboratorio laboratorio) { this.laboratorio = laboratorio; }
+
+    public Usuario getSolicitante() { return solicitante; }
+    public void setSolicitante(Usuario solicitante) { this.solicitante = solicitante; }
+
+    public Date getFecha() { return fecha; }
+    public void setFecha(Date fecha) { this.fecha = fecha; }
+
+    public String getHoraInicio() { return horaInicio; }
+    public void setHoraInicio(String horaInicio) { this.horaInicio = horaInicio; }
+
+    public String getHoraFin() { return horaFin; }
+    public void setHoraFin(String horaFin) { this.horaFin = horaFin; }
+
+    public Integer getMinutoInicio() { return minutoInicio; }
+    public void setMinutoInicio(Integer minutoInicio) { this.minutoInicio = minutoInicio; }
+
+    public Integer getMinutoFin() { return minutoFin; }
+    public void setMinutoFin(Integer minutoFin) { this.minutoFin = minutoFin; }
+
+    public EstadoReserva getEstadoReserva() { return estadoReserva; }
+    public void setEstadoReserva(EstadoReserva estadoReserva) { this.estadoReserva = estadoReserva; }
+
+    public String getMotivoRechazo() { return motivoRechazo; }
+    public void setMotivoRechazo(String motivoRechazo) { this.motivoRechazo = motivoRechazo; }
+
+    public SerieReserva getSerie() { return serie; }
+    public void setSerie(SerieReserva serie) { this.serie = serie; }
+
+    public Date getFechaCreacion() { return fechaCreacion; }
+    public void setFechaCreacion(Date fechaCreacion) { this.fechaCreacion = fechaCreacion; }
+
+    public Date getFechaArchivo() { return fechaArchivo; }
+    public void setFechaArchivo(Date fechaArchivo) { this.fechaArchivo = fechaArchivo; }
+}
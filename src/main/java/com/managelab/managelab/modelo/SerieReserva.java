@@ -0,0 +1,163 @@
+package com.managelab.managelab.modelo;
+
+import java.time.*;
+import java.time.format.*;
+import java.util.*;
+
+import javax.persistence.*;
+
+import org.openxava.annotations.*;
+
+import com.managelab.managelab.servicios.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Serie de reservas que se repite cada semana o cada dos semanas (por ejemplo,
+ * un curso durante todo el ciclo). Al generarla se crea una Reserva PENDIENTE
+ * por cada fecha, salvo las fechas indicadas como excepciones.
+ */
+@Entity
+@View(members = "laboratorio; solicitante; fechaInicio, fechaFin; frecuencia; horaInicio, horaFin; excepciones; reservas")
+@Tab(properties = "laboratorio.nombre, solicitante.nombre, fechaInicio, fechaFin, frecuencia, horaInicio, horaFin")
+public class SerieReserva {
+
+    /** Una serie no puede abarcar mas de un anio. */
+    public static final int MAXIMO_DIAS = 366;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne
+    @Required
+    @DescriptionsList(descriptionProperties = "nombre")
+    private Laboratorio laboratorio;
+
+    @ManyToOne
+    @Required
+    @DescriptionsList(descriptionProperties = "nombre")
+    private Usuario solicitante;
+
+    @Required
+    @Temporal(TemporalType.DATE)
+    private Date fechaInicio;
+
+    @Required
+    @Temporal(TemporalType.DATE)
+    private Date fechaFin;
+
+    @Required
+    @Enumerated(EnumType.STRING)
+    private FrecuenciaSerie frecuencia = FrecuenciaSerie.SEMANAL;
+
+    @Required
+    @Stereotype("TIME")
+    private String horaInicio;
+
+    @Required
+    @Stereotype("TIME")
+    private String horaFin;
+
+    /**
+     * Fechas (yyyy-MM-dd) en las que no se reserva, separadas por coma o salto de linea.
+     */
+    @Column(length = 1000)
+    @Stereotype("MEMO")
+    private String excepciones;
+
+    @OneToMany(mappedBy = "serie")
+    @ReadOnly
+    @ListProperties("fecha, horaInicio, horaFin, estadoReserva")
+    private List<Reserva> reservas = new ArrayList<>();
+
+    @PrePersist
+    @PreUpdate
+    private void antesDeGuardar() {
+        if (horaInicio == null || horaFin == null) return;
+        int inicio = Horas.aMinutos(horaInicio, "horaInicio");
+        int fin = Horas.aMinutos(horaFin, "horaFin");
+        if (fin <= inicio) {
+            throw new javax.validation.ValidationException(
+                "La hora fin debe ser mayor a la hora inicio"
+            );
+        }
+        this.horaInicio = Horas.formato(inicio);
+        this.horaFin = Horas.formato(fin);
+
+        if (fechaInicio != null && fechaFin != null) calcularFechas();
+    }
+
+    /**
+     * Fechas de la serie, desde fechaInicio hasta fechaFin segun la frecuencia
+     * y sin las excepciones.
+     */
+    public List<LocalDate> calcularFechas() {
+        LocalDate desde = ClaveFranja.aLocalDate(fechaInicio);
+        LocalDate hasta = ClaveFranja.aLocalDate(fechaFin);
+        if (hasta.isBefore(desde)) {
+            throw new javax.validation.ValidationException(
+                "La fecha fin de la serie no puede ser anterior a la fecha inicio"
+            );
+        }
+        if (desde.plusDays(MAXIMO_DIAS).isBefore(hasta)) {
+            throw new javax.validation.ValidationException(
+                "Una serie no puede abarcar mas de " + MAXIMO_DIAS + " dias"
+            );
+        }
+
+        Set<LocalDate> omitidas = leerExcepciones();
+        List<LocalDate> fechas = new ArrayList<>();
+        for (LocalDate f = desde; !f.isAfter(hasta); f = f.plusDays(frecuencia.getDias())) {
+            if (!omitidas.contains(f)) fechas.add(f);
+        }
+        return fechas;
+    }
+
+    private Set<LocalDate> leerExcepciones() {
+        Set<LocalDate> fechas = new HashSet<>();
+        if (excepciones == null) return fechas;
+        for (String texto : excepciones.split("[,;\\s]+")) {
+            if (texto.isEmpty()) continue;
+            try {
+                fechas.add(LocalDate.parse(texto));
+            } catch (DateTimeParseException ex) {
+                throw new javax.validation.ValidationException(
+                    "Excepcion invalida '" + texto + "': use el formato yyyy-MM-dd"
+                );
+            }
+        }
+        return fechas;
+    }
+
+    // Getters y Setters
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Laboratorio getLaboratorio() { return laboratorio; }
+    public void setLaboratorio(Laboratorio laboratorio) { this.laboratorio = laboratorio; }
+
+    public Usuario getSolicitante() { return solicitante; }
+    public void setSolicitante(Usuario solicitante) { this.solicitante = solicitante; }
+
+    public Date getFechaInicio() { return fechaInicio; }
+    public void setFechaInicio(Date fechaInicio) { this.fechaInicio = fechaInicio; }
+
+    public Date getFechaFin() { return fechaFin; }
+    public void setFechaFin(Date fechaFin) { this.fechaFin = fechaFin; }
+
+    public FrecuenciaSerie getFrecuencia() { return frecuencia; }
+    public void setFrecuencia(FrecuenciaSerie frecuencia) { this.frecuencia = frecuencia; }
+
+    public String getHoraInicio() { return horaInicio; }
+    public void setHoraInicio(String horaInicio) { this.horaInicio = horaInicio; }
+
+    public String getHoraFin() { return horaFin; }
+    public void setHoraFin(String horaFin) { this.horaFin = horaFin; }
+
+    public String getExcepciones() { return excepciones; }
+    public void setExcepciones(String excepciones) { this.excepciones = excepciones; }
+
+    public List<Reserva> getReservas() { return reservas; }
+    public void setReservas(List<Reserva> reservas) { this.reservas = reservas; }
+}
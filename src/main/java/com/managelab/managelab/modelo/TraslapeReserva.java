@@ -0,0 +1,85 @@
+package com.managelab.managelab.modelo;
+
+import java.util.*;
+
+import javax.persistence.*;
+
+import org.openxava.annotations.*;
+
+/**
+ * Par de reservas APROBADAS del mismo laboratorio y dia que se traslapan,
+ * encontrado por AuditoriaTraslapes. Cada auditoria reemplaza los hallazgos
+ * de la anterior.
+ */
+@Entity
+@View(members = "detectado; laboratorio; fecha; reservaId, otraReservaId; horaInicio, horaFin; minutosTraslape")
+@Tab(properties = "laboratorio.nombre, fecha, horaInicio, horaFin, minutosTraslape, reservaId, otraReservaId, detectado",
+     defaultOrder = "${fecha} desc, ${horaInicio} asc")
+public class TraslapeReserva {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne
+    @ReadOnly
+    @DescriptionsList(descriptionProperties = "nombre")
+    private Laboratorio laboratorio;
+
+    @ReadOnly
+    @Temporal(TemporalType.DATE)
+    private Date fecha;
+
+    /** La que empieza antes (o la de menor id si empiezan a la vez). */
+    @ReadOnly
+    private Long reservaId;
+
+    @ReadOnly
+    private Long otraReservaId;
+
+    /** Inicio del tramo compartido (HH:mm). */
+    @ReadOnly
+    @Column(length = 5)
+    private String horaInicio;
+
+    /** Fin del tramo compartido (HH:mm). */
+    @ReadOnly
+    @Column(length = 5)
+    private String horaFin;
+
+    @ReadOnly
+    private int minutosTraslape;
+
+    @ReadOnly
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date detectado;
+
+    // Getters y Setters
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Laboratorio getLaboratorio() { return laboratorio; }
+    public void setLaboratorio(Laboratorio laboratorio) { this.laboratorio = laboratorio; }
+
+    public Date getFecha() { return fecha; }
+    public void setFecha(Date fecha) { this.fecha = fecha; }
+
+    public Long getReservaId() { return reservaId; }
+    public void setReservaId(Long reservaId) { this.reservaId = reservaId; }
+
+    public Long getOtraReservaId() { return otraReservaId; }
+    public void setOtraReservaId(Long otraReservaId) { this.otraReservaId = otraReservaId; }
+
+    public String getHoraInicio() { return horaInicio; }
+    public void setHoraInicio(String horaInicio) { this.horaInicio = horaInicio; }
+
+    public String getHoraFin() { return horaFin; }
+    public void setHoraFin(String horaFin) { this.horaFin = horaFin; }
+
+    public int getMinutosTraslape() { return minutosTraslape; }
+    public void setMinutosTraslape(int minutosTraslape) { this.minutosTraslape = minutosTraslape; }
+
+    public Date getDetectado() { return detectado; }
+    public void setDetectado(Date detectado) { this.detectado = detectado; }
+}
@@ -0,0 +1,92 @@
+package com.managelab.managelab.procesos;
+
+import java.time.*;
+import java.util.*;
+
+import javax.persistence.*;
+
+import org.apache.commons.logging.*;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.servicios.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Mueve a ReservaHistorica las reservas con fecha anterior a hoy menos
+ * reservas.archivo.diasAntiguedad, para que Reserva y sus indices se queden
+ * con lo que importa para la disponibilidad.
+ *
+ * Trabaja en bloques por id: cada bloque bloquea sus filas, copia con un
+ * INSERT ... SELECT, borra de Reserva y confirma. El bloqueo evita que una
+ * aprobacion o expiracion concurrente cambie el estado entre la lectura y el
+ * borrado (y descuente dos veces el contador de pendientes). Si se corta, la siguiente ejecucion sigue con lo que
+ * quedo en Reserva.
+ */
+public class ArchivoReservas {
+
+    private static final Log log = LogFactory.getLog(ArchivoReservas.class);
+
+    private static final int TAMANO_BLOQUE = 500;
+
+    public void ejecutar() {
+        int dias = Configuracion.getInt("reservas.archivo.diasAntiguedad", 180);
+        if (dias <= 0) return;
+        java.sql.Date limite = java.sql.Date.valueOf(LocalDate.now().minusDays(dias));
+
+        long ultimoId = 0;
+        int archivadas = 0;
+        try {
+            while (true) {
+                @SuppressWarnings("unchecked")
+                List<Object[]> filas = XPersistence.getManager()
+                    .createQuery(
+                        "SELECT r.id, r.laboratorio.id, r.fecha, r.estadoReserva FROM Reserva r " +
+                        "WHERE r.fecha < :limite AND r.id > :ultimoId ORDER BY r.id")
+                    .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                    .setParameter("limite", limite)
+                    .setParameter("ultimoId", ultimoId)
+                    .setMaxResults(TAMANO_BLOQUE)
+                    .getResultList();
+                if (filas.isEmpty()) break;
+
+                ultimoId = (Long) filas.get(filas.size() - 1)[0];
+                int n = archivar(filas);
+                XPersistence.commit();
+
+                archivadas += n;
+                Metricas.contador("archivo.archivadas").add(n);
+            }
+        } finally {
+            XPersistence.rollback();
+        }
+        if (archivadas > 0) log.info("Reservas movidas a ReservaHistorica: " + archivadas);
+    }
+
+    private int archivar(List<Object[]> filas) {
+        List<Long> ids = new ArrayList<>(filas.size());
+        Set<ClaveFranja> diasAfectados = new HashSet<>();
+        for (Object[] fila : filas) {
+            ids.add((Long) fila[0]);
+            diasAfectados.add(ClaveFranja.de((Long) fila[1], (Date) fila[2]));
+            if (fila[3] == EstadoReserva.PENDIENTE) PendientesLaboratorios.ajustar((Long) fila[1], -1);
+        }
+
+        EntityManager em = XPersistence.getManager();
+        em.createQuery(
+                "INSERT INTO ReservaHistorica (id, laboratorio, solicitante, fecha, horaInicio, horaFin, " +
+                "minutoInicio, minutoFin, estadoReserva, motivoRechazo, serie, fechaCreacion, fechaArchivo) " +
+                "SELECT r.id, r.laboratorio, r.solicitante, r.fecha, r.horaInicio, r.horaFin, " +
+                "r.minutoInicio, r.minutoFin, r.estadoReserva, r.motivoRechazo, r.serie, r.fechaCreacion, " +
+                "current_timestamp() FROM Reserva r WHERE r.id IN :ids")
+            .setParameter("ids", ids)
+            .executeUpdate();
+        int borradas = em.createQuery("DELETE FROM Reserva r WHERE r.id IN :ids")
+            .setParameter("ids", ids)
+            .executeUpdate();
+
+        IndiceReservas indice = IndiceReservas.getInstance();
+        for (ClaveFranja dia : diasAfectados) indice.invalidarAlConfirmar(dia);
+        return borradas;
+    }
+}
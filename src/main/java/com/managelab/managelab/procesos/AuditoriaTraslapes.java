@@ -0,0 +1,98 @@
+package com.managelab.managelab.procesos;
+
+import java.sql.*;
+import java.util.*;
+
+import org.apache.commons.logging.*;
+import org.hibernate.Session;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Busca en toda la tabla Reserva los pares de reservas APROBADAS que se
+ * traslapan y los deja en TraslapeReserva.
+ *
+ * Una sola pasada con un cursor de solo avance ordenado por (laboratorio,
+ * fecha, inicio): las reservas abiertas del dia en curso se guardan en un
+ * monticulo por hora de fin; al llegar una reserva se sueltan las que ya
+ * terminaron y todas las que quedan se traslapan con ella. La memoria depende
+ * solo de cuantas reservas coinciden a la vez, no del tamano de la tabla.
+ * Todo va en una transaccion: el informe nunca queda a medias.
+ */
+public class AuditoriaTraslapes {
+
+    private static final Log log = LogFactory.getLog(AuditoriaTraslapes.class);
+
+    private static final int TAMANO_BATCH = 500;
+
+    public int ejecutar() {
+        long comienzo = System.nanoTime();
+        try {
+            XPersistence.getManager().createQuery("DELETE FROM TraslapeReserva").executeUpdate();
+            int[] totales = XPersistence.getManager().unwrap(Session.class).doReturningWork(this::barrer);
+            XPersistence.commit();
+            Metricas.contador("auditoriaTraslapes.encontrados").add(totales[1]);
+            log.info("Auditoria de traslapes: " + totales[0] + " reservas aprobadas revisadas, "
+                + totales[1] + " traslape(s) en " + (System.nanoTime() - comienzo) / 1000000 + " ms");
+            return totales[1];
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+
+    /** Devuelve {reservas revisadas, traslapes encontrados}. */
+    private int[] barrer(Connection con) throws SQLException {
+        int revisadas = 0;
+        int traslapes = 0;
+        Timestamp ahora = new Timestamp(System.currentTimeMillis());
+        // Abiertas del dia en curso: {id, fin}, la que termina antes arriba
+        PriorityQueue<long[]> abiertas = new PriorityQueue<>(Comparator.comparingLong((long[] a) -> a[1]));
+        try (PreparedStatement lectura = con.prepareStatement(
+                "SELECT id, laboratorio_id, fecha, minutoInicio, minutoFin FROM Reserva " +
+                "WHERE estadoReserva = ? AND minutoInicio IS NOT NULL AND minutoFin > minutoInicio " +
+                "ORDER BY laboratorio_id, fecha, minutoInicio, id",
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+             PreparedStatement insercion = con.prepareStatement(
+                "INSERT INTO TraslapeReserva (laboratorio_id, fecha, reservaId, otraReservaId, " +
+                "horaInicio, horaFin, minutosTraslape, detectado) VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            lectura.setString(1, EstadoReserva.APROBADA.name());
+            lectura.setFetchSize(1000);
+            long laboratorio = -1;
+            java.sql.Date fecha = null;
+            try (ResultSet rs = lectura.executeQuery()) {
+                while (rs.next()) {
+                    revisadas++;
+                    long id = rs.getLong(1);
+                    long lab = rs.getLong(2);
+                    java.sql.Date dia = rs.getDate(3);
+                    int inicio = rs.getInt(4);
+                    int fin = rs.getInt(5);
+                    if (lab != laboratorio || !dia.equals(fecha)) {
+                        abiertas.clear();
+                        laboratorio = lab;
+                        fecha = dia;
+                    }
+                    while (!abiertas.isEmpty() && abiertas.peek()[1] <= inicio) abiertas.poll();
+                    for (long[] abierta : abiertas) {
+                        int finComun = (int) Math.min(abierta[1], fin);
+                        insercion.setLong(1, lab);
+                        insercion.setDate(2, dia);
+                        insercion.setLong(3, abierta[0]);
+                        insercion.setLong(4, id);
+                        insercion.setString(5, Horas.formato(inicio));
+                        insercion.setString(6, Horas.formato(finComun));
+                        insercion.setInt(7, finComun - inicio);
+                        insercion.setTimestamp(8, ahora);
+                        insercion.addBatch();
+                        if (++traslapes % TAMANO_BATCH == 0) insercion.executeBatch();
+                    }
+                    abiertas.add(new long[] { id, fin });
+                }
+            }
+            if (traslapes % TAMANO_BATCH != 0) insercion.executeBatch();
+        }
+        return new int[] { revisadas, traslapes };
+    }
+}
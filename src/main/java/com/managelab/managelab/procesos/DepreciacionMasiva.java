@@ -0,0 +1,188 @@
+package com.managelab.managelab.procesos;
+
+import java.math.*;
+import java.sql.*;
+import java.time.*;
+import java.util.concurrent.atomic.*;
+
+import org.apache.commons.logging.*;
+import org.hibernate.Session;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Calcula la depreciacion de todos los activos y deja un DepreciacionActivo
+ * por activo con la fecha de la corrida (cierre de mes).
+ *
+ * Trabaja en lotes por id de activos.depreciacion.tamanoLote: cada lote se lee
+ * con un cursor JDBC de solo avance, se calcula en memoria, se inserta en
+ * batch y se confirma junto con el avance de la CorridaDepreciacion. El commit
+ * cierra el EntityManager, asi que la memoria no crece con la tabla. Si se
+ * corta, la siguiente ejecucion retoma la corrida abierta desde el ultimo
+ * activo confirmado.
+ */
+public class DepreciacionMasiva {
+
+    private static final Log log = LogFactory.getLog(DepreciacionMasiva.class);
+
+    private static final AtomicBoolean enCurso = new AtomicBoolean();
+
+    public static class Resultado {
+
+        private final LocalDate fechaCalculo;
+        private final boolean reanudada;
+        private final int procesados;
+        private final int omitidos;
+        private final long nanos;
+
+        Resultado(LocalDate fechaCalculo, boolean reanudada, int procesados, int omitidos, long nanos) {
+            this.fechaCalculo = fechaCalculo;
+            this.reanudada = reanudada;
+            this.procesados = procesados;
+            this.omitidos = omitidos;
+            this.nanos = nanos;
+        }
+
+        public LocalDate getFechaCalculo() { return fechaCalculo; }
+        /** True si siguio una corrida que habia quedado a medias. */
+        public boolean isReanudada() { return reanudada; }
+        /** Depreciaciones escritas en esta ejecucion. */
+        public int getProcesados() { return procesados; }
+        /** Activos sin costo, vida util o fecha de adquisicion. */
+        public int getOmitidos() { return omitidos; }
+        public double getSegundos() { return nanos / 1e9; }
+        public double getFilasPorSegundo() { return nanos == 0 ? 0 : procesados / (nanos / 1e9); }
+    }
+
+    public Resultado ejecutar() {
+        if (!enCurso.compareAndSet(false, true)) {
+            throw new javax.validation.ValidationException("Ya hay una depreciacion masiva en curso");
+        }
+        try {
+            return correr();
+        } finally {
+            enCurso.set(false);
+        }
+    }
+
+    private Resultado correr() {
+        int tamanoLote = Math.max(1, Configuracion.getInt("activos.depreciacion.tamanoLote", 1000));
+        long comienzo = System.nanoTime();
+        try {
+            CorridaDepreciacion corrida = abierta();
+            boolean reanudada = corrida != null;
+            if (corrida == null) corrida = nueva();
+            long corridaId = corrida.getId();
+            long ultimoId = corrida.getUltimoActivoId();
+            java.sql.Date fecha = new java.sql.Date(corrida.getFechaCalculo().getTime());
+            if (reanudada) {
+                log.info("Depreciacion masiva del " + fecha + ": se retoma despues del activo " + ultimoId
+                    + " (" + corrida.getProcesados() + " ya procesados)");
+            }
+
+            int procesados = 0;
+            int omitidos = 0;
+            while (true) {
+                final long desde = ultimoId;
+                long[] lote = XPersistence.getManager().unwrap(Session.class)
+                    .doReturningWork(con -> lote(con, corridaId, fecha, desde, tamanoLote));
+                if (lote[0] == 0) break;
+                XPersistence.commit();
+                ultimoId = lote[1];
+                procesados += lote[2];
+                omitidos += lote[0] - lote[2];
+                Metricas.contador("depreciacion.procesados").add(lote[2]);
+            }
+
+            XPersistence.getManager()
+                .createQuery("UPDATE CorridaDepreciacion c SET c.terminada = current_timestamp() WHERE c.id = :id")
+                .setParameter("id", corridaId)
+                .executeUpdate();
+            XPersistence.commit();
+
+            Resultado resultado = new Resultado(fecha.toLocalDate(), reanudada, procesados, omitidos,
+                System.nanoTime() - comienzo);
+            log.info(String.format("Depreciacion masiva del %s: %d activos en %.1f s (%.0f filas/s), %d omitidos",
+                fecha, procesados, resultado.getSegundos(), resultado.getFilasPorSegundo(), omitidos));
+            return resultado;
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+
+    /** La corrida sin terminar mas antigua, o null. */
+    private static CorridaDepreciacion abierta() {
+        return XPersistence.getManager()
+            .createQuery("SELECT c FROM CorridaDepreciacion c WHERE c.terminada IS NULL ORDER BY c.id",
+                CorridaDepreciacion.class)
+            .setMaxResults(1)
+            .getResultList()
+            .stream().findFirst().orElse(null);
+    }
+
+    private static CorridaDepreciacion nueva() {
+        java.sql.Date hoy = java.sql.Date.valueOf(LocalDate.now());
+        Long hechas = (Long) XPersistence.getManager()
+            .createQuery("SELECT count(c) FROM CorridaDepreciacion c WHERE c.fechaCalculo = :hoy")
+            .setParameter("hoy", hoy)
+            .getSingleResult();
+        if (hechas > 0) {
+            throw new javax.validation.ValidationException("Ya se hizo la depreciacion masiva del " + hoy);
+        }
+        CorridaDepreciacion corrida = new CorridaDepreciacion();
+        corrida.setFechaCalculo(hoy);
+        corrida.setIniciada(new java.util.Date());
+        XPersistence.getManager().persist(corrida);
+        XPersistence.commit();
+        return corrida;
+    }
+
+    /**
+     * Deprecia los activos con id mayor que desde, hasta tamanoLote, y avanza la
+     * corrida en la misma transaccion. Devuelve {leidos, ultimo id, escritos}.
+     */
+    private static long[] lote(Connection con, long corridaId, java.sql.Date fecha, long desde, int tamanoLote)
+            throws SQLException {
+        LocalDate dia = fecha.toLocalDate();
+        long leidos = 0;
+        long ultimoId = desde;
+        long escritos = 0;
+        try (PreparedStatement lectura = con.prepareStatement(
+                "SELECT id, costoInicial, fechaAdquisicion, vidaUtilAnios FROM Activo WHERE id > ? ORDER BY id",
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+             PreparedStatement insercion = con.prepareStatement(
+                "INSERT INTO DepreciacionActivo (activo_id, fechaCalculo, valorCalculado) VALUES (?, ?, ?)")) {
+            lectura.setLong(1, desde);
+            lectura.setMaxRows(tamanoLote);
+            lectura.setFetchSize(tamanoLote);
+            try (ResultSet rs = lectura.executeQuery()) {
+                while (rs.next()) {
+                    leidos++;
+                    ultimoId = rs.getLong(1);
+                    BigDecimal costo = rs.getBigDecimal(2);
+                    java.sql.Date adquisicion = rs.getDate(3);
+                    int vidaUtil = rs.getInt(4);
+                    if (costo == null || adquisicion == null || vidaUtil <= 0) continue;
+                    insercion.setLong(1, ultimoId);
+                    insercion.setDate(2, fecha);
+                    insercion.setBigDecimal(3, Activo.valorDepreciado(costo, vidaUtil, adquisicion.toLocalDate(), dia));
+                    insercion.addBatch();
+                    escritos++;
+                }
+            }
+            if (escritos > 0) insercion.executeBatch();
+        }
+        if (leidos > 0) {
+            try (PreparedStatement avance = con.prepareStatement(
+                    "UPDATE CorridaDepreciacion SET ultimoActivoId = ?, procesados = procesados + ? WHERE id = ?")) {
+                avance.setLong(1, ultimoId);
+                avance.setLong(2, escritos);
+                avance.setLong(3, corridaId);
+                avance.executeUpdate();
+            }
+        }
+        return new long[] { leidos, ultimoId, escritos };
+    }
+}
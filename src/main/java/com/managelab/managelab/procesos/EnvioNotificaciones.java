@@ -0,0 +1,171 @@
+package com.managelab.managelab.procesos;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.persistence.*;
+
+import org.apache.commons.logging.*;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.servicios.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Envia las NotificacionCorreo pendientes.
+ *
+ * Reserva un lote (lo aparta unos minutos con proximoIntento y confirma, sin
+ * retener bloqueos mientras se habla con el servidor SMTP), junta los correos
+ * de cada destinatario en un solo mensaje y los manda con un grupo acotado de
+ * hilos que comparten conexiones SMTP. Los que fallan se reintentan con espera
+ * exponencial; al agotar notificaciones.maximoIntentos quedan FALLIDAS.
+ */
+public class EnvioNotificaciones {
+
+    private static final Log log = LogFactory.getLog(EnvioNotificaciones.class);
+
+    private static final int TAMANO_LOTE = 200;
+    private static final long RESERVA_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final long ESPERA_MAXIMA_MS = TimeUnit.DAYS.toMillis(1);
+
+    private static ExecutorService hilos;
+    private static CorreoSmtp correo;
+
+    public void ejecutar() {
+        List<NotificacionCorreo> lote = reservarLote();
+        if (lote.isEmpty()) return;
+
+        Map<String, List<NotificacionCorreo>> porDestinatario = new LinkedHashMap<>();
+        for (NotificacionCorreo n : lote) {
+            porDestinatario.computeIfAbsent(n.getDestinatario().trim().toLowerCase(), d -> new ArrayList<>()).add(n);
+        }
+
+        Map<Long, String> errores = new HashMap<>();
+        List<Future<?>> envios = new ArrayList<>();
+        for (List<NotificacionCorreo> grupo : porDestinatario.values()) {
+            envios.add(getHilos().submit(() -> enviar(grupo, errores)));
+        }
+        for (Future<?> envio : envios) {
+            try {
+                envio.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException ex) {
+                log.error("Fallo un hilo de envio de correos", ex.getCause());
+            }
+        }
+        registrarResultados(lote, errores);
+    }
+
+    /**
+     * Cierra los hilos y las conexiones SMTP; lo llama TareasProgramadas al detenerse.
+     */
+    public static synchronized void cerrar() {
+        if (hilos != null) hilos.shutdownNow();
+        if (correo != null) correo.cerrar();
+        hilos = null;
+        correo = null;
+    }
+
+    private List<NotificacionCorreo> reservarLote() {
+        try {
+            List<NotificacionCorreo> lote = XPersistence.getManager()
+                .createQuery(
+                    "SELECT n FROM NotificacionCorreo n " +
+                    "WHERE n.estado = :pendiente AND n.proximoIntento <= :ahora ORDER BY n.proximoIntento",
+                    NotificacionCorreo.class)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .setParameter("pendiente", EstadoNotificacion.PENDIENTE)
+                .setParameter("ahora", new Date())
+                .setMaxResults(TAMANO_LOTE)
+                .getResultList();
+            // Si el nodo cae a mitad del envio, el lote vuelve a estar disponible al vencer la reserva
+            Date reservadoHasta = new Date(System.currentTimeMillis() + RESERVA_MS);
+            for (NotificacionCorreo n : lote) n.setProximoIntento(reservadoHasta);
+            XPersistence.commit();
+            return lote;
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+
+    private static void enviar(List<NotificacionCorreo> grupo, Map<Long, String> errores) {
+        NotificacionCorreo primera = grupo.get(0);
+        String asunto = primera.getAsunto();
+        String cuerpo = primera.getCuerpo();
+        if (grupo.size() > 1) {
+            asunto = grupo.size() + " novedades en sus reservas";
+            StringBuilder sb = new StringBuilder();
+            for (NotificacionCorreo n : grupo) {
+                sb.append("== ").append(n.getAsunto()).append(" ==\n").append(n.getCuerpo()).append("\n\n");
+            }
+            cuerpo = sb.toString();
+        }
+        try {
+            getCorreo().enviar(primera.getDestinatario(), asunto, cuerpo);
+            Metricas.contador("notificaciones.enviadas").add(grupo.size());
+            Metricas.contador("notificaciones.mensajes").increment();
+        } catch (Exception ex) {
+            String error = ex.getClass().getSimpleName() + ": " + ex.getMessage();
+            synchronized (errores) {
+                for (NotificacionCorreo n : grupo) errores.put(n.getId(), error);
+            }
+        }
+    }
+
+    private void registrarResultados(List<NotificacionCorreo> lote, Map<Long, String> errores) {
+        int maximoIntentos = Configuracion.getInt("notificaciones.maximoIntentos", 6);
+        long esperaBase = TimeUnit.SECONDS.toMillis(Configuracion.getInt("notificaciones.esperaSegundos", 60));
+        long ahora = System.currentTimeMillis();
+        try {
+            EntityManager em = XPersistence.getManager();
+            for (NotificacionCorreo enviada : lote) {
+                NotificacionCorreo n = em.find(NotificacionCorreo.class, enviada.getId());
+                if (n == null) continue;
+                String error = errores.get(n.getId());
+                if (error == null) {
+                    n.setEstado(EstadoNotificacion.ENVIADA);
+                    n.setEnviada(new Date(ahora));
+                    n.setUltimoError(null);
+                    continue;
+                }
+                n.setIntentos(n.getIntentos() + 1);
+                n.setUltimoError(error.length() > 500 ? error.substring(0, 500) : error);
+                if (n.getIntentos() >= maximoIntentos) {
+                    n.setEstado(EstadoNotificacion.FALLIDA);
+                    Metricas.contador("notificaciones.fallidas").increment();
+                    log.warn("Notificacion " + n.getId() + " a " + n.getDestinatario() + " descartada: " + error);
+                } else {
+                    long espera = Math.min(ESPERA_MAXIMA_MS, esperaBase << Math.min(n.getIntentos() - 1, 20));
+                    n.setProximoIntento(new Date(ahora + espera));
+                    Metricas.contador("notificaciones.reintentos").increment();
+                }
+            }
+            XPersistence.commit();
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+
+    private static synchronized ExecutorService getHilos() {
+        if (hilos == null) {
+            int n = Configuracion.getInt("notificaciones.hilos", 2);
+            // Cola acotada: si se llena, el hilo del planificador envia el mismo
+            hilos = new ThreadPoolExecutor(n, n, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(TAMANO_LOTE),
+                r -> {
+                    Thread hilo = new Thread(r, "managelab-correo");
+                    hilo.setDaemon(true);
+                    return hilo;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        return hilos;
+    }
+
+    private static synchronized CorreoSmtp getCorreo() {
+        if (correo == null) correo = new CorreoSmtp(Configuracion.getInt("notificaciones.hilos", 2));
+        return correo;
+    }
+}
@@ -0,0 +1,114 @@
+package com.managelab.managelab.procesos;
+
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import javax.persistence.*;
+
+import org.apache.commons.logging.*;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.servicios.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Pasa a EXPIRADA las reservas PENDIENTES cuyo horario ya paso o que llevan
+ * mas de reservas.expiracion.horasPendiente horas sin atender, para que dejen
+ * de ocupar el laboratorio.
+ *
+ * Avanza por id en bloques: cada bloque es una consulta por keyset que bloquea
+ * sus filas, un UPDATE sobre sus ids y un commit, asi nunca retiene bloqueos
+ * largos sobre Reserva.
+ */
+public class ExpiracionReservas {
+
+    private static final Log log = LogFactory.getLog(ExpiracionReservas.class);
+
+    private static final int TAMANO_BLOQUE = 500;
+
+    private static final AtomicLong ultimoPorSegundo = new AtomicLong();
+    private static final AtomicLong ultimaDuracionMs = new AtomicLong();
+
+    static {
+        Metricas.medidor("expiracion.ultimaEjecucion.porSegundo", ultimoPorSegundo::get);
+        Metricas.medidor("expiracion.ultimaEjecucion.ms", ultimaDuracionMs::get);
+    }
+
+    public void ejecutar() {
+        long comienzo = System.currentTimeMillis();
+        LocalDateTime ahora = LocalDateTime.now();
+        int horas = Configuracion.getInt("reservas.expiracion.horasPendiente", 72);
+        // Sin limite de antiguedad solo expiran las que ya pasaron
+        Date limite = horas > 0
+            ? Date.from(ahora.minusHours(horas).atZone(ZoneId.systemDefault()).toInstant())
+            : new Date(0);
+
+        long ultimoId = 0;
+        int expiradas = 0;
+        try {
+            while (true) {
+                @SuppressWarnings("unchecked")
+                List<Object[]> filas = XPersistence.getManager()
+                    .createQuery(
+                        "SELECT r.id, r.laboratorio.id, r.fecha, r.minutoInicio, r.minutoFin FROM Reserva r " +
+                        "WHERE r.estadoReserva = :pendiente AND r.id > :ultimoId " +
+                        "AND (r.fecha < :hoy " +
+                            "OR (r.fecha = :hoy AND r.minutoFin <= :minutoActual) " +
+                            "OR r.fechaCreacion < :limite) " +
+                        "ORDER BY r.id")
+                    .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                    .setParameter("pendiente", EstadoReserva.PENDIENTE)
+                    .setParameter("ultimoId", ultimoId)
+                    .setParameter("hoy", java.sql.Date.valueOf(ahora.toLocalDate()))
+                    .setParameter("minutoActual", ahora.getHour() * 60 + ahora.getMinute())
+                    .setParameter("limite", limite)
+                    .setMaxResults(TAMANO_BLOQUE)
+                    .getResultList();
+                if (filas.isEmpty()) break;
+
+                ultimoId = (Long) filas.get(filas.size() - 1)[0];
+                int n = expirar(filas);
+                XPersistence.commit();
+
+                expiradas += n;
+                Metricas.contador("expiracion.expiradas").add(n);
+                Metricas.contador("expiracion.bloques").increment();
+            }
+        } finally {
+            XPersistence.rollback();
+        }
+
+        long duracion = Math.max(1, System.currentTimeMillis() - comienzo);
+        ultimaDuracionMs.set(duracion);
+        ultimoPorSegundo.set(expiradas * 1000L / duracion);
+        Metricas.contador("expiracion.ejecuciones").increment();
+        if (expiradas > 0) log.info("Reservas PENDIENTES expiradas: " + expiradas + " en " + duracion + " ms");
+    }
+
+    private int expirar(List<Object[]> filas) {
+        List<Long> ids = new ArrayList<>(filas.size());
+        Set<ClaveFranja> dias = new HashSet<>();
+        for (Object[] fila : filas) {
+            ClaveFranja dia = ClaveFranja.de((Long) fila[1], (Date) fila[2]);
+            ids.add((Long) fila[0]);
+            dias.add(dia);
+            TransicionesReserva.registrar((Long) fila[0], dia, (Integer) fila[3], (Integer) fila[4],
+                EstadoReserva.PENDIENTE, EstadoReserva.EXPIRADA);
+        }
+
+        IndiceReservas indice = IndiceReservas.getInstance();
+        for (ClaveFranja dia : dias) indice.invalidarAlConfirmar(dia);
+
+        return XPersistence.getManager()
+            .createQuery(
+                "UPDATE Reserva r SET r.estadoReserva = :expirada, r.ultimoCambio = :ahora " +
+                "WHERE r.id IN :ids AND r.estadoReserva = :pendiente")
+            .setParameter("expirada", EstadoReserva.EXPIRADA)
+            .setParameter("ahora", new Date())
+            .setParameter("ids", ids)
+            .setParameter("pendiente", EstadoReserva.PENDIENTE)
+            .executeUpdate();
+    }
+}
@@ -0,0 +1,98 @@
+package com.managelab.managelab.procesos;
+
+import java.sql.*;
+import java.util.*;
+
+import org.apache.commons.logging.*;
+import org.hibernate.Session;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Rellena minutoInicio/minutoFin de las reservas creadas antes de que existieran
+ * esas columnas. Avanza por id en bloques, con una transaccion por bloque, y es
+ * seguro volver a ejecutarla.
+ *
+ * Tambien da fechaCreacion a las PENDIENTES que no la tienen: se toma el momento
+ * de la migracion, asi ExpiracionReservas las expira por antiguedad
+ * reservas.expiracion.horasPendiente horas despues en lugar de nunca.
+ */
+public class MigracionMinutosReserva {
+
+    private static final Log log = LogFactory.getLog(MigracionMinutosReserva.class);
+
+    private static final int TAMANO_BLOQUE = 500;
+
+    public void ejecutar() {
+        long ultimoId = 0;
+        int migradas = 0;
+        try {
+            while (true) {
+                @SuppressWarnings("unchecked")
+                List<Object[]> filas = XPersistence.getManager()
+                    .createQuery(
+                        "SELECT r.id, r.horaInicio, r.horaFin FROM Reserva r " +
+                        "WHERE r.minutoInicio IS NULL AND r.id > :ultimoId ORDER BY r.id")
+                    .setParameter("ultimoId", ultimoId)
+                    .setMaxResults(TAMANO_BLOQUE)
+                    .getResultList();
+                if (filas.isEmpty()) break;
+
+                ultimoId = (Long) filas.get(filas.size() - 1)[0];
+                migradas += actualizar(filas);
+                XPersistence.commit();
+            }
+        } finally {
+            XPersistence.rollback();
+        }
+        if (migradas > 0) log.info("Reservas migradas a minutos del dia: " + migradas);
+        completarFechaCreacion();
+    }
+
+    private void completarFechaCreacion() {
+        int completadas;
+        try {
+            completadas = XPersistence.getManager()
+                .createQuery(
+                    "UPDATE Reserva r SET r.fechaCreacion = current_timestamp() " +
+                    "WHERE r.fechaCreacion IS NULL AND r.estadoReserva = :pendiente")
+                .setParameter("pendiente", EstadoReserva.PENDIENTE)
+                .executeUpdate();
+            XPersistence.commit();
+        } finally {
+            XPersistence.rollback();
+        }
+        if (completadas > 0) log.info("Reservas PENDIENTES sin fecha de creacion completadas: " + completadas);
+    }
+
+    private int actualizar(List<Object[]> filas) {
+        return XPersistence.getManager().unwrap(Session.class).doReturningWork(con -> {
+            int n = 0;
+            try (PreparedStatement ps = con.prepareStatement(
+                    "UPDATE Reserva SET minutoInicio = ?, minutoFin = ?, horaInicio = ?, horaFin = ? WHERE id = ?")) {
+                for (Object[] fila : filas) {
+                    int inicio, fin;
+                    try {
+                        inicio = Horas.aMinutos((String) fila[1], "horaInicio");
+                        fin = Horas.aMinutos((String) fila[2], "horaFin");
+                    } catch (RuntimeException ex) {
+                        log.warn("Reserva " + fila[0] + " con horario invalido, no se migra: "
+                            + fila[1] + " - " + fila[2]);
+                        continue;
+                    }
+                    ps.setInt(1, inicio);
+                    ps.setInt(2, fin);
+                    ps.setString(3, Horas.formato(inicio));
+                    ps.setString(4, Horas.formato(fin));
+                    ps.setLong(5, (Long) fila[0]);
+                    ps.addBatch();
+                    n++;
+                }
+                if (n > 0) ps.executeBatch();
+            }
+            return n;
+        });
+    }
+}
@@ -0,0 +1,101 @@
+package com.managelab.managelab.procesos;
+
+import java.sql.*;
+import java.time.*;
+import java.util.*;
+
+import org.apache.commons.logging.*;
+import org.hibernate.Session;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.servicios.*;
+
+/**
+ * Rehace OcupacionHora desde cero: recorre una sola vez las reservas APROBADAS
+ * (Reserva y ReservaHistorica) con un cursor de solo avance, acumula los
+ * minutos por laboratorio, dia y hora en memoria y los inserta con un batch.
+ * Todo en una transaccion, asi los informes nunca ven el resumen a medias.
+ */
+public class RecalculoOcupacion {
+
+    private static final Log log = LogFactory.getLog(RecalculoOcupacion.class);
+
+    private static final int TAMANO_BATCH = 500;
+
+    /**
+     * Recalcula solo si el resumen esta vacio; para el primer arranque.
+     */
+    public void ejecutarSiVacio() {
+        try {
+            boolean vacio = XPersistence.getManager()
+                .createQuery("SELECT o.id FROM OcupacionHora o")
+                .setMaxResults(1)
+                .getResultList()
+                .isEmpty();
+            if (vacio) ejecutar();
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+
+    public int ejecutar() {
+        try {
+            XPersistence.getManager().createQuery("DELETE FROM OcupacionHora").executeUpdate();
+            int filas = XPersistence.getManager().unwrap(Session.class).doReturningWork(con -> {
+                Map<ClaveFranja, int[]> porDia = new HashMap<>();
+                leer(con, "Reserva", porDia);
+                leer(con, "ReservaHistorica", porDia);
+                return insertar(con, porDia);
+            });
+            XPersistence.commit();
+            log.info("Resumen de ocupacion recalculado: " + filas + " horas ocupadas");
+            return filas;
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+
+    private static void leer(Connection con, String tabla, Map<ClaveFranja, int[]> porDia) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(
+                "SELECT laboratorio_id, fecha, minutoInicio, minutoFin FROM " + tabla + " " +
+                "WHERE estadoReserva = ? AND minutoInicio IS NOT NULL AND minutoFin > minutoInicio")) {
+            ps.setString(1, EstadoReserva.APROBADA.name());
+            ps.setFetchSize(1000);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ClaveFranja clave = new ClaveFranja(rs.getLong(1), rs.getDate(2).toLocalDate());
+                    int[] horas = porDia.computeIfAbsent(clave, k -> new int[24]);
+                    int inicio = rs.getInt(3);
+                    int fin = rs.getInt(4);
+                    for (int hora = inicio / 60; hora * 60 < fin && hora < 24; hora++) {
+                        horas[hora] += Math.min(fin, (hora + 1) * 60) - Math.max(inicio, hora * 60);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int insertar(Connection con, Map<ClaveFranja, int[]> porDia) throws SQLException {
+        int filas = 0;
+        try (PreparedStatement ps = con.prepareStatement(
+                "INSERT INTO OcupacionHora (laboratorio_id, fecha, semana, hora, minutosOcupados) VALUES (?, ?, ?, ?, ?)")) {
+            for (Map.Entry<ClaveFranja, int[]> dia : porDia.entrySet()) {
+                LocalDate fecha = dia.getKey().getFecha();
+                int[] horas = dia.getValue();
+                for (int hora = 0; hora < 24; hora++) {
+                    if (horas[hora] == 0) continue;
+                    ps.setLong(1, dia.getKey().getLaboratorioId());
+                    ps.setDate(2, java.sql.Date.valueOf(fecha));
+                    ps.setDate(3, java.sql.Date.valueOf(OcupacionLaboratorios.semana(fecha)));
+                    ps.setInt(4, hora);
+                    ps.setInt(5, horas[hora]);
+                    ps.addBatch();
+                    if (++filas % TAMANO_BATCH == 0) ps.executeBatch();
+                }
+            }
+            if (filas % TAMANO_BATCH != 0) ps.executeBatch();
+        }
+        return filas;
+    }
+}
@@ -0,0 +1,272 @@
+package com.managelab.managelab.procesos;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.persistence.*;
+
+import org.apache.commons.logging.*;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.servicios.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Entrega los EventoReserva nuevos a cada consumidor registrado, por lotes y
+ * en orden de id, y guarda el avance en CursorEventos.
+ *
+ * Si un consumidor falla con un evento, ese evento y los siguientes del mismo
+ * laboratorio quedan en EventoRetenido y el cursor sigue: los demas
+ * laboratorios no esperan. En cada vuelta se reintentan los retenidos de cada
+ * laboratorio en orden; tras eventos.relay.maximoIntentos fallos el evento se
+ * descarta y su laboratorio sigue con el siguiente.
+ *
+ * La entrega es al menos una vez. Un id se toma antes del commit y otra
+ * transaccion puede confirmar antes un id mayor, asi que el cursor no basta:
+ * cada id que salta queda en HuecoEvento y se vuelve a buscar en cada vuelta
+ * hasta que aparece (y se entrega) o pasan eventos.relay.minutosHueco, que
+ * solo ocurre con ids de transacciones revertidas.
+ */
+public class RelayEventos {
+
+    private static final Log log = LogFactory.getLog(RelayEventos.class);
+
+    private static final int TAMANO_LOTE = 200;
+
+    private static final List<ConsumidorEventos> consumidores = new CopyOnWriteArrayList<>();
+
+    public static void registrar(ConsumidorEventos consumidor) {
+        for (ConsumidorEventos c : consumidores) {
+            if (c.getNombre().equals(consumidor.getNombre())) return;
+        }
+        consumidores.add(consumidor);
+    }
+
+    /**
+     * Registra los consumidores de la propiedad eventos.consumidores
+     * (nombres de clase separados por coma).
+     */
+    public static void registrarConfigurados() {
+        String clases = Configuracion.getString("eventos.consumidores", "");
+        for (String clase : clases.split(",")) {
+            if (clase.trim().isEmpty()) continue;
+            try {
+                registrar((ConsumidorEventos) Class.forName(clase.trim()).getDeclaredConstructor().newInstance());
+            } catch (ReflectiveOperationException | ClassCastException ex) {
+                log.error("No se pudo registrar el consumidor de eventos " + clase.trim(), ex);
+            }
+        }
+    }
+
+    public void ejecutar() {
+        for (ConsumidorEventos consumidor : consumidores) {
+            try {
+                reintentarRetenidos(consumidor);
+                revisarHuecos(consumidor);
+                while (entregarLote(consumidor) == TAMANO_LOTE) {
+                    // Hay mas eventos pendientes
+                }
+            } catch (RuntimeException ex) {
+                log.error("Fallo la entrega de eventos a " + consumidor.getNombre(), ex);
+            } finally {
+                XPersistence.rollback();
+            }
+        }
+    }
+
+    /**
+     * Reintenta, por laboratorio y en orden, los eventos retenidos del
+     * consumidor. El primero que vuelve a fallar detiene a su laboratorio
+     * hasta la proxima vuelta, salvo que agote los intentos y se descarte.
+     */
+    private void reintentarRetenidos(ConsumidorEventos consumidor) {
+        EntityManager em = XPersistence.getManager();
+        bloquearCursor(consumidor.getNombre());
+        List<EventoRetenido> retenidos = em
+            .createQuery(
+                "SELECT r FROM EventoRetenido r WHERE r.consumidor = :consumidor AND r.descartado = false " +
+                "ORDER BY r.laboratorioId, r.eventoId", EventoRetenido.class)
+            .setParameter("consumidor", consumidor.getNombre())
+            .getResultList();
+        int maximoIntentos = Configuracion.getInt("eventos.relay.maximoIntentos", 10);
+        Set<Long> detenidos = new HashSet<>();
+        for (EventoRetenido retenido : retenidos) {
+            if (detenidos.contains(retenido.getLaboratorioId())) continue;
+            EventoReserva evento = em.find(EventoReserva.class, retenido.getEventoId());
+            if (evento == null) {
+                em.remove(retenido);
+                continue;
+            }
+            try {
+                consumidor.procesar(evento);
+                em.remove(retenido);
+                Metricas.contador("eventos.entregados." + consumidor.getNombre()).increment();
+            } catch (Exception ex) {
+                Metricas.contador("eventos.fallidos." + consumidor.getNombre()).increment();
+                retenido.setIntentos(retenido.getIntentos() + 1);
+                retenido.setUltimoError(error(ex));
+                if (retenido.getIntentos() >= maximoIntentos) {
+                    retenido.setDescartado(true);
+                    Metricas.contador("eventos.descartados." + consumidor.getNombre()).increment();
+                    log.error("El consumidor " + consumidor.getNombre() + " fallo " + retenido.getIntentos()
+                        + " veces con el evento " + evento.getId() + "; se descarta", ex);
+                } else {
+                    detenidos.add(retenido.getLaboratorioId());
+                    log.warn("El consumidor " + consumidor.getNombre() + " volvio a fallar con el evento "
+                        + evento.getId() + "; se reintentara", ex);
+                }
+            }
+        }
+        XPersistence.commit();
+    }
+
+    /**
+     * Entrega los eventos de los huecos que ya aparecieron y olvida los que
+     * llevan mas de eventos.relay.minutosHueco sin aparecer.
+     */
+    private void revisarHuecos(ConsumidorEventos consumidor) {
+        EntityManager em = XPersistence.getManager();
+        bloquearCursor(consumidor.getNombre());
+        List<HuecoEvento> huecos = em
+            .createQuery("SELECT h FROM HuecoEvento h WHERE h.consumidor = :consumidor ORDER BY h.eventoId",
+                HuecoEvento.class)
+            .setParameter("consumidor", consumidor.getNombre())
+            .getResultList();
+        if (huecos.isEmpty()) return;
+
+        Date caducidad = new Date(System.currentTimeMillis()
+            - TimeUnit.MINUTES.toMillis(Configuracion.getInt("eventos.relay.minutosHueco", 10)));
+        Set<Long> detenidos = detenidos(consumidor);
+        for (int i = 0; i < huecos.size(); i += TAMANO_LOTE) {
+            List<HuecoEvento> tanda = huecos.subList(i, Math.min(i + TAMANO_LOTE, huecos.size()));
+            List<Long> ids = new ArrayList<>(tanda.size());
+            for (HuecoEvento hueco : tanda) ids.add(hueco.getEventoId());
+            Map<Long, EventoReserva> aparecidos = new HashMap<>();
+            for (EventoReserva evento : em
+                    .createQuery("SELECT e FROM EventoReserva e WHERE e.id IN :ids", EventoReserva.class)
+                    .setParameter("ids", ids)
+                    .getResultList()) {
+                aparecidos.put(evento.getId(), evento);
+            }
+            for (HuecoEvento hueco : tanda) {
+                EventoReserva evento = aparecidos.get(hueco.getEventoId());
+                if (evento != null) {
+                    entregar(consumidor, evento, detenidos);
+                    em.remove(hueco);
+                } else if (hueco.getDetectado().before(caducidad)) {
+                    // Id de una transaccion revertida
+                    em.remove(hueco);
+                }
+            }
+        }
+        XPersistence.commit();
+    }
+
+    /**
+     * Devuelve cuantos eventos avanzo el cursor; menos que un lote completo
+     * significa que hay que esperar a la proxima vuelta.
+     */
+    private int entregarLote(ConsumidorEventos consumidor) {
+        EntityManager em = XPersistence.getManager();
+        CursorEventos cursor = bloquearCursor(consumidor.getNombre());
+
+        List<EventoReserva> eventos = em
+            .createQuery("SELECT e FROM EventoReserva e WHERE e.id > :ultimo ORDER BY e.id", EventoReserva.class)
+            .setParameter("ultimo", cursor.getUltimoEventoId())
+            .setMaxResults(TAMANO_LOTE)
+            .getResultList();
+
+        Set<Long> detenidos = detenidos(consumidor);
+        long ultimo = cursor.getUltimoEventoId();
+        Date ahora = new Date();
+        for (EventoReserva evento : eventos) {
+            // Un id menor aun sin confirmar se apunta para buscarlo en las siguientes vueltas
+            for (long id = ultimo + 1; id < evento.getId(); id++) {
+                HuecoEvento hueco = new HuecoEvento();
+                hueco.setConsumidor(consumidor.getNombre());
+                hueco.setEventoId(id);
+                hueco.setDetectado(ahora);
+                em.persist(hueco);
+            }
+            ultimo = evento.getId();
+            entregar(consumidor, evento, detenidos);
+        }
+
+        cursor.setUltimoEventoId(ultimo);
+        XPersistence.commit();
+        return eventos.size();
+    }
+
+    /**
+     * Laboratorios con eventos retenidos: lo nuevo espera detras para respetar el orden.
+     */
+    private Set<Long> detenidos(ConsumidorEventos consumidor) {
+        return new HashSet<>(XPersistence.getManager()
+            .createQuery(
+                "SELECT DISTINCT r.laboratorioId FROM EventoRetenido r " +
+                "WHERE r.consumidor = :consumidor AND r.descartado = false", Long.class)
+            .setParameter("consumidor", consumidor.getNombre())
+            .getResultList());
+    }
+
+    private void entregar(ConsumidorEventos consumidor, EventoReserva evento, Set<Long> detenidos) {
+        if (detenidos.contains(evento.getLaboratorioId())) {
+            retener(consumidor, evento, null);
+            return;
+        }
+        try {
+            consumidor.procesar(evento);
+            Metricas.contador("eventos.entregados." + consumidor.getNombre()).increment();
+        } catch (Exception ex) {
+            Metricas.contador("eventos.fallidos." + consumidor.getNombre()).increment();
+            log.warn("El consumidor " + consumidor.getNombre() + " fallo con el evento " + evento.getId()
+                + "; se reintentara", ex);
+            retener(consumidor, evento, ex);
+            detenidos.add(evento.getLaboratorioId());
+        }
+    }
+
+    private static void retener(ConsumidorEventos consumidor, EventoReserva evento, Exception fallo) {
+        EventoRetenido retenido = new EventoRetenido();
+        retenido.setConsumidor(consumidor.getNombre());
+        retenido.setEventoId(evento.getId());
+        retenido.setLaboratorioId(evento.getLaboratorioId());
+        retenido.setIntentos(fallo == null ? 0 : 1);
+        retenido.setUltimoError(fallo == null ? null : error(fallo));
+        retenido.setRetenido(new Date());
+        XPersistence.getManager().persist(retenido);
+    }
+
+    private static String error(Exception ex) {
+        String texto = String.valueOf(ex);
+        return texto.length() > 500 ? texto.substring(0, 500) : texto;
+    }
+
+    private CursorEventos bloquearCursor(String consumidor) {
+        CursorEventos cursor = XPersistence.getManager()
+            .find(CursorEventos.class, consumidor, LockModeType.PESSIMISTIC_WRITE);
+        if (cursor != null) return cursor;
+        crearCursor(consumidor);
+        return XPersistence.getManager().find(CursorEventos.class, consumidor, LockModeType.PESSIMISTIC_WRITE);
+    }
+
+    /**
+     * Nace en su propia transaccion; si otro nodo lo creo a la vez, basta con el suyo.
+     */
+    private static void crearCursor(String consumidor) {
+        EntityManager em = XPersistence.createManager();
+        try {
+            em.getTransaction().begin();
+            CursorEventos cursor = new CursorEventos();
+            cursor.setConsumidor(consumidor);
+            em.persist(cursor);
+            em.getTransaction().commit();
+        } catch (PersistenceException ex) {
+            // Ya existe
+        } finally {
+            if (em.getTransaction().isActive()) em.getTransaction().rollback();
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.managelab.managelab.procesos;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.apache.commons.logging.*;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.servicios.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Procesos que corren en segundo plano mientras la aplicacion esta levantada.
+ * Los arranca y los detiene ManageLabListener.
+ */
+public class TareasProgramadas {
+
+    private static final Log log = LogFactory.getLog(TareasProgramadas.class);
+
+    private static ScheduledThreadPoolExecutor ejecutor;
+
+    private TareasProgramadas() {
+    }
+
+    public static synchronized void iniciar() {
+        if (ejecutor != null) return;
+        // Un hilo por tarea (programar() amplia el pool): un archivo largo no
+        // retrasa la entrega de eventos
+        AtomicInteger hilos = new AtomicInteger();
+        ejecutor = new ScheduledThreadPoolExecutor(0, r -> {
+            Thread hilo = new Thread(r, "managelab-tareas-" + hilos.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+
+        int expiracion = Configuracion.getInt("reservas.expiracion.intervaloMinutos", 15);
+        if (expiracion > 0) {
+            programar("expiracion de reservas", () -> new ExpiracionReservas().ejecutar(),
+                expiracion, TimeUnit.MINUTES);
+        }
+
+        int archivo = Configuracion.getInt("reservas.archivo.intervaloHoras", 24);
+        if (archivo > 0) {
+            programar("archivo de reservas", () -> new ArchivoReservas().ejecutar(), archivo, TimeUnit.HOURS);
+        }
+
+        programar("limpieza de claves de idempotencia", Idempotencia::purgar, 1, TimeUnit.HOURS);
+
+        int auditoria = Configuracion.getInt("reservas.auditoria.intervaloHoras", 0);
+        if (auditoria > 0) {
+            programar("auditoria de traslapes", () -> new AuditoriaTraslapes().ejecutar(), auditoria, TimeUnit.HOURS);
+        }
+
+        if (Configuracion.getBoolean("notificaciones.activas", false)) {
+            RelayEventos.registrar(new NotificacionesReserva());
+            programar("envio de notificaciones", () -> new EnvioNotificaciones().ejecutar(),
+                Configuracion.getInt("notificaciones.intervaloSegundos", 30), TimeUnit.SECONDS);
+        }
+
+        RelayEventos.registrarConfigurados();
+        int relay = Configuracion.getInt("eventos.relay.intervaloSegundos", 5);
+        if (relay > 0) {
+            programar("entrega de eventos", () -> new RelayEventos().ejecutar(), relay, TimeUnit.SECONDS);
+        }
+    }
+
+    public static synchronized void detener() {
+        if (ejecutor == null) return;
+        ejecutor.shutdownNow();
+        ejecutor = null;
+        EnvioNotificaciones.cerrar();
+    }
+
+    private static void programar(String nombre, Runnable tarea, int periodo, TimeUnit unidad) {
+        ejecutor.setCorePoolSize(ejecutor.getCorePoolSize() + 1);
+        ejecutor.scheduleWithFixedDelay(() -> {
+            try {
+                tarea.run();
+            } catch (Exception ex) {
+                log.error("Fallo la tarea de " + nombre, ex);
+            } finally {
+                XPersistence.reset();
+            }
+        }, periodo, periodo, unidad);
+    }
+}
@@ -0,0 +1,208 @@
+package com.managelab.managelab.servicios;
+
+import java.sql.*;
+import java.util.*;
+
+import javax.persistence.*;
+
+import org.hibernate.Session;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+
+/**
+ * Aprueba un conjunto de reservas PENDIENTES en una sola transaccion.
+ *
+ * Carga las reservas seleccionadas y, con esos dias ya bloqueados
+ * (BloqueoFranjas), las APROBADAS de los mismos dias: dos consultas en total.
+ * Resuelve los traslapes en memoria (contra lo ya aprobado y entre las propias
+ * seleccionadas) y escribe los cambios con un batch JDBC. No confirma la
+ * transaccion: eso le toca a quien la llama.
+ */
+public class AprobacionMasiva {
+
+    private static final int TAMANO_IN = 500;
+
+    public static class Resultado {
+
+        private final long id;
+        private final String descripcion;
+        private final boolean aprobada;
+        private final String motivo;
+
+        Resultado(long id, String descripcion, boolean aprobada, String motivo) {
+            this.id = id;
+            this.descripcion = descripcion;
+            this.aprobada = aprobada;
+            this.motivo = motivo;
+        }
+
+        public long getId() { return id; }
+        public String getDescripcion() { return descripcion; }
+        public boolean isAprobada() { return aprobada; }
+        public String getMotivo() { return motivo; }
+    }
+
+    /** Fila de Reserva con lo justo para decidir. */
+    private static class Candidata {
+        long id;
+        ClaveFranja clave;
+        Integer inicio;
+        Integer fin;
+        EstadoReserva estado;
+        String descripcion;
+    }
+
+    public List<Resultado> aprobar(Collection<Long> ids) {
+        List<Resultado> resultados = new ArrayList<>();
+        Map<ClaveFranja, List<Candidata>> porDia = new LinkedHashMap<>();
+
+        Set<Long> noEncontradas = new LinkedHashSet<>(ids);
+        for (Candidata c : cargarSeleccionadas(ids)) {
+            noEncontradas.remove(c.id);
+            if (c.estado != EstadoReserva.PENDIENTE) {
+                resultados.add(rechazo(c, "solo se pueden aprobar reservas PENDIENTES"));
+            } else if (c.inicio == null || c.fin == null) {
+                resultados.add(rechazo(c, "horario invalido"));
+            } else {
+                porDia.computeIfAbsent(c.clave, k -> new ArrayList<>()).add(c);
+            }
+        }
+        for (Long id : noEncontradas) {
+            resultados.add(new Resultado(id, "", false, "reserva no encontrada"));
+        }
+        if (porDia.isEmpty()) return resultados;
+
+        // Lo aprobado se lee ya con los dias bloqueados, asi no se cruza con otra aprobacion
+        BloqueoFranjas.bloquear(porDia.keySet());
+        Map<ClaveFranja, List<long[]>> aprobadas = cargarAprobadas(porDia.keySet());
+
+        List<Candidata> aAprobar = new ArrayList<>();
+        for (Map.Entry<ClaveFranja, List<Candidata>> dia : porDia.entrySet()) {
+            List<long[]> existentes = aprobadas.getOrDefault(dia.getKey(), Collections.emptyList());
+            barrer(IntervalosDia.de(existentes), dia.getValue(), aAprobar, resultados);
+        }
+
+        escribir(aAprobar, resultados);
+        return resultados;
+    }
+
+    /**
+     * Recorre las candidatas de un dia ordenadas por hora de inicio. Cada una se
+     * compara con las APROBADAS existentes (busqueda binaria) y con el mayor fin
+     * de las candidatas ya aceptadas en el barrido.
+     */
+    private void barrer(IntervalosDia existentes, List<Candidata> candidatas,
+            List<Candidata> aAprobar, List<Resultado> resultados) {
+        candidatas.sort(Comparator.comparingInt((Candidata c) -> c.inicio).thenComparingLong(c -> c.id));
+        int mayorFinAceptado = Integer.MIN_VALUE;
+        for (Candidata c : candidatas) {
+            if (existentes.traslapa(c.inicio, c.fin, c.id)) {
+                resultados.add(rechazo(c, "se traslapa con una reserva ya aprobada"));
+            } else if (c.inicio < mayorFinAceptado) {
+                resultados.add(rechazo(c, "se traslapa con otra reserva seleccionada"));
+            } else {
+                aAprobar.add(c);
+                mayorFinAceptado = c.fin;
+            }
+        }
+    }
+
+    private void escribir(List<Candidata> aAprobar, List<Resultado> resultados) {
+        if (aAprobar.isEmpty()) return;
+        int[] filas = XPersistence.getManager().unwrap(Session.class).doReturningWork(con -> {
+            try (PreparedStatement ps = con.prepareStatement(
+                    "UPDATE Reserva SET estadoReserva = ?, ultimoCambio = ? WHERE id = ? AND estadoReserva = ?")) {
+                Timestamp ahora = new Timestamp(System.currentTimeMillis());
+                for (Candidata c : aAprobar) {
+                    ps.setString(1, EstadoReserva.APROBADA.name());
+                    ps.setTimestamp(2, ahora);
+                    ps.setLong(3, c.id);
+                    ps.setString(4, EstadoReserva.PENDIENTE.name());
+                    ps.addBatch();
+                }
+                return ps.executeBatch();
+            }
+        });
+
+        IndiceReservas indice = IndiceReservas.getInstance();
+        for (int i = 0; i < aAprobar.size(); i++) {
+            Candidata c = aAprobar.get(i);
+            if (filas[i] == 0) {
+                resultados.add(rechazo(c, "ya no estaba PENDIENTE"));
+                continue;
+            }
+            indice.registrarAlConfirmar(c.id, c.clave, c.inicio, c.fin, EstadoReserva.APROBADA);
+            TransicionesReserva.registrar(c.id, c.clave, EstadoReserva.PENDIENTE, EstadoReserva.APROBADA);
+            OcupacionLaboratorios.ajustar(c.clave, c.inicio, c.fin, 1);
+            resultados.add(new Resultado(c.id, c.descripcion, true, null));
+        }
+    }
+
+    private List<Candidata> cargarSeleccionadas(Collection<Long> ids) {
+        List<Candidata> candidatas = new ArrayList<>(ids.size());
+        List<Long> lista = new ArrayList<>(ids);
+        for (int i = 0; i < lista.size(); i += TAMANO_IN) {
+            @SuppressWarnings("unchecked")
+            List<Object[]> filas = XPersistence.getManager()
+                .createQuery(
+                    "SELECT r.id, r.laboratorio.id, r.laboratorio.nombre, r.fecha, " +
+                    "r.minutoInicio, r.minutoFin, r.horaInicio, r.horaFin, r.estadoReserva " +
+                    "FROM Reserva r WHERE r.id IN :ids")
+                .setFlushMode(FlushModeType.COMMIT)
+                .setParameter("ids", lista.subList(i, Math.min(i + TAMANO_IN, lista.size())))
+                .getResultList();
+            for (Object[] fila : filas) {
+                Candidata c = new Candidata();
+                c.id = (Long) fila[0];
+                c.clave = ClaveFranja.de((Long) fila[1], (java.util.Date) fila[3]);
+                c.inicio = (Integer) fila[4];
+                c.fin = (Integer) fila[5];
+                c.estado = (EstadoReserva) fila[8];
+                c.descripcion = fila[2] + " " + c.clave.getFecha() + " " + fila[6] + "-" + fila[7];
+                candidatas.add(c);
+            }
+        }
+        return candidatas;
+    }
+
+    /**
+     * APROBADAS de los laboratorios y fechas afectados en una sola consulta;
+     * el cruce exacto (laboratorio, fecha) se hace en memoria.
+     */
+    private Map<ClaveFranja, List<long[]>> cargarAprobadas(Set<ClaveFranja> dias) {
+        Set<Long> laboratorios = new HashSet<>();
+        Set<java.util.Date> fechas = new HashSet<>();
+        for (ClaveFranja dia : dias) {
+            laboratorios.add(dia.getLaboratorioId());
+            fechas.add(dia.getFechaSql());
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> filas = XPersistence.getManager()
+            .createQuery(
+                "SELECT r.id, r.laboratorio.id, r.fecha, r.minutoInicio, r.minutoFin FROM Reserva r " +
+                "WHERE r.estadoReserva = :aprobada " +
+                "AND r.laboratorio.id IN :laboratorios " +
+                "AND r.fecha IN :fechas " +
+                "AND r.minutoInicio IS NOT NULL")
+            .setFlushMode(FlushModeType.COMMIT)
+            .setParameter("aprobada", EstadoReserva.APROBADA)
+            .setParameter("laboratorios", laboratorios)
+            .setParameter("fechas", fechas)
+            .getResultList();
+
+        Map<ClaveFranja, List<long[]>> porDia = new HashMap<>();
+        for (Object[] fila : filas) {
+            ClaveFranja clave = ClaveFranja.de((Long) fila[1], (java.util.Date) fila[2]);
+            if (!dias.contains(clave)) continue;
+            porDia.computeIfAbsent(clave, k -> new ArrayList<>())
+                .add(new long[] { (Long) fila[0], (Integer) fila[3], (Integer) fila[4] });
+        }
+        return porDia;
+    }
+
+    private static Resultado rechazo(Candidata c, String motivo) {
+        return new Resultado(c.id, c.descripcion, false, motivo);
+    }
+}
@@ -0,0 +1,134 @@
+package com.managelab.managelab.servicios;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+
+import javax.persistence.*;
+
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Serializa las altas y aprobaciones de reservas de un mismo (laboratorio, fecha)
+ * hasta que termina la transaccion que tomo el bloqueo. Franjas distintas no se
+ * esperan entre si.
+ *
+ * reservas.bloqueo=memoria (por defecto) usa locks en la JVM repartidos por hash
+ * de la franja; sirve con un solo nodo. reservas.bloqueo=baseDatos bloquea una fila
+ * de BloqueoFranja con SELECT ... FOR UPDATE; sirve con varios nodos.
+ */
+public class BloqueoFranjas {
+
+    private static final int NUMERO_FRANJAS = 1024;
+
+    private static final ReentrantLock[] locks = new ReentrantLock[NUMERO_FRANJAS];
+
+    static {
+        for (int i = 0; i < NUMERO_FRANJAS; i++) locks[i] = new ReentrantLock();
+    }
+
+    private static final Comparator<ClaveFranja> ORDEN =
+        Comparator.comparingLong(ClaveFranja::getLaboratorioId).thenComparing(ClaveFranja::getFecha);
+
+    private BloqueoFranjas() {
+    }
+
+    public static void bloquear(ClaveFranja clave) {
+        bloquear(Collections.singleton(clave));
+    }
+
+    /**
+     * Toma los bloqueos de todas las franjas, en orden, y los mantiene hasta el fin
+     * de la transaccion actual.
+     */
+    public static void bloquear(Collection<ClaveFranja> claves) {
+        if (claves.isEmpty()) return;
+        if (enBaseDatos()) {
+            bloquearEnBaseDatos(claves);
+        } else {
+            bloquearEnMemoria(claves);
+        }
+    }
+
+    /**
+     * True con reservas.bloqueo=baseDatos, es decir, cuando puede haber varios nodos.
+     */
+    public static boolean enBaseDatos() {
+        return "baseDatos".equals(Configuracion.getString("reservas.bloqueo", "memoria"));
+    }
+
+    private static void bloquearEnMemoria(Collection<ClaveFranja> claves) {
+        SortedSet<Integer> indices = new TreeSet<>();
+        for (ClaveFranja clave : claves) {
+            indices.add((clave.hashCode() & 0x7fffffff) % NUMERO_FRANJAS);
+        }
+        long espera = Configuracion.getInt("reservas.bloqueo.esperaSegundos", 10);
+        List<ReentrantLock> tomados = new ArrayList<>();
+        // Registrar primero: tambien libera lo que hubiera quedado de una transaccion anterior del hilo
+        TransaccionActual.alFinalizar(() -> tomados.forEach(ReentrantLock::unlock));
+        for (int i : indices) {
+            ReentrantLock lock = locks[i];
+            if (lock.isHeldByCurrentThread()) continue; // ya tomado en esta transaccion
+            try {
+                if (!lock.tryLock(espera, TimeUnit.SECONDS)) {
+                    throw new javax.validation.ValidationException(
+                        "El horario esta siendo reservado o aprobado por otro usuario. Intente de nuevo.");
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new javax.validation.ValidationException("Se interrumpio la espera del bloqueo de horario.");
+            }
+            tomados.add(lock);
+        }
+    }
+
+    private static void bloquearEnBaseDatos(Collection<ClaveFranja> claves) {
+        List<ClaveFranja> ordenadas = new ArrayList<>(new HashSet<>(claves));
+        ordenadas.sort(ORDEN);
+        for (ClaveFranja clave : ordenadas) {
+            if (!bloquearFila(clave)) {
+                crearFila(clave);
+                if (!bloquearFila(clave)) {
+                    throw new PersistenceException("No se pudo bloquear la franja " + clave);
+                }
+            }
+        }
+    }
+
+    private static boolean bloquearFila(ClaveFranja clave) {
+        return !XPersistence.getManager()
+            .createQuery(
+                "SELECT b FROM BloqueoFranja b WHERE b.laboratorioId = :labId AND b.fecha = :fecha",
+                BloqueoFranja.class)
+            .setFlushMode(FlushModeType.COMMIT)
+            .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+            .setParameter("labId", clave.getLaboratorioId())
+            .setParameter("fecha", clave.getFechaSql(), TemporalType.DATE)
+            .getResultList()
+            .isEmpty();
+    }
+
+    /**
+     * Crea la fila en su propia transaccion para que quede visible a otros nodos.
+     * Si otro nodo la creo a la vez, la restriccion unica hace fallar esta y basta.
+     */
+    private static void crearFila(ClaveFranja clave) {
+        EntityManager em = XPersistence.createManager();
+        try {
+            em.getTransaction().begin();
+            BloqueoFranja fila = new BloqueoFranja();
+            fila.setLaboratorioId(clave.getLaboratorioId());
+            fila.setFecha(clave.getFechaSql());
+            em.persist(fila);
+            em.getTransaction().commit();
+        } catch (PersistenceException ex) {
+            // Ya existe
+        } finally {
+            if (em.getTransaction().isActive()) em.getTransaction().rollback();
+            em.close();
+        }
+    }
+}
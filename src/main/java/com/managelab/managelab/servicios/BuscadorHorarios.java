@@ -0,0 +1,105 @@
+package com.managelab.managelab.servicios;
+
+import java.time.*;
+import java.util.*;
+
+import javax.persistence.*;
+
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Busca huecos libres en la agenda de un laboratorio a partir de las reservas
+ * APROBADAS y PENDIENTES, sin tener que intentar guardar una reserva.
+ */
+public class BuscadorHorarios {
+
+    private static final int MAXIMO_DIAS = 366;
+
+    public static class Hueco {
+
+        private final LocalDate fecha;
+        private final int inicio;
+        private final int fin;
+
+        Hueco(LocalDate fecha, int inicio, int fin) {
+            this.fecha = fecha;
+            this.inicio = inicio;
+            this.fin = fin;
+        }
+
+        public LocalDate getFecha() { return fecha; }
+        public int getInicio() { return inicio; }
+        public int getFin() { return fin; }
+        public String getHoraInicio() { return Horas.formato(inicio); }
+        public String getHoraFin() { return fin >= 24 * 60 ? "24:00" : Horas.formato(fin); }
+
+        @Override
+        public String toString() {
+            return fecha + " " + getHoraInicio() + "-" + getHoraFin();
+        }
+    }
+
+    /**
+     * Primeros huecos de al menos duracion minutos del laboratorio entre desde y
+     * hasta (ambos incluidos), dentro del horario de apertura configurado.
+     */
+    public List<Hueco> buscar(Long laboratorioId, LocalDate desde, LocalDate hasta, int duracion, int cantidad) {
+        if (laboratorioId == null || desde == null || hasta == null) {
+            throw new javax.validation.ValidationException("Indique laboratorio, fecha desde y fecha hasta");
+        }
+        if (hasta.isBefore(desde)) {
+            throw new javax.validation.ValidationException("La fecha hasta debe ser igual o posterior a la fecha desde");
+        }
+        if (desde.plusDays(MAXIMO_DIAS).isBefore(hasta)) {
+            throw new javax.validation.ValidationException("El rango de busqueda no puede superar " + MAXIMO_DIAS + " dias");
+        }
+        if (duracion <= 0 || cantidad <= 0) {
+            throw new javax.validation.ValidationException("La duracion y la cantidad deben ser mayores que cero");
+        }
+
+        int apertura = Horas.aMinutos(Configuracion.getString("reservas.horario.apertura", "07:00"), "reservas.horario.apertura");
+        int cierre = Horas.aMinutos(Configuracion.getString("reservas.horario.cierre", "22:00"), "reservas.horario.cierre");
+
+        Map<LocalDate, MapaOcupacion> ocupacion = cargarOcupacion(laboratorioId, desde, hasta);
+        MapaOcupacion libre = new MapaOcupacion();
+
+        List<Hueco> huecos = new ArrayList<>();
+        for (LocalDate dia = desde; !dia.isAfter(hasta) && huecos.size() < cantidad; dia = dia.plusDays(1)) {
+            MapaOcupacion mapa = ocupacion.getOrDefault(dia, libre);
+            for (int[] h : mapa.huecos(apertura, cierre, duracion, cantidad - huecos.size())) {
+                huecos.add(new Hueco(dia, h[0], h[1]));
+            }
+        }
+        return huecos;
+    }
+
+    /**
+     * Un solo recorrido por rango de fechas sobre el indice (laboratorio_id, fecha, ...).
+     */
+    private Map<LocalDate, MapaOcupacion> cargarOcupacion(Long laboratorioId, LocalDate desde, LocalDate hasta) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> filas = XPersistence.getManager()
+            .createQuery(
+                "SELECT r.fecha, r.minutoInicio, r.minutoFin FROM Reserva r " +
+                "WHERE r.laboratorio.id = :labId " +
+                "AND r.fecha BETWEEN :desde AND :hasta " +
+                "AND r.estadoReserva IN :estados " +
+                "AND r.minutoInicio IS NOT NULL")
+            .setFlushMode(FlushModeType.COMMIT)
+            .setParameter("labId", laboratorioId)
+            .setParameter("desde", java.sql.Date.valueOf(desde), TemporalType.DATE)
+            .setParameter("hasta", java.sql.Date.valueOf(hasta), TemporalType.DATE)
+            .setParameter("estados", Arrays.asList(EstadoReserva.APROBADA, EstadoReserva.PENDIENTE))
+            .getResultList();
+
+        Map<LocalDate, MapaOcupacion> ocupacion = new HashMap<>();
+        for (Object[] fila : filas) {
+            LocalDate dia = ClaveFranja.aLocalDate((Date) fila[0]);
+            ocupacion.computeIfAbsent(dia, d -> new MapaOcupacion()).ocupar((Integer) fila[1], (Integer) fila[2]);
+        }
+        return ocupacion;
+    }
+}
@@ -0,0 +1,94 @@
+package com.managelab.managelab.servicios;
+
+import java.time.*;
+import java.util.*;
+
+import javax.persistence.*;
+
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+
+/**
+ * Responde que laboratorios ACTIVOS estan libres en una ventana de un dia.
+ *
+ * Lee en una sola consulta las reservas APROBADAS y PENDIENTES de ese dia en
+ * laboratorios activos, arma un mapa de ocupacion por laboratorio con casillas
+ * de un minuto y lo cruza (AND) con la mascara de la ventana pedida.
+ */
+public class BuscadorLaboratorios {
+
+    public static class LaboratorioLibre {
+
+        private final long id;
+        private final String codigo;
+        private final String nombre;
+        private final String ubicacion;
+
+        LaboratorioLibre(long id, String codigo, String nombre, String ubicacion) {
+            this.id = id;
+            this.codigo = codigo;
+            this.nombre = nombre;
+            this.ubicacion = ubicacion;
+        }
+
+        public long getId() { return id; }
+        public String getCodigo() { return codigo; }
+        public String getNombre() { return nombre; }
+        public String getUbicacion() { return ubicacion; }
+    }
+
+    public List<LaboratorioLibre> buscarLibres(LocalDate fecha, int inicio, int fin, OrdenLaboratorios orden) {
+        if (fecha == null) {
+            throw new javax.validation.ValidationException("Indique la fecha");
+        }
+        if (fin <= inicio) {
+            throw new javax.validation.ValidationException("La hora fin debe ser mayor a la hora inicio");
+        }
+
+        MapaOcupacion ventana = MapaOcupacion.ventana(1, inicio, fin);
+        Set<Long> ocupados = new HashSet<>();
+        for (Map.Entry<Long, MapaOcupacion> lab : cargarOcupacion(fecha).entrySet()) {
+            if (lab.getValue().seCruzaCon(ventana)) ocupados.add(lab.getKey());
+        }
+
+        String campoOrden = orden == OrdenLaboratorios.UBICACION ? "l.ubicacion, l.nombre" : "l.nombre";
+        @SuppressWarnings("unchecked")
+        List<Object[]> laboratorios = XPersistence.getManager()
+            .createQuery(
+                "SELECT l.id, l.codigo, l.nombre, l.ubicacion FROM Laboratorio l " +
+                "WHERE l.estado = :activo ORDER BY " + campoOrden)
+            .setParameter("activo", EstadoLaboratorio.ACTIVO)
+            .getResultList();
+
+        List<LaboratorioLibre> libres = new ArrayList<>();
+        for (Object[] l : laboratorios) {
+            if (ocupados.contains(l[0])) continue;
+            libres.add(new LaboratorioLibre((Long) l[0], (String) l[1], (String) l[2], (String) l[3]));
+        }
+        return libres;
+    }
+
+    private Map<Long, MapaOcupacion> cargarOcupacion(LocalDate fecha) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> filas = XPersistence.getManager()
+            .createQuery(
+                "SELECT r.laboratorio.id, r.minutoInicio, r.minutoFin FROM Reserva r " +
+                "WHERE r.fecha = :fecha " +
+                "AND r.estadoReserva IN :estados " +
+                "AND r.laboratorio.estado = :activo " +
+                "AND r.minutoInicio IS NOT NULL")
+            .setFlushMode(FlushModeType.COMMIT)
+            .setParameter("fecha", java.sql.Date.valueOf(fecha), TemporalType.DATE)
+            .setParameter("estados", Arrays.asList(EstadoReserva.APROBADA, EstadoReserva.PENDIENTE))
+            .setParameter("activo", EstadoLaboratorio.ACTIVO)
+            .getResultList();
+
+        Map<Long, MapaOcupacion> ocupacion = new HashMap<>();
+        for (Object[] fila : filas) {
+            ocupacion.computeIfAbsent((Long) fila[0], id -> new MapaOcupacion(1))
+                .ocupar((Integer) fila[1], (Integer) fila[2]);
+        }
+        return ocupacion;
+    }
+}
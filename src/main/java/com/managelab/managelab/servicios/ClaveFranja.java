@@ -0,0 +1,51 @@
+package com.managelab.managelab.servicios;
+
+import java.time.*;
+import java.util.*;
+
+/**
+ * Identifica un dia de un laboratorio: (laboratorio.id, fecha).
+ */
+public final class ClaveFranja {
+
+    private final long laboratorioId;
+    private final LocalDate fecha;
+
+    public ClaveFranja(long laboratorioId, LocalDate fecha) {
+        this.laboratorioId = laboratorioId;
+        this.fecha = fecha;
+    }
+
+    public static ClaveFranja de(Long laboratorioId, Date fecha) {
+        return new ClaveFranja(laboratorioId, aLocalDate(fecha));
+    }
+
+    public static LocalDate aLocalDate(Date fecha) {
+        if (fecha instanceof java.sql.Date) return ((java.sql.Date) fecha).toLocalDate();
+        return fecha.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    public long getLaboratorioId() { return laboratorioId; }
+
+    public LocalDate getFecha() { return fecha; }
+
+    public java.sql.Date getFechaSql() { return java.sql.Date.valueOf(fecha); }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ClaveFranja)) return false;
+        ClaveFranja otra = (ClaveFranja) o;
+        return laboratorioId == otra.laboratorioId && fecha.equals(otra.fecha);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(laboratorioId) + fecha.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return laboratorioId + "@" + fecha;
+    }
+}
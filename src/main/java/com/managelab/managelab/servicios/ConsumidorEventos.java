@@ -0,0 +1,20 @@
+package com.managelab.managelab.servicios;
+
+import com.managelab.managelab.modelo.*;
+
+/**
+ * Recibe los cambios de estado de las reservas que entrega RelayEventos.
+ *
+ * La entrega es al menos una vez: un evento puede llegar repetido si algo
+ * falla, asi que procesar() debe tolerar duplicados. Los eventos de un mismo
+ * laboratorio llegan en orden; si procesar() lanza una excepcion, el evento
+ * y los siguientes de ese laboratorio se reintentan en las proximas vueltas,
+ * hasta eventos.relay.maximoIntentos fallos (ver EventoRetenido).
+ */
+public interface ConsumidorEventos {
+
+    /** Nombre unico; identifica el avance del consumidor en CursorEventos. */
+    String getNombre();
+
+    void procesar(EventoReserva evento) throws Exception;
+}
@@ -0,0 +1,99 @@
+package com.managelab.managelab.servicios;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.mail.*;
+import javax.mail.internet.*;
+
+import org.openxava.util.*;
+
+import com.managelab.managelab.util.*;
+
+/**
+ * Envio de correos por SMTP reutilizando conexiones abiertas.
+ *
+ * Toma el servidor de xava.properties (smtpHost, smtpPort, ...); las
+ * propiedades notificaciones.smtp.host y notificaciones.smtp.puerto de
+ * managelab.properties lo reemplazan, por ejemplo para apuntar a un servidor
+ * SMTP local de pruebas.
+ */
+public class CorreoSmtp {
+
+    private final Session sesion;
+    private final String host;
+    private final int puerto;
+    private final String usuario;
+    private final String password;
+    private final String remitente;
+    private final BlockingQueue<Transport> libres;
+
+    public CorreoSmtp(int maximoConexiones) {
+        XavaPreferences preferencias = XavaPreferences.getInstance();
+        host = Configuracion.getString("notificaciones.smtp.host", preferencias.getSMTPHost());
+        puerto = Configuracion.getInt("notificaciones.smtp.puerto", preferencias.getSMTPPort());
+        String id = Configuracion.getString("notificaciones.smtp.usuario", preferencias.getSMTPUserID());
+        usuario = id == null || id.trim().isEmpty() ? null : id;
+        password = Configuracion.getString("notificaciones.smtp.password", preferencias.getSMTPUserPassword());
+        remitente = Configuracion.getString("notificaciones.remitente", "no-responder@managelab.local");
+        libres = new ArrayBlockingQueue<>(maximoConexiones);
+
+        Properties p = new Properties();
+        p.put("mail.smtp.host", host);
+        p.put("mail.smtp.port", String.valueOf(puerto));
+        p.put("mail.smtp.auth", String.valueOf(usuario != null));
+        p.put("mail.smtp.starttls.enable", String.valueOf(preferencias.isSMTPStartTLSEnable()));
+        if (preferencias.isSMTPHostTrusted()) p.put("mail.smtp.ssl.trust", "*");
+        // Un servidor lento no debe dejar colgado a un hilo de envio
+        p.put("mail.smtp.connectiontimeout", "10000");
+        p.put("mail.smtp.timeout", "10000");
+        p.put("mail.smtp.writetimeout", "10000");
+        sesion = Session.getInstance(p);
+    }
+
+    public void enviar(String destinatario, String asunto, String cuerpo) throws MessagingException {
+        MimeMessage mensaje = new MimeMessage(sesion);
+        mensaje.setFrom(new InternetAddress(remitente));
+        mensaje.setRecipients(Message.RecipientType.TO, InternetAddress.parse(destinatario));
+        mensaje.setSubject(asunto, "UTF-8");
+        mensaje.setText(cuerpo, "UTF-8");
+        mensaje.setSentDate(new Date());
+        mensaje.saveChanges();
+
+        Transport transporte = tomar();
+        try {
+            transporte.sendMessage(mensaje, mensaje.getAllRecipients());
+        } catch (MessagingException ex) {
+            cerrar(transporte);
+            throw ex;
+        }
+        if (!libres.offer(transporte)) cerrar(transporte);
+    }
+
+    /**
+     * Cierra las conexiones que quedaron abiertas.
+     */
+    public void cerrar() {
+        Transport transporte;
+        while ((transporte = libres.poll()) != null) cerrar(transporte);
+    }
+
+    private Transport tomar() throws MessagingException {
+        Transport transporte;
+        while ((transporte = libres.poll()) != null) {
+            if (transporte.isConnected()) return transporte;
+            cerrar(transporte);
+        }
+        transporte = sesion.getTransport("smtp");
+        transporte.connect(host, puerto, usuario, password);
+        return transporte;
+    }
+
+    private static void cerrar(Transport transporte) {
+        try {
+            transporte.close();
+        } catch (MessagingException ex) {
+            // Ya estaba cerrada
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.managelab.managelab.servicios;
+
+import java.util.*;
+
+import javax.persistence.*;
+
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Punto unico para preguntar si un horario de un laboratorio esta ocupado.
+ *
+ * Con reservas.indiceEnMemoria=true responde el IndiceReservas del nodo; si no,
+ * lanza una consulta tipo EXISTS sobre las columnas minutoInicio/minutoFin.
+ * Con reservas.bloqueo=baseDatos siempre se consulta la base de datos: el
+ * indice de un nodo no ve las reservas que confirman los demas.
+ */
+public class Disponibilidad {
+
+    private static final List<EstadoReserva> OCUPAN =
+        Collections.unmodifiableList(Arrays.asList(EstadoReserva.APROBADA, EstadoReserva.PENDIENTE));
+
+    private static final List<EstadoReserva> APROBADAS =
+        Collections.singletonList(EstadoReserva.APROBADA);
+
+    private Disponibilidad() {
+    }
+
+    /**
+     * Traslape con reservas APROBADAS o PENDIENTES, sin contar excluirId.
+     */
+    public static boolean hayTraslape(Long laboratorioId, Date fecha, int inicio, int fin, Long excluirId) {
+        if (usarIndice()) {
+            return IndiceReservas.getInstance().hayTraslape(laboratorioId, fecha, inicio, fin, excluirId);
+        }
+        return existeTraslape(laboratorioId, fecha, inicio, fin, excluirId, OCUPAN);
+    }
+
+    /**
+     * Traslape solo con reservas APROBADAS, sin contar excluirId.
+     */
+    public static boolean hayTraslapeConAprobadas(Long laboratorioId, Date fecha, int inicio, int fin, Long excluirId) {
+        if (usarIndice()) {
+            return IndiceReservas.getInstance().hayTraslapeConAprobadas(laboratorioId, fecha, inicio, fin, excluirId);
+        }
+        return existeTraslape(laboratorioId, fecha, inicio, fin, excluirId, APROBADAS);
+    }
+
+    /**
+     * Comprueba en la base de datos si existe alguna reserva en los estados dados
+     * que se traslape con [inicio, fin). Devuelve como mucho una fila.
+     */
+    public static boolean existeTraslape(Long laboratorioId, Date fecha, int inicio, int fin,
+            Long excluirId, Collection<EstadoReserva> estados) {
+        String q =
+            "SELECT r.id FROM Reserva r " +
+            "WHERE r.laboratorio.id = :labId " +
+            "AND r.fecha = :fecha " +
+            "AND r.estadoReserva IN :estados " +
+            "AND r.minutoInicio < :fin " +
+            "AND r.minutoFin > :inicio " +
+            "AND r.id <> :idActual";
+
+        return !XPersistence.getManager()
+            .createQuery(q)
+            .setFlushMode(FlushModeType.COMMIT)
+            .setParameter("labId", laboratorioId)
+            .setParameter("fecha", fecha, TemporalType.DATE)
+            .setParameter("estados", estados)
+            .setParameter("inicio", inicio)
+            .setParameter("fin", fin)
+            .setParameter("idActual", excluirId == null ? -1L : excluirId)
+            .setMaxResults(1)
+            .getResultList()
+            .isEmpty();
+    }
+
+    private static boolean usarIndice() {
+        return Configuracion.getBoolean("reservas.indiceEnMemoria", true) && !BloqueoFranjas.enBaseDatos();
+    }
+}
@@ -0,0 +1,206 @@
+package com.managelab.managelab.servicios;
+
+import java.io.*;
+import java.sql.*;
+import java.time.*;
+import java.time.format.*;
+import java.util.*;
+
+import org.hibernate.Session;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Exporta las reservas de un laboratorio en un rango de fechas como iCalendar
+ * (ICS) o CSV. Las filas van del cursor JDBC de solo avance directo al Writer,
+ * sin juntarlas en memoria.
+ *
+ * version() da la huella del rango (cuantas reservas hay y cuando cambio la
+ * ultima) para responder 304 a los clientes que ya tienen la misma version.
+ */
+public class ExportacionReservas {
+
+    public static final int MAXIMO_DIAS = 3 * 366;
+
+    private static final DateTimeFormatter FORMATO_ICS = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+    private final Laboratorio laboratorio;
+    private final LocalDate desde;
+    private final LocalDate hasta;
+    private final Set<EstadoReserva> estados;
+
+    public static class Version {
+
+        private final String etag;
+        private final long ultimoCambio;
+
+        Version(String etag, long ultimoCambio) {
+            this.etag = etag;
+            this.ultimoCambio = ultimoCambio;
+        }
+
+        /** Ya entre comillas, listo para la cabecera ETag. */
+        public String getEtag() { return etag; }
+        /** Milisegundos del ultimo cambio, 0 si no se conoce. */
+        public long getUltimoCambio() { return ultimoCambio; }
+    }
+
+    public ExportacionReservas(Long laboratorioId, LocalDate desde, LocalDate hasta, Set<EstadoReserva> estados) {
+        if (laboratorioId == null) {
+            throw new javax.validation.ValidationException("Indique el laboratorio");
+        }
+        if (hasta.isBefore(desde)) {
+            throw new javax.validation.ValidationException("La fecha hasta no puede ser anterior a desde");
+        }
+        if (desde.plusDays(MAXIMO_DIAS).isBefore(hasta)) {
+            throw new javax.validation.ValidationException("El rango no puede pasar de " + MAXIMO_DIAS + " dias");
+        }
+        this.laboratorio = XPersistence.getManager().find(Laboratorio.class, laboratorioId);
+        if (laboratorio == null) {
+            throw new javax.validation.ValidationException("No existe el laboratorio " + laboratorioId);
+        }
+        this.desde = desde;
+        this.hasta = hasta;
+        this.estados = estados;
+    }
+
+    /**
+     * Cuenta las reservas del rango (en cualquier estado) y toma su ultimo
+     * cambio: un alta, un cambio de estado o de horario mueven la fecha y una
+     * baja el total. Usa solo el indice idx_reserva_lab_fecha_cambio.
+     */
+    public Version version() {
+        Object[] fila = (Object[]) XPersistence.getManager()
+            .createQuery(
+                "SELECT count(r), max(r.ultimoCambio) FROM Reserva r " +
+                "WHERE r.laboratorio.id = :lab AND r.fecha BETWEEN :desde AND :hasta")
+            .setParameter("lab", laboratorio.getId())
+            .setParameter("desde", java.sql.Date.valueOf(desde))
+            .setParameter("hasta", java.sql.Date.valueOf(hasta))
+            .getSingleResult();
+        long total = ((Number) fila[0]).longValue();
+        long ultimoCambio = fila[1] == null ? 0 : ((java.util.Date) fila[1]).getTime();
+        String filtro = desde + "|" + hasta + "|" + new TreeSet<>(estados) + "|" + laboratorio.getNombre();
+        String etag = "\"" + laboratorio.getId() + "-" + total + "-" + Long.toHexString(ultimoCambio)
+            + "-" + Integer.toHexString(filtro.hashCode()) + "\"";
+        return new Version(etag, ultimoCambio);
+    }
+
+    public void escribirIcs(Writer salida) throws IOException {
+        String ahora = FORMATO_ICS.format(Instant.now().atOffset(ZoneOffset.UTC));
+        ZoneId zona = ZoneId.systemDefault();
+        linea(salida, "BEGIN:VCALENDAR");
+        linea(salida, "VERSION:2.0");
+        linea(salida, "PRODID:-//ManageLab//Reservas//ES");
+        linea(salida, "CALSCALE:GREGORIAN");
+        linea(salida, "X-WR-CALNAME:" + textoIcs(laboratorio.getCodigo() + " - " + laboratorio.getNombre()));
+        recorrer(rs -> {
+            LocalDate fecha = rs.getDate(2).toLocalDate();
+            Timestamp cambio = rs.getTimestamp(7);
+            linea(salida, "BEGIN:VEVENT");
+            linea(salida, "UID:reserva-" + rs.getLong(1) + "@managelab");
+            linea(salida, "DTSTAMP:" + (cambio == null ? ahora : FORMATO_ICS.format(cambio.toInstant().atOffset(ZoneOffset.UTC))));
+            linea(salida, "DTSTART:" + momentoIcs(fecha, rs.getInt(3), zona));
+            linea(salida, "DTEND:" + momentoIcs(fecha, rs.getInt(4), zona));
+            linea(salida, "SUMMARY:" + textoIcs("Reserva " + laboratorio.getCodigo() + " - " + nulo(rs.getString(6))));
+            linea(salida, "LOCATION:" + textoIcs(nulo(laboratorio.getUbicacion())));
+            linea(salida, "STATUS:" + estadoIcs(rs.getString(5)));
+            linea(salida, "END:VEVENT");
+        });
+        linea(salida, "END:VCALENDAR");
+        salida.flush();
+    }
+
+    public void escribirCsv(Writer salida) throws IOException {
+        salida.write("id;laboratorio;solicitante;fecha;horaInicio;horaFin;estado\r\n");
+        recorrer(rs -> {
+            salida.write(rs.getLong(1) + ";" + textoCsv(laboratorio.getCodigo()) + ";" + textoCsv(rs.getString(6))
+                + ";" + rs.getDate(2).toLocalDate() + ";" + Horas.formato(rs.getInt(3))
+                + ";" + Horas.formato(rs.getInt(4)) + ";" + rs.getString(5) + "\r\n");
+        });
+        salida.flush();
+    }
+
+    private interface Escritor {
+        void escribir(ResultSet rs) throws SQLException, IOException;
+    }
+
+    private void recorrer(Escritor escritor) throws IOException {
+        int tamanoLectura = Configuracion.getInt("reservas.exportacion.tamanoLectura", 500);
+        try {
+            XPersistence.getManager().unwrap(Session.class).doWork(con -> {
+                try (PreparedStatement ps = con.prepareStatement(
+                        "SELECT r.id, r.fecha, r.minutoInicio, r.minutoFin, r.estadoReserva, u.nombre, r.ultimoCambio " +
+                        "FROM Reserva r LEFT JOIN Usuario u ON u.id = r.solicitante_id " +
+                        "WHERE r.laboratorio_id = ? AND r.fecha BETWEEN ? AND ? AND r.minutoInicio IS NOT NULL " +
+                        "AND r.estadoReserva IN (" + marcadores(estados.size()) + ") " +
+                        "ORDER BY r.fecha, r.minutoInicio, r.id",
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    ps.setLong(1, laboratorio.getId());
+                    ps.setDate(2, java.sql.Date.valueOf(desde));
+                    ps.setDate(3, java.sql.Date.valueOf(hasta));
+                    int i = 4;
+                    for (EstadoReserva estado : estados) ps.setString(i++, estado.name());
+                    ps.setFetchSize(tamanoLectura);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) escritor.escribir(rs);
+                    }
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            // El cliente corto la conexion
+            throw ex.getCause();
+        }
+    }
+
+    private static String marcadores(int cuantos) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < cuantos; i++) sb.append(i == 0 ? "?" : ", ?");
+        return sb.toString();
+    }
+
+    private static String momentoIcs(LocalDate fecha, int minuto, ZoneId zona) {
+        return FORMATO_ICS.format(fecha.atStartOfDay(zona).plusMinutes(minuto).withZoneSameInstant(ZoneOffset.UTC));
+    }
+
+    private static String estadoIcs(String estado) {
+        if (EstadoReserva.APROBADA.name().equals(estado)) return "CONFIRMED";
+        if (EstadoReserva.PENDIENTE.name().equals(estado)) return "TENTATIVE";
+        return "CANCELLED";
+    }
+
+    private static String nulo(String valor) {
+        return valor == null ? "" : valor;
+    }
+
+    private static String textoIcs(String valor) {
+        return valor.replace("\\", "\\\\").replace(";", "\\;").replace(",", "\\,")
+            .replace("\r\n", "\\n").replace("\n", "\\n").replace("\r", "");
+    }
+
+    private static String textoCsv(String valor) {
+        return valor == null ? "" : valor.replace(';', ',').replace('\r', ' ').replace('\n', ' ');
+    }
+
+    /**
+     * Linea ICS terminada en CRLF y plegada a 75 octetos UTF-8 como pide RFC 5545.
+     */
+    private static void linea(Writer salida, String texto) throws IOException {
+        int octetos = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            int tamano = c < 0x80 ? 1 : c < 0x800 ? 2 : Character.isHighSurrogate(c) ? 4 : Character.isLowSurrogate(c) ? 0 : 3;
+            if (tamano > 0 && octetos + tamano > 75) {
+                salida.write("\r\n ");
+                octetos = 1;
+            }
+            salida.write(c);
+            octetos += tamano;
+        }
+        salida.write("\r\n");
+    }
+}
@@ -0,0 +1,102 @@
+package com.managelab.managelab.servicios;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.apache.commons.logging.*;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Claves de idempotencia para el alta de reservas, por usuario: buscar() dice
+ * si la solicitud ya se proceso y con que reserva; registrar() la anota en la
+ * misma transaccion que crea la reserva, asi o quedan las dos o ninguna.
+ */
+public class Idempotencia {
+
+    private static final Log log = LogFactory.getLog(Idempotencia.class);
+
+    public static final int LARGO_MAXIMO = 64;
+
+    private Idempotencia() {
+    }
+
+    /**
+     * Id de la reserva que el usuario creo con esa clave, o null si la clave es
+     * nueva para el o ya vencio.
+     */
+    public static Long buscar(String usuario, String clave) {
+        ClaveIdempotencia registro = leer(usuario(usuario), validar(clave));
+        if (registro == null || registro.getCreada().getTime() < limite()) return null;
+        return registro.getReservaId();
+    }
+
+    /**
+     * Anota la clave del usuario en la transaccion actual. Si otra solicitud
+     * suya con la misma clave confirma antes, esta falla al confirmar por la
+     * restriccion unica (usuario, clave).
+     */
+    public static void registrar(String usuario, String clave, Long reservaId) {
+        String dueno = usuario(usuario);
+        String valida = validar(clave);
+        ClaveIdempotencia vencida = leer(dueno, valida);
+        if (vencida != null) {
+            XPersistence.getManager().remove(vencida);
+            // Hibernate inserta antes de borrar: sin flush chocaria con la restriccion unica
+            XPersistence.getManager().flush();
+        }
+        ClaveIdempotencia registro = new ClaveIdempotencia();
+        registro.setUsuario(dueno);
+        registro.setClave(valida);
+        registro.setReservaId(reservaId);
+        registro.setCreada(new Date());
+        XPersistence.getManager().persist(registro);
+    }
+
+    /**
+     * Borra las claves vencidas; lo llama TareasProgramadas.
+     */
+    public static int purgar() {
+        try {
+            int borradas = XPersistence.getManager()
+                .createQuery("DELETE FROM ClaveIdempotencia c WHERE c.creada < :limite")
+                .setParameter("limite", new Date(limite()))
+                .executeUpdate();
+            XPersistence.commit();
+            if (borradas > 0) log.info("Claves de idempotencia vencidas borradas: " + borradas);
+            return borradas;
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+
+    private static ClaveIdempotencia leer(String usuario, String clave) {
+        List<ClaveIdempotencia> registros = XPersistence.getManager()
+            .createQuery("SELECT c FROM ClaveIdempotencia c WHERE c.usuario = :usuario AND c.clave = :clave",
+                ClaveIdempotencia.class)
+            .setParameter("usuario", usuario)
+            .setParameter("clave", clave)
+            .getResultList();
+        return registros.isEmpty() ? null : registros.get(0);
+    }
+
+    /** Sin usuario (procesos sin sesion) las claves comparten el usuario vacio. */
+    private static String usuario(String usuario) {
+        return usuario == null ? "" : usuario.trim();
+    }
+
+    private static long limite() {
+        return System.currentTimeMillis()
+            - TimeUnit.HOURS.toMillis(Configuracion.getInt("reservas.idempotencia.horasVida", 24));
+    }
+
+    private static String validar(String clave) {
+        if (clave == null || clave.trim().isEmpty() || clave.trim().length() > LARGO_MAXIMO) {
+            throw new javax.validation.ValidationException(
+                "La clave de idempotencia debe tener entre 1 y " + LARGO_MAXIMO + " caracteres");
+        }
+        return clave.trim();
+    }
+}
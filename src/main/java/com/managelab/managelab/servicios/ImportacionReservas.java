@@ -0,0 +1,331 @@
+package com.managelab.managelab.servicios;
+
+import java.io.*;
+import java.sql.*;
+import java.time.*;
+import java.time.format.*;
+import java.util.*;
+
+import javax.persistence.*;
+
+import org.hibernate.Session;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Importa reservas PENDIENTES desde un CSV con las columnas
+ * laboratorio (codigo), solicitante (email), fecha (yyyy-MM-dd), horaInicio, horaFin.
+ *
+ * Lee el archivo linea a linea y guarda de cada fila solo lo necesario (ids y
+ * minutos). Laboratorios y usuarios se resuelven con mapas cargados una vez.
+ * Las filas se ordenan por (laboratorio, fecha, inicio) y se procesan por
+ * bloques de dias: cada bloque bloquea sus dias, lee lo ya reservado en una
+ * consulta, descarta con un barrido los traslapes (con lo existente y dentro
+ * del archivo), inserta con un batch JDBC y confirma. Cada fila rechazada se
+ * escribe en el informe de errores.
+ */
+public class ImportacionReservas {
+
+    private static final int FILAS_POR_TRANSACCION = 2000;
+
+    public static class Resultado {
+
+        private final int leidas;
+        private final int importadas;
+        private final int errores;
+
+        Resultado(int leidas, int importadas, int errores) {
+            this.leidas = leidas;
+            this.importadas = importadas;
+            this.errores = errores;
+        }
+
+        public int getLeidas() { return leidas; }
+        public int getImportadas() { return importadas; }
+        public int getErrores() { return errores; }
+    }
+
+    /** Fila valida del archivo, pendiente de comprobar traslapes. */
+    private static class Fila {
+        int linea;
+        long laboratorioId;
+        long solicitanteId;
+        LocalDate fecha;
+        int inicio;
+        int fin;
+    }
+
+    private final Map<String, Long> laboratorios = new HashMap<>();
+    private final Map<Long, String> codigos = new HashMap<>();
+    private final Map<String, Long> usuarios = new HashMap<>();
+    private final Set<String> inactivos = new HashSet<>();
+    private PrintWriter informe;
+    private int errores;
+
+    /**
+     * Importa el CSV y escribe en informe una linea por fila rechazada
+     * (linea;laboratorio;fecha;horaInicio;horaFin;motivo).
+     */
+    public Resultado importar(Reader csv, Writer informeErrores) throws IOException {
+        informe = new PrintWriter(informeErrores);
+        informe.println("linea;laboratorio;fecha;horaInicio;horaFin;motivo");
+        try {
+            cargarMapas();
+        } finally {
+            XPersistence.rollback();
+        }
+
+        List<Fila> filas = new ArrayList<>();
+        int leidas = leer(new BufferedReader(csv), filas);
+
+        filas.sort(Comparator.comparingLong((Fila f) -> f.laboratorioId)
+            .thenComparing(f -> f.fecha)
+            .thenComparingInt(f -> f.inicio)
+            .thenComparingInt(f -> f.linea));
+
+        int importadas = 0;
+        int desde = 0;
+        while (desde < filas.size()) {
+            int hasta = corte(filas, desde);
+            importadas += importarBloque(filas.subList(desde, hasta));
+            desde = hasta;
+        }
+        informe.flush();
+        return new Resultado(leidas, importadas, errores);
+    }
+
+    private void cargarMapas() {
+        @SuppressWarnings("unchecked")
+        List<Object[]> labs = XPersistence.getManager()
+            .createQuery("SELECT l.codigo, l.id, l.estado FROM Laboratorio l")
+            .getResultList();
+        for (Object[] l : labs) {
+            String codigo = ((String) l[0]).trim().toUpperCase();
+            laboratorios.put(codigo, (Long) l[1]);
+            codigos.put((Long) l[1], (String) l[0]);
+            if (l[2] != EstadoLaboratorio.ACTIVO) inactivos.add(codigo);
+        }
+        @SuppressWarnings("unchecked")
+        List<Object[]> users = XPersistence.getManager()
+            .createQuery("SELECT u.email, u.id FROM Usuario u WHERE u.activo = true")
+            .getResultList();
+        for (Object[] u : users) {
+            usuarios.put(((String) u[0]).trim().toLowerCase(), (Long) u[1]);
+        }
+    }
+
+    private int leer(BufferedReader lector, List<Fila> filas) throws IOException {
+        String linea;
+        int numero = 0;
+        int leidas = 0;
+        while ((linea = lector.readLine()) != null) {
+            numero++;
+            if (linea.trim().isEmpty()) continue;
+            String[] c = linea.split(linea.indexOf(';') >= 0 ? ";" : ",", -1);
+            if (numero == 1 && c[0].trim().equalsIgnoreCase("laboratorio")) continue;
+            leidas++;
+            if (c.length < 5) {
+                error(numero, c, "se esperaban 5 columnas: laboratorio, solicitante, fecha, horaInicio, horaFin");
+                continue;
+            }
+            String codigo = c[0].trim().toUpperCase();
+            Long laboratorioId = laboratorios.get(codigo);
+            Long solicitanteId = usuarios.get(c[1].trim().toLowerCase());
+            if (laboratorioId == null) {
+                error(numero, c, "laboratorio no encontrado");
+                continue;
+            }
+            if (inactivos.contains(codigo)) {
+                error(numero, c, "laboratorio inactivo");
+                continue;
+            }
+            if (solicitanteId == null) {
+                error(numero, c, "solicitante no encontrado o inactivo");
+                continue;
+            }
+            Fila fila = new Fila();
+            fila.linea = numero;
+            fila.laboratorioId = laboratorioId;
+            fila.solicitanteId = solicitanteId;
+            try {
+                fila.fecha = LocalDate.parse(c[2].trim());
+                fila.inicio = Horas.aMinutos(c[3].trim(), "horaInicio");
+                fila.fin = Horas.aMinutos(c[4].trim(), "horaFin");
+            } catch (DateTimeParseException ex) {
+                error(numero, c, "fecha invalida, use yyyy-MM-dd");
+                continue;
+            } catch (javax.validation.ValidationException ex) {
+                error(numero, c, ex.getMessage());
+                continue;
+            }
+            if (fila.fin <= fila.inicio) {
+                error(numero, c, "la hora fin debe ser mayor a la hora inicio");
+                continue;
+            }
+            filas.add(fila);
+        }
+        return leidas;
+    }
+
+    /**
+     * Fin del bloque que empieza en desde: unas FILAS_POR_TRANSACCION filas,
+     * sin partir nunca un mismo dia de un laboratorio.
+     */
+    private static int corte(List<Fila> filas, int desde) {
+        int hasta = Math.min(desde + FILAS_POR_TRANSACCION, filas.size());
+        while (hasta < filas.size() && mismoDia(filas.get(hasta - 1), filas.get(hasta))) hasta++;
+        return hasta;
+    }
+
+    private static boolean mismoDia(Fila a, Fila b) {
+        return a.laboratorioId == b.laboratorioId && a.fecha.equals(b.fecha);
+    }
+
+    private int importarBloque(List<Fila> bloque) {
+        Map<ClaveFranja, List<Fila>> porDia = new LinkedHashMap<>();
+        for (Fila f : bloque) {
+            porDia.computeIfAbsent(new ClaveFranja(f.laboratorioId, f.fecha), k -> new ArrayList<>()).add(f);
+        }
+        try {
+            BloqueoFranjas.bloquear(porDia.keySet());
+            Map<ClaveFranja, List<long[]>> existentes = cargarExistentes(porDia.keySet());
+
+            List<Fila> aInsertar = new ArrayList<>(bloque.size());
+            for (Map.Entry<ClaveFranja, List<Fila>> dia : porDia.entrySet()) {
+                barrer(IntervalosDia.de(existentes.getOrDefault(dia.getKey(), Collections.emptyList())),
+                    dia.getValue(), aInsertar);
+            }
+            insertar(aInsertar);
+
+            IndiceReservas indice = IndiceReservas.getInstance();
+            for (ClaveFranja dia : porDia.keySet()) indice.invalidarAlConfirmar(dia);
+            XPersistence.commit();
+            return aInsertar.size();
+        } catch (PersistenceException | javax.validation.ValidationException ex) {
+            XPersistence.rollback();
+            for (Fila f : bloque) error(f, "no se pudo grabar el bloque: " + ex.getMessage());
+            return 0;
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+
+    /**
+     * Las filas de un dia ya vienen ordenadas por inicio: cada una se compara
+     * con lo existente (busqueda binaria) y con el mayor fin aceptado del archivo.
+     */
+    private void barrer(IntervalosDia existentes, List<Fila> filas, List<Fila> aInsertar) {
+        int mayorFin = Integer.MIN_VALUE;
+        Fila ultimaAceptada = null;
+        for (Fila f : filas) {
+            if (existentes.traslapa(f.inicio, f.fin, -1)) {
+                error(f, "se traslapa con una reserva existente (aprobada o pendiente)");
+            } else if (f.inicio < mayorFin) {
+                error(f, "se traslapa con la linea " + ultimaAceptada.linea + " del archivo");
+            } else {
+                aInsertar.add(f);
+                mayorFin = f.fin;
+                ultimaAceptada = f;
+            }
+        }
+    }
+
+    /**
+     * APROBADAS y PENDIENTES de los dias del bloque: una consulta por rango de
+     * fechas para los laboratorios del bloque, filtrada en memoria.
+     */
+    private Map<ClaveFranja, List<long[]>> cargarExistentes(Set<ClaveFranja> dias) {
+        Set<Long> labs = new HashSet<>();
+        LocalDate primera = null, ultima = null;
+        for (ClaveFranja d : dias) {
+            labs.add(d.getLaboratorioId());
+            if (primera == null || d.getFecha().isBefore(primera)) primera = d.getFecha();
+            if (ultima == null || d.getFecha().isAfter(ultima)) ultima = d.getFecha();
+        }
+        @SuppressWarnings("unchecked")
+        List<Object[]> filas = XPersistence.getManager()
+            .createQuery(
+                "SELECT r.id, r.laboratorio.id, r.fecha, r.minutoInicio, r.minutoFin FROM Reserva r " +
+                "WHERE r.laboratorio.id IN :labs AND r.fecha BETWEEN :primera AND :ultima " +
+                "AND r.estadoReserva IN :estados AND r.minutoInicio IS NOT NULL")
+            .setFlushMode(FlushModeType.COMMIT)
+            .setParameter("labs", labs)
+            .setParameter("primera", java.sql.Date.valueOf(primera))
+            .setParameter("ultima", java.sql.Date.valueOf(ultima))
+            .setParameter("estados", Arrays.asList(EstadoReserva.APROBADA, EstadoReserva.PENDIENTE))
+            .getResultList();
+        Map<ClaveFranja, List<long[]>> porDia = new HashMap<>();
+        for (Object[] f : filas) {
+            ClaveFranja clave = ClaveFranja.de((Long) f[1], (java.util.Date) f[2]);
+            if (!dias.contains(clave)) continue;
+            porDia.computeIfAbsent(clave, k -> new ArrayList<>())
+                .add(new long[] { (Long) f[0], (Integer) f[3], (Integer) f[4] });
+        }
+        return porDia;
+    }
+
+    private void insertar(List<Fila> filas) {
+        if (filas.isEmpty()) return;
+        XPersistence.getManager().unwrap(Session.class).doWork(con -> {
+            try (PreparedStatement ps = con.prepareStatement(
+                    "INSERT INTO Reserva (laboratorio_id, solicitante_id, fecha, horaInicio, horaFin, " +
+                    "minutoInicio, minutoFin, estadoReserva, fechaCreacion, ultimoCambio) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                Timestamp ahora = new Timestamp(System.currentTimeMillis());
+                for (Fila f : filas) {
+                    ps.setLong(1, f.laboratorioId);
+                    ps.setLong(2, f.solicitanteId);
+                    ps.setDate(3, java.sql.Date.valueOf(f.fecha));
+                    ps.setString(4, Horas.formato(f.inicio));
+                    ps.setString(5, Horas.formato(f.fin));
+                    ps.setInt(6, f.inicio);
+                    ps.setInt(7, f.fin);
+                    ps.setString(8, EstadoReserva.PENDIENTE.name());
+                    ps.setTimestamp(9, ahora);
+                    ps.setTimestamp(10, ahora);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                // Eventos y contadores van por id: sin una clave por fila el bloque no se graba
+                long[] claves = new long[filas.size()];
+                int recibidas = 0;
+                try (ResultSet ids = ps.getGeneratedKeys()) {
+                    while (ids.next()) {
+                        if (recibidas < claves.length) claves[recibidas] = ids.getLong(1);
+                        recibidas++;
+                    }
+                }
+                if (recibidas != claves.length) {
+                    throw new SQLException("El driver devolvio " + recibidas + " ids para "
+                        + claves.length + " reservas insertadas");
+                }
+                for (int i = 0; i < claves.length; i++) {
+                    Fila f = filas.get(i);
+                    TransicionesReserva.registrar(claves[i], new ClaveFranja(f.laboratorioId, f.fecha),
+                        null, EstadoReserva.PENDIENTE);
+                }
+            }
+        });
+    }
+
+    private void error(int linea, String[] columnas, String motivo) {
+        errores++;
+        informe.print(linea);
+        for (int i = 0; i < 5; i++) {
+            if (i == 1) continue;
+            informe.print(';');
+            informe.print(i >= columnas.length ? "" : columnas[i].trim().replace(";", ","));
+        }
+        informe.print(';');
+        informe.println(motivo);
+    }
+
+    private void error(Fila f, String motivo) {
+        error(f.linea, new String[] {
+            codigos.get(f.laboratorioId), "", f.fecha.toString(), Horas.formato(f.inicio), Horas.formato(f.fin)
+        }, motivo);
+    }
+}
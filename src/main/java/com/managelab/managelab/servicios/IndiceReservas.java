@@ -0,0 +1,285 @@
+package com.managelab.managelab.servicios;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.persistence.*;
+
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Indice en memoria de las reservas que ocupan un laboratorio (APROBADA y
+ * PENDIENTE), agrupadas por (laboratorio, fecha).
+ *
+ * Cada dia se carga desde la base de datos la primera vez que se consulta y
+ * despues se mantiene al dia con los callbacks de Reserva, que solo se aplican
+ * cuando la transaccion se confirma.
+ *
+ * Es acotado: un dia se recarga al cumplir reservas.indice.minutosVida y, si se
+ * pasa de reservas.indice.maximoDias, se descartan los dias usados hace mas
+ * tiempo. Aciertos, fallos, desalojos e invalidaciones quedan en Metricas.
+ */
+public class IndiceReservas {
+
+    private static final IndiceReservas instancia = new IndiceReservas();
+
+    private final int maximoDias = Configuracion.getInt("reservas.indice.maximoDias", 20000);
+    private final long vidaNanos =
+        TimeUnit.MINUTES.toNanos(Configuracion.getInt("reservas.indice.minutosVida", 30));
+
+    private final LongAdder aciertos = Metricas.contador("indiceReservas.aciertos");
+    private final LongAdder fallos = Metricas.contador("indiceReservas.fallos");
+    private final LongAdder desalojos = Metricas.contador("indiceReservas.desalojos");
+    private final LongAdder expirados = Metricas.contador("indiceReservas.expirados");
+    private final LongAdder invalidaciones = Metricas.contador("indiceReservas.invalidaciones");
+
+    /** Evita que varios hilos recorten el indice a la vez. */
+    private final AtomicBoolean recortando = new AtomicBoolean();
+
+    private final ConcurrentMap<ClaveFranja, Franja> franjas = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, ClaveFranja> ubicaciones = new ConcurrentHashMap<>();
+
+    /** Se incrementa con cada cambio aplicado, para no guardar cargas que se cruzaron con un cambio. */
+    private final AtomicLong generacion = new AtomicLong();
+
+    private IndiceReservas() {
+        Metricas.medidor("indiceReservas.dias", franjas::size);
+    }
+
+    public static IndiceReservas getInstance() {
+        return instancia;
+    }
+
+    /**
+     * True si [inicio, fin) se traslapa con alguna reserva APROBADA o PENDIENTE
+     * del laboratorio en esa fecha, sin contar la reserva excluirId.
+     */
+    public boolean hayTraslape(Long laboratorioId, Date fecha, int inicio, int fin, Long excluirId) {
+        return getFranja(ClaveFranja.de(laboratorioId, fecha)).activas.traslapa(inicio, fin, id(excluirId));
+    }
+
+    /**
+     * Igual que hayTraslape() pero solo contra reservas APROBADAS.
+     */
+    public boolean hayTraslapeConAprobadas(Long laboratorioId, Date fecha, int inicio, int fin, Long excluirId) {
+        return getFranja(ClaveFranja.de(laboratorioId, fecha)).aprobadas.traslapa(inicio, fin, id(excluirId));
+    }
+
+    /**
+     * Refleja en el indice el estado actual de la reserva cuando se confirme la transaccion.
+     */
+    public void registrarAlConfirmar(Reserva reserva) {
+        if (reserva.getId() == null) return;
+        final long id = reserva.getId();
+        if (reserva.getLaboratorio() == null || reserva.getLaboratorio().getId() == null
+                || reserva.getFecha() == null) {
+            TransaccionActual.alConfirmar(() -> quitar(id));
+            return;
+        }
+        final ClaveFranja clave = ClaveFranja.de(reserva.getLaboratorio().getId(), reserva.getFecha());
+        if (reserva.getMinutoInicio() == null || reserva.getMinutoFin() == null) {
+            TransaccionActual.alConfirmar(() -> { quitar(id); invalidar(clave); });
+            return;
+        }
+        registrarAlConfirmar(id, clave, reserva.getMinutoInicio(), reserva.getMinutoFin(), reserva.getEstadoReserva());
+    }
+
+    /**
+     * Para cambios hechos sin pasar por la entidad (JDBC, actualizaciones masivas).
+     */
+    public void registrarAlConfirmar(long id, ClaveFranja clave, int inicio, int fin, EstadoReserva estado) {
+        TransaccionActual.alConfirmar(() -> poner(id, clave, inicio, fin, estado));
+    }
+
+    public void quitarAlConfirmar(Long id) {
+        if (id == null) return;
+        final long idReserva = id;
+        TransaccionActual.alConfirmar(() -> quitar(idReserva));
+    }
+
+    public void invalidarAlConfirmar(ClaveFranja clave) {
+        TransaccionActual.alConfirmar(() -> invalidar(clave));
+    }
+
+    /**
+     * Descarta el dia; se recargara desde la base de datos en la siguiente consulta.
+     */
+    public void invalidar(ClaveFranja clave) {
+        generacion.incrementAndGet();
+        if (descartar(clave)) invalidaciones.increment();
+    }
+
+    /**
+     * Quita el dia sea cual sea la franja guardada: una invalidacion no puede
+     * perderse porque un poner() o quitar() concurrente haya cambiado la franja.
+     */
+    private boolean descartar(ClaveFranja clave) {
+        Franja franja = franjas.remove(clave);
+        if (franja == null) return false;
+        franja.activas.paraCadaId(id -> ubicaciones.remove(id, clave));
+        return true;
+    }
+
+    /**
+     * Quita el dia solo si sigue guardada esa misma franja (expiracion y recorte).
+     */
+    private boolean descartar(ClaveFranja clave, Franja franja) {
+        if (!franjas.remove(clave, franja)) return false;
+        franja.activas.paraCadaId(id -> ubicaciones.remove(id, clave));
+        return true;
+    }
+
+    private void poner(long id, ClaveFranja clave, int inicio, int fin, EstadoReserva estado) {
+        generacion.incrementAndGet();
+        quitar(id);
+        if (estado != EstadoReserva.APROBADA && estado != EstadoReserva.PENDIENTE) return;
+        if (franjas.computeIfPresent(clave, (k, f) -> f.con(id, inicio, fin, estado)) != null) {
+            ubicaciones.put(id, clave);
+        }
+    }
+
+    private void quitar(long id) {
+        generacion.incrementAndGet();
+        ClaveFranja anterior = ubicaciones.remove(id);
+        if (anterior != null) franjas.computeIfPresent(anterior, (k, f) -> f.sin(id));
+    }
+
+    private Franja getFranja(ClaveFranja clave) {
+        long ahora = System.nanoTime();
+        Franja franja = franjas.get(clave);
+        if (franja != null) {
+            if (ahora - franja.cargada < vidaNanos) {
+                franja.usada = ahora;
+                aciertos.increment();
+                return franja;
+            }
+            if (descartar(clave, franja)) expirados.increment();
+        }
+        fallos.increment();
+
+        long generacionAntes = generacion.get();
+        franja = cargar(clave);
+        // Si esta transaccion ya escribio reservas, lo leido puede no estar confirmado
+        if (!TransaccionActual.tieneCambiosPendientes() && generacion.get() == generacionAntes) {
+            Franja existente = franjas.putIfAbsent(clave, franja);
+            if (existente != null) return existente;
+            franja.activas.paraCadaId(id -> ubicaciones.put(id, clave));
+            if (franjas.size() > maximoDias) recortar();
+        }
+        return franja;
+    }
+
+    /**
+     * Deja el indice en el 90% de maximoDias descartando primero los dias
+     * vencidos y despues los usados hace mas tiempo.
+     */
+    private void recortar() {
+        if (!recortando.compareAndSet(false, true)) return;
+        try {
+            long ahora = System.nanoTime();
+            // Se copia el ultimo uso antes de ordenar: otros hilos lo siguen cambiando
+            List<Object[]> candidatas = new ArrayList<>(franjas.size());
+            for (Map.Entry<ClaveFranja, Franja> e : franjas.entrySet()) {
+                Franja f = e.getValue();
+                long orden = ahora - f.cargada >= vidaNanos ? Long.MIN_VALUE : f.usada;
+                candidatas.add(new Object[] { e.getKey(), f, orden });
+            }
+            candidatas.sort(Comparator.comparingLong(c -> (Long) c[2]));
+            int sobran = franjas.size() - maximoDias * 9 / 10;
+            for (int i = 0; i < candidatas.size() && sobran > 0; i++) {
+                Object[] c = candidatas.get(i);
+                if (descartar((ClaveFranja) c[0], (Franja) c[1])) {
+                    desalojos.increment();
+                    sobran--;
+                }
+            }
+        } finally {
+            recortando.set(false);
+        }
+    }
+
+    private Franja cargar(ClaveFranja clave) {
+        String q =
+            "SELECT r.id, r.minutoInicio, r.minutoFin, r.estadoReserva, r.horaInicio, r.horaFin FROM Reserva r " +
+            "WHERE r.laboratorio.id = :labId " +
+            "AND r.fecha = :fecha " +
+            "AND r.estadoReserva IN :estados";
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> filas = XPersistence.getManager()
+            .createQuery(q)
+            .setFlushMode(FlushModeType.COMMIT)
+            .setParameter("labId", clave.getLaboratorioId())
+            .setParameter("fecha", clave.getFechaSql(), TemporalType.DATE)
+            .setParameter("estados", Arrays.asList(EstadoReserva.APROBADA, EstadoReserva.PENDIENTE))
+            .getResultList();
+
+        List<long[]> activas = new ArrayList<>(filas.size());
+        List<long[]> aprobadas = new ArrayList<>();
+        for (Object[] fila : filas) {
+            long[] intervalo = aIntervalo(fila);
+            if (intervalo == null) continue;
+            activas.add(intervalo);
+            if (fila[3] == EstadoReserva.APROBADA) aprobadas.add(intervalo);
+        }
+        return new Franja(IntervalosDia.de(activas), IntervalosDia.de(aprobadas));
+    }
+
+    /**
+     * {id, inicio, fin}; usa las columnas en minutos y, si la fila aun no se
+     * migro, las horas en texto.
+     */
+    private static long[] aIntervalo(Object[] fila) {
+        long id = (Long) fila[0];
+        if (fila[1] != null && fila[2] != null) {
+            return new long[] { id, (Integer) fila[1], (Integer) fila[2] };
+        }
+        if (fila[4] == null || fila[5] == null) return null;
+        return new long[] {
+            id,
+            Horas.aMinutos((String) fila[4], "horaInicio existente"),
+            Horas.aMinutos((String) fila[5], "horaFin existente")
+        };
+    }
+
+    private static long id(Long id) {
+        return id == null ? -1 : id;
+    }
+
+    private static class Franja {
+
+        final IntervalosDia activas;
+        final IntervalosDia aprobadas;
+
+        /** System.nanoTime() de la carga desde la base de datos; los cambios lo conservan. */
+        final long cargada;
+        volatile long usada;
+
+        Franja(IntervalosDia activas, IntervalosDia aprobadas) {
+            this(activas, aprobadas, System.nanoTime());
+        }
+
+        private Franja(IntervalosDia activas, IntervalosDia aprobadas, long cargada) {
+            this.activas = activas;
+            this.aprobadas = aprobadas;
+            this.cargada = cargada;
+            this.usada = cargada;
+        }
+
+        Franja con(long id, int inicio, int fin, EstadoReserva estado) {
+            return new Franja(
+                activas.con(id, inicio, fin),
+                estado == EstadoReserva.APROBADA ? aprobadas.con(id, inicio, fin) : aprobadas.sin(id),
+                cargada
+            );
+        }
+
+        Franja sin(long id) {
+            return new Franja(activas.sin(id), aprobadas.sin(id), cargada);
+        }
+    }
+}
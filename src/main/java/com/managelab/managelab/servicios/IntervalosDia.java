@@ -0,0 +1,126 @@
+package com.managelab.managelab.servicios;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * Conjunto inmutable de intervalos [inicio, fin) en minutos, ordenados por inicio.
+ *
+ * Para cada posicion guarda el mayor fin (y el id que lo aporta) y el segundo
+ * mayor fin entre los intervalos que empiezan antes, de modo que la pregunta
+ * "algun intervalo distinto de X se traslapa con [inicio, fin)?" se responde
+ * con una busqueda binaria.
+ */
+final class IntervalosDia {
+
+    static final IntervalosDia VACIO = new IntervalosDia(new long[0], new int[0], new int[0]);
+
+    private final long[] ids;
+    private final int[] inicios;
+    private final int[] fines;
+
+    private final int[] maxFin;
+    private final long[] idMaxFin;
+    private final int[] segundoMaxFin;
+
+    private IntervalosDia(long[] ids, int[] inicios, int[] fines) {
+        this.ids = ids;
+        this.inicios = inicios;
+        this.fines = fines;
+        int n = ids.length;
+        maxFin = new int[n];
+        idMaxFin = new long[n];
+        segundoMaxFin = new int[n];
+        int m1 = Integer.MIN_VALUE, m2 = Integer.MIN_VALUE;
+        long id1 = -1;
+        for (int i = 0; i < n; i++) {
+            if (fines[i] > m1) {
+                m2 = m1;
+                m1 = fines[i];
+                id1 = ids[i];
+            } else if (fines[i] > m2) {
+                m2 = fines[i];
+            }
+            maxFin[i] = m1;
+            idMaxFin[i] = id1;
+            segundoMaxFin[i] = m2;
+        }
+    }
+
+    static IntervalosDia de(List<long[]> intervalos) {
+        long[][] ordenados = intervalos.toArray(new long[intervalos.size()][]);
+        Arrays.sort(ordenados, (a, b) -> Long.compare(a[1], b[1]));
+        int n = ordenados.length;
+        long[] ids = new long[n];
+        int[] inicios = new int[n];
+        int[] fines = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = ordenados[i][0];
+            inicios[i] = (int) ordenados[i][1];
+            fines[i] = (int) ordenados[i][2];
+        }
+        return new IntervalosDia(ids, inicios, fines);
+    }
+
+    void paraCadaId(LongConsumer accion) {
+        for (long id : ids) accion.accept(id);
+    }
+
+    /**
+     * True si algun intervalo, salvo el de id excluirId, se traslapa con [inicio, fin).
+     */
+    boolean traslapa(int inicio, int fin, long excluirId) {
+        int i = primeroQueEmpiezaEnOdespues(fin) - 1;
+        if (i < 0) return false;
+        int mayorFin = idMaxFin[i] == excluirId ? segundoMaxFin[i] : maxFin[i];
+        return mayorFin > inicio;
+    }
+
+    IntervalosDia con(long id, int inicio, int fin) {
+        IntervalosDia base = sin(id);
+        int n = base.ids.length;
+        int pos = base.primeroQueEmpiezaEnOdespues(inicio);
+        long[] nIds = new long[n + 1];
+        int[] nInicios = new int[n + 1];
+        int[] nFines = new int[n + 1];
+        System.arraycopy(base.ids, 0, nIds, 0, pos);
+        System.arraycopy(base.inicios, 0, nInicios, 0, pos);
+        System.arraycopy(base.fines, 0, nFines, 0, pos);
+        nIds[pos] = id;
+        nInicios[pos] = inicio;
+        nFines[pos] = fin;
+        System.arraycopy(base.ids, pos, nIds, pos + 1, n - pos);
+        System.arraycopy(base.inicios, pos, nInicios, pos + 1, n - pos);
+        System.arraycopy(base.fines, pos, nFines, pos + 1, n - pos);
+        return new IntervalosDia(nIds, nInicios, nFines);
+    }
+
+    IntervalosDia sin(long id) {
+        int pos = -1;
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == id) { pos = i; break; }
+        }
+        if (pos < 0) return this;
+        int n = ids.length - 1;
+        long[] nIds = new long[n];
+        int[] nInicios = new int[n];
+        int[] nFines = new int[n];
+        System.arraycopy(ids, 0, nIds, 0, pos);
+        System.arraycopy(inicios, 0, nInicios, 0, pos);
+        System.arraycopy(fines, 0, nFines, 0, pos);
+        System.arraycopy(ids, pos + 1, nIds, pos, n - pos);
+        System.arraycopy(inicios, pos + 1, nInicios, pos, n - pos);
+        System.arraycopy(fines, pos + 1, nFines, pos, n - pos);
+        return new IntervalosDia(nIds, nInicios, nFines);
+    }
+
+    private int primeroQueEmpiezaEnOdespues(int minuto) {
+        int lo = 0, hi = inicios.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (inicios[mid] < minuto) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
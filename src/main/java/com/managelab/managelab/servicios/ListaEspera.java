@@ -0,0 +1,205 @@
+package com.managelab.managelab.servicios;
+
+import java.sql.*;
+import java.time.*;
+import java.util.*;
+
+import javax.persistence.*;
+
+import org.hibernate.Session;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Promueve las solicitudes de EsperaReserva cuando se libera horario.
+ *
+ * TransicionesReserva avisa con liberadoAlConfirmar() cada vez que una reserva
+ * deja de ocupar un tramo [inicio, fin) de un dia. Justo antes del commit, en
+ * la misma transaccion, se bloquea cada dia afectado y se leen solo sus
+ * solicitudes ESPERANDO que se traslapan con algun tramo liberado, por el
+ * indice (laboratorio, fecha, estado, minutoInicio): las demas no podian caber
+ * antes y siguen sin caber. Cada una se prueba en orden de llegada contra los
+ * tramos ocupados del dia (un TreeMap, O(log n) por prueba); las que caben
+ * pasan a PENDIENTE.
+ */
+public class ListaEspera {
+
+    private static final int FIN_DIA = 24 * 60;
+
+    private static final ThreadLocal<Map<ClaveFranja, List<int[]>>> liberados = new ThreadLocal<>();
+
+    private ListaEspera() {
+    }
+
+    /**
+     * Anota que en ese dia se libero [inicio, fin); sin horas (filas aun sin
+     * migrar) se toma el dia entero. La promocion corre una vez por
+     * transaccion, antes de confirmar.
+     */
+    public static void liberadoAlConfirmar(ClaveFranja dia, Integer inicio, Integer fin) {
+        if (dia == null) return;
+        Map<ClaveFranja, List<int[]>> dias = liberados.get();
+        if (dias == null) {
+            Map<ClaveFranja, List<int[]>> nuevos = new LinkedHashMap<>();
+            TransaccionActual.antesDeConfirmar(() -> promover(nuevos));
+            TransaccionActual.alFinalizar(liberados::remove);
+            liberados.set(nuevos);
+            dias = nuevos;
+        }
+        int[] tramo = inicio == null || fin == null ? new int[] { 0, FIN_DIA } : new int[] { inicio, fin };
+        dias.computeIfAbsent(dia, k -> new ArrayList<>()).add(tramo);
+    }
+
+    private static void promover(Map<ClaveFranja, List<int[]>> dias) {
+        // Las reservas creadas aqui no vuelven a disparar la promocion
+        liberados.remove();
+        if (dias.isEmpty()) return;
+        BloqueoFranjas.bloquear(dias.keySet());
+        int promovidas = 0;
+        for (Map.Entry<ClaveFranja, List<int[]>> dia : dias.entrySet()) {
+            promovidas += promover(dia.getKey(), unir(dia.getValue()));
+        }
+        Metricas.contador("listaEspera.promovidas").add(promovidas);
+    }
+
+    /**
+     * Tramos liberados ordenados y unidos, para que la consulta tenga los minimos.
+     */
+    private static List<int[]> unir(List<int[]> tramos) {
+        tramos.sort(Comparator.comparingInt(t -> t[0]));
+        List<int[]> unidos = new ArrayList<>();
+        for (int[] t : tramos) {
+            int[] ultimo = unidos.isEmpty() ? null : unidos.get(unidos.size() - 1);
+            if (ultimo != null && t[0] <= ultimo[1]) ultimo[1] = Math.max(ultimo[1], t[1]);
+            else unidos.add(new int[] { t[0], t[1] });
+        }
+        return unidos;
+    }
+
+    private static int promover(ClaveFranja dia, List<int[]> tramos) {
+        EntityManager em = XPersistence.getManager();
+        StringBuilder traslape = new StringBuilder();
+        for (int i = 0; i < tramos.size(); i++) {
+            if (i > 0) traslape.append(" OR ");
+            traslape.append("(e.minutoInicio < :fin").append(i).append(" AND e.minutoFin > :inicio").append(i).append(')');
+        }
+        Query consulta = em
+            .createQuery(
+                "SELECT e.id, e.solicitante.id, e.minutoInicio, e.minutoFin FROM EsperaReserva e " +
+                "WHERE e.laboratorio.id = :lab AND e.fecha = :fecha AND e.estado = :esperando " +
+                "AND (" + traslape + ") ORDER BY e.solicitada, e.id")
+            .setParameter("lab", dia.getLaboratorioId())
+            .setParameter("fecha", dia.getFechaSql())
+            .setParameter("esperando", EstadoEspera.ESPERANDO)
+            .setLockMode(LockModeType.PESSIMISTIC_WRITE);
+        for (int i = 0; i < tramos.size(); i++) {
+            consulta.setParameter("inicio" + i, tramos.get(i)[0]);
+            consulta.setParameter("fin" + i, tramos.get(i)[1]);
+        }
+        @SuppressWarnings("unchecked")
+        List<Object[]> candidatas = consulta.getResultList();
+        if (candidatas.isEmpty()) return 0;
+
+        NavigableMap<Integer, Integer> ocupados = ocupados(dia);
+        int ahora = dia.getFecha().equals(LocalDate.now()) ? LocalTime.now().toSecondOfDay() / 60
+            : dia.getFecha().isBefore(LocalDate.now()) ? Integer.MAX_VALUE : -1;
+        List<Long> vencidas = new ArrayList<>();
+        int promovidas = 0;
+        for (Object[] c : candidatas) {
+            long esperaId = (Long) c[0];
+            int inicio = (Integer) c[2];
+            int fin = (Integer) c[3];
+            if (inicio <= ahora) {
+                vencidas.add(esperaId);
+            } else if (cabe(ocupados, inicio, fin)) {
+                ocupados.put(inicio, fin);
+                crearReserva(dia, esperaId, (Long) c[1], inicio, fin);
+                promovidas++;
+            }
+        }
+        if (!vencidas.isEmpty()) {
+            em.createQuery("UPDATE EsperaReserva e SET e.estado = :vencida WHERE e.id IN :ids")
+                .setParameter("vencida", EstadoEspera.VENCIDA)
+                .setParameter("ids", vencidas)
+                .executeUpdate();
+        }
+        if (promovidas > 0) IndiceReservas.getInstance().invalidarAlConfirmar(dia);
+        return promovidas;
+    }
+
+    /**
+     * Tramos ocupados del dia (APROBADAS y PENDIENTES) ya unidos, para que no se
+     * solapen entre si: inicio -> fin.
+     */
+    private static NavigableMap<Integer, Integer> ocupados(ClaveFranja dia) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> filas = XPersistence.getManager()
+            .createQuery(
+                "SELECT r.minutoInicio, r.minutoFin FROM Reserva r " +
+                "WHERE r.laboratorio.id = :lab AND r.fecha = :fecha AND r.estadoReserva IN :estados " +
+                "AND r.minutoInicio IS NOT NULL ORDER BY r.minutoInicio")
+            .setParameter("lab", dia.getLaboratorioId())
+            .setParameter("fecha", dia.getFechaSql())
+            .setParameter("estados", Arrays.asList(EstadoReserva.APROBADA, EstadoReserva.PENDIENTE))
+            .getResultList();
+        NavigableMap<Integer, Integer> tramos = new TreeMap<>();
+        Map.Entry<Integer, Integer> ultimo = null;
+        for (Object[] f : filas) {
+            int inicio = (Integer) f[0];
+            int fin = (Integer) f[1];
+            if (ultimo != null && inicio < ultimo.getValue()) {
+                if (fin > ultimo.getValue()) tramos.put(ultimo.getKey(), fin);
+            } else {
+                tramos.put(inicio, fin);
+            }
+            ultimo = tramos.lastEntry();
+        }
+        return tramos;
+    }
+
+    private static boolean cabe(NavigableMap<Integer, Integer> ocupados, int inicio, int fin) {
+        Map.Entry<Integer, Integer> antes = ocupados.floorEntry(inicio);
+        if (antes != null && antes.getValue() > inicio) return false;
+        Integer siguiente = ocupados.higherKey(inicio);
+        return siguiente == null || siguiente >= fin;
+    }
+
+    private static void crearReserva(ClaveFranja dia, long esperaId, long solicitanteId, int inicio, int fin) {
+        long reservaId = XPersistence.getManager().unwrap(Session.class).doReturningWork(con -> {
+            try (PreparedStatement ps = con.prepareStatement(
+                    "INSERT INTO Reserva (laboratorio_id, solicitante_id, fecha, horaInicio, horaFin, " +
+                    "minutoInicio, minutoFin, estadoReserva, fechaCreacion, ultimoCambio) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                Timestamp ahora = new Timestamp(System.currentTimeMillis());
+                ps.setLong(1, dia.getLaboratorioId());
+                ps.setLong(2, solicitanteId);
+                ps.setDate(3, dia.getFechaSql());
+                ps.setString(4, Horas.formato(inicio));
+                ps.setString(5, Horas.formato(fin));
+                ps.setInt(6, inicio);
+                ps.setInt(7, fin);
+                ps.setString(8, EstadoReserva.PENDIENTE.name());
+                ps.setTimestamp(9, ahora);
+                ps.setTimestamp(10, ahora);
+                ps.executeUpdate();
+                try (ResultSet ids = ps.getGeneratedKeys()) {
+                    ids.next();
+                    return ids.getLong(1);
+                }
+            }
+        });
+        XPersistence.getManager()
+            .createQuery(
+                "UPDATE EsperaReserva e SET e.estado = :promovida, e.reservaId = :reserva " +
+                "WHERE e.id = :id AND e.estado = :esperando")
+            .setParameter("promovida", EstadoEspera.PROMOVIDA)
+            .setParameter("reserva", reservaId)
+            .setParameter("id", esperaId)
+            .setParameter("esperando", EstadoEspera.ESPERANDO)
+            .executeUpdate();
+        TransicionesReserva.registrar(reservaId, dia, null, EstadoReserva.PENDIENTE);
+    }
+}
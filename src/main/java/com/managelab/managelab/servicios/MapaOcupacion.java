@@ -0,0 +1,102 @@
+package com.managelab.managelab.servicios;
+
+import java.util.*;
+
+/**
+ * Ocupacion de un dia en casillas de N minutos, un bit por casilla. Por defecto
+ * casillas de 5 minutos (288 bits en 5 palabras long); con casillas de 1 minuto
+ * (1440 bits) las comparaciones son exactas.
+ *
+ * Un intervalo ocupa todas las casillas que toca, aunque sea en parte, asi que
+ * un hueco libre nunca se solapa con una reserva.
+ */
+public final class MapaOcupacion {
+
+    private static final int MINUTOS_DIA = 24 * 60;
+
+    private final int minutosPorCasilla;
+    private final int casillas;
+    private final long[] palabras;
+
+    public MapaOcupacion() {
+        this(5);
+    }
+
+    public MapaOcupacion(int minutosPorCasilla) {
+        this.minutosPorCasilla = minutosPorCasilla;
+        this.casillas = (MINUTOS_DIA + minutosPorCasilla - 1) / minutosPorCasilla;
+        this.palabras = new long[(casillas + 63) / 64];
+    }
+
+    /**
+     * Mapa con solo [inicio, fin) ocupado; sirve como mascara de una ventana.
+     */
+    public static MapaOcupacion ventana(int minutosPorCasilla, int inicio, int fin) {
+        MapaOcupacion mapa = new MapaOcupacion(minutosPorCasilla);
+        mapa.ocupar(inicio, fin);
+        return mapa;
+    }
+
+    public void ocupar(int inicio, int fin) {
+        int desde = Math.max(0, inicio / minutosPorCasilla);
+        int hasta = Math.min(casillas, (fin + minutosPorCasilla - 1) / minutosPorCasilla);
+        if (desde >= hasta) return;
+        int primera = desde >>> 6;
+        int ultima = (hasta - 1) >>> 6;
+        long mascaraPrimera = -1L << desde;
+        long mascaraUltima = -1L >>> -hasta;
+        if (primera == ultima) {
+            palabras[primera] |= mascaraPrimera & mascaraUltima;
+            return;
+        }
+        palabras[primera] |= mascaraPrimera;
+        for (int i = primera + 1; i < ultima; i++) palabras[i] = -1L;
+        palabras[ultima] |= mascaraUltima;
+    }
+
+    /**
+     * True si alguna casilla ocupada aqui tambien lo esta en el otro mapa, que
+     * debe tener el mismo tamano de casilla.
+     */
+    public boolean seCruzaCon(MapaOcupacion otro) {
+        for (int i = 0; i < palabras.length; i++) {
+            if ((palabras[i] & otro.palabras[i]) != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Huecos libres maximales de al menos duracion minutos dentro de [desde, hasta),
+     * como {inicio, fin} en minutos del dia, hasta un maximo de max.
+     */
+    public List<int[]> huecos(int desde, int hasta, int duracion, int max) {
+        int limite = Math.min(casillas, hasta / minutosPorCasilla);
+        int necesarias = (duracion + minutosPorCasilla - 1) / minutosPorCasilla;
+        List<int[]> huecos = new ArrayList<>();
+        int pos = (desde + minutosPorCasilla - 1) / minutosPorCasilla;
+        while (pos < limite && huecos.size() < max) {
+            int libre = siguiente(pos, false);
+            if (libre >= limite) break;
+            int ocupada = Math.min(siguiente(libre, true), limite);
+            if (ocupada - libre >= necesarias) {
+                huecos.add(new int[] { libre * minutosPorCasilla, Math.min(MINUTOS_DIA, ocupada * minutosPorCasilla) });
+            }
+            pos = ocupada;
+        }
+        return huecos;
+    }
+
+    /**
+     * Primera casilla desde pos que esta ocupada (o libre), o casillas si no hay.
+     */
+    private int siguiente(int pos, boolean ocupada) {
+        int i = pos >>> 6;
+        if (i >= palabras.length) return casillas;
+        long palabra = (ocupada ? palabras[i] : ~palabras[i]) & (-1L << pos);
+        while (palabra == 0) {
+            if (++i == palabras.length) return casillas;
+            palabra = ocupada ? palabras[i] : ~palabras[i];
+        }
+        return Math.min(casillas, i * 64 + Long.numberOfTrailingZeros(palabra));
+    }
+}
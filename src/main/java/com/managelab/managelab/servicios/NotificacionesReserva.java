@@ -0,0 +1,77 @@
+package com.managelab.managelab.servicios;
+
+import java.util.*;
+
+import javax.persistence.*;
+
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+
+/**
+ * Consumidor de eventos que encola un correo al solicitante cada vez que una
+ * reserva PENDIENTE se aprueba, se rechaza o expira. Solo escribe en
+ * NotificacionCorreo; el envio lo hace EnvioNotificaciones en otro hilo.
+ */
+public class NotificacionesReserva implements ConsumidorEventos {
+
+    @Override
+    public String getNombre() {
+        return "notificaciones";
+    }
+
+    @Override
+    public void procesar(EventoReserva evento) {
+        if (evento.getEstadoAnterior() != EstadoReserva.PENDIENTE || evento.getEstadoNuevo() == null
+                || evento.getEstadoNuevo() == EstadoReserva.PENDIENTE) {
+            return;
+        }
+        EntityManager em = XPersistence.getManager();
+        Long yaEncolada = (Long) em
+            .createQuery("SELECT COUNT(n) FROM NotificacionCorreo n WHERE n.eventoId = :evento")
+            .setParameter("evento", evento.getId())
+            .getSingleResult();
+        if (yaEncolada > 0) return;
+
+        Reserva reserva = em.find(Reserva.class, evento.getReservaId());
+        if (reserva == null || reserva.getSolicitante() == null || reserva.getSolicitante().getEmail() == null) {
+            return;
+        }
+
+        NotificacionCorreo notificacion = new NotificacionCorreo();
+        notificacion.setEventoId(evento.getId());
+        notificacion.setDestinatario(reserva.getSolicitante().getEmail());
+        notificacion.setAsunto(asunto(evento.getEstadoNuevo(), reserva));
+        notificacion.setCuerpo(cuerpo(evento.getEstadoNuevo(), reserva));
+        notificacion.setCreada(new Date());
+        notificacion.setProximoIntento(new Date());
+        em.persist(notificacion);
+    }
+
+    private static String asunto(EstadoReserva estado, Reserva reserva) {
+        return "Reserva " + estado.name().toLowerCase() + ": " + reserva.getLaboratorio().getNombre()
+            + " " + ClaveFranja.aLocalDate(reserva.getFecha());
+    }
+
+    private static String cuerpo(EstadoReserva estado, Reserva reserva) {
+        StringBuilder cuerpo = new StringBuilder()
+            .append("Hola ").append(reserva.getSolicitante().getNombre()).append(",\n\n")
+            .append("Su reserva del laboratorio ").append(reserva.getLaboratorio().getNombre())
+            .append(" para el ").append(ClaveFranja.aLocalDate(reserva.getFecha()))
+            .append(" de ").append(reserva.getHoraInicio()).append(" a ").append(reserva.getHoraFin());
+        switch (estado) {
+            case APROBADA:
+                cuerpo.append(" fue APROBADA.");
+                break;
+            case RECHAZADA:
+                cuerpo.append(" fue RECHAZADA.");
+                if (reserva.getMotivoRechazo() != null) {
+                    cuerpo.append("\nMotivo: ").append(reserva.getMotivoRechazo());
+                }
+                break;
+            default:
+                cuerpo.append(" expiro sin ser atendida; puede solicitarla de nuevo.");
+        }
+        return cuerpo.append("\n\nManageLab").toString();
+    }
+}
@@ -0,0 +1,179 @@
+package com.managelab.managelab.servicios;
+
+import java.sql.*;
+import java.time.*;
+import java.time.temporal.*;
+import java.util.*;
+
+import org.hibernate.Session;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Resumen de ocupacion por laboratorio, dia y hora (OcupacionHora).
+ *
+ * Quien cambia una reserva que entra o sale de APROBADA llama a ajustar();
+ * los minutos de la transaccion se acumulan por hora y se escriben justo antes
+ * del commit, en la misma transaccion. Las consultas de los informes leen solo
+ * este resumen, nunca Reserva.
+ */
+public class OcupacionLaboratorios {
+
+    private static final ThreadLocal<Map<List<Object>, Integer>> pendientes = new ThreadLocal<>();
+
+    public static class Fila {
+
+        private final long laboratorioId;
+        private final String laboratorio;
+        private final String periodo;
+        private final long minutos;
+        private final double porcentaje;
+
+        Fila(long laboratorioId, String laboratorio, String periodo, long minutos, long capacidad) {
+            this.laboratorioId = laboratorioId;
+            this.laboratorio = laboratorio;
+            this.periodo = periodo;
+            this.minutos = minutos;
+            this.porcentaje = capacidad <= 0 ? 0 : Math.round(minutos * 1000.0 / capacidad) / 10.0;
+        }
+
+        public long getLaboratorioId() { return laboratorioId; }
+        public String getLaboratorio() { return laboratorio; }
+        /** yyyy-MM-dd HH:00, yyyy-MM-dd o el lunes de la semana, segun la agrupacion. */
+        public String getPeriodo() { return periodo; }
+        public long getMinutos() { return minutos; }
+        public double getPorcentaje() { return porcentaje; }
+    }
+
+    /**
+     * Suma (signo 1) o resta (signo -1) el intervalo [inicio, fin) de una
+     * reserva APROBADA al resumen, repartido por horas.
+     */
+    public static void ajustar(ClaveFranja clave, int inicio, int fin, int signo) {
+        if (fin <= inicio) return;
+        Map<List<Object>, Integer> deltas = pendientes.get();
+        if (deltas == null) {
+            Map<List<Object>, Integer> nuevos = new LinkedHashMap<>();
+            TransaccionActual.antesDeConfirmar(() -> escribir(nuevos));
+            TransaccionActual.alFinalizar(pendientes::remove);
+            pendientes.set(nuevos);
+            deltas = nuevos;
+        }
+        for (int hora = inicio / 60; hora * 60 < fin; hora++) {
+            int minutos = Math.min(fin, (hora + 1) * 60) - Math.max(inicio, hora * 60);
+            deltas.merge(Arrays.asList(clave.getLaboratorioId(), clave.getFecha(), hora), signo * minutos, Integer::sum);
+        }
+    }
+
+    /** Lunes de la semana de la fecha. */
+    public static LocalDate semana(LocalDate fecha) {
+        return fecha.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+
+    /**
+     * Porcentaje de ocupacion por laboratorio y periodo entre desde y hasta.
+     * Por dia y por semana, la capacidad es el horario de apertura
+     * (reservas.horario.apertura / cierre) por los dias del periodo dentro del rango.
+     */
+    public List<Fila> consultar(Long laboratorioId, LocalDate desde, LocalDate hasta, AgrupacionOcupacion agrupacion) {
+        if (desde == null || hasta == null || hasta.isBefore(desde)) {
+            throw new javax.validation.ValidationException("Rango de fechas invalido");
+        }
+        String periodo = agrupacion == AgrupacionOcupacion.SEMANA ? "o.semana"
+            : agrupacion == AgrupacionOcupacion.DIA ? "o.fecha" : "o.fecha, o.hora";
+        String q =
+            "SELECT o.laboratorio.id, o.laboratorio.nombre, " + periodo + ", SUM(o.minutosOcupados) " +
+            "FROM OcupacionHora o WHERE o.fecha BETWEEN :desde AND :hasta " +
+            (laboratorioId == null ? "" : "AND o.laboratorio.id = :laboratorio ") +
+            "GROUP BY o.laboratorio.id, o.laboratorio.nombre, " + periodo + " " +
+            "ORDER BY o.laboratorio.nombre, " + periodo;
+
+        javax.persistence.Query consulta = XPersistence.getManager().createQuery(q)
+            .setParameter("desde", java.sql.Date.valueOf(desde))
+            .setParameter("hasta", java.sql.Date.valueOf(hasta));
+        if (laboratorioId != null) consulta.setParameter("laboratorio", laboratorioId);
+        @SuppressWarnings("unchecked")
+        List<Object[]> datos = consulta.getResultList();
+
+        int apertura = Horas.aMinutos(Configuracion.getString("reservas.horario.apertura", "07:00"), "reservas.horario.apertura");
+        int cierre = Horas.aMinutos(Configuracion.getString("reservas.horario.cierre", "22:00"), "reservas.horario.cierre");
+        long minutosDia = cierre - apertura;
+
+        List<Fila> filas = new ArrayList<>(datos.size());
+        for (Object[] d : datos) {
+            LocalDate fecha = ClaveFranja.aLocalDate((java.util.Date) d[2]);
+            long minutos = ((Number) d[d.length - 1]).longValue();
+            String texto;
+            long capacidad;
+            if (agrupacion == AgrupacionOcupacion.HORA) {
+                texto = fecha + " " + Horas.formato((Integer) d[3] * 60);
+                capacidad = 60;
+            } else if (agrupacion == AgrupacionOcupacion.DIA) {
+                texto = fecha.toString();
+                capacidad = minutosDia;
+            } else {
+                LocalDate primero = fecha.isBefore(desde) ? desde : fecha;
+                LocalDate ultimo = fecha.plusDays(6).isAfter(hasta) ? hasta : fecha.plusDays(6);
+                texto = fecha.toString();
+                capacidad = minutosDia * (ChronoUnit.DAYS.between(primero, ultimo) + 1);
+            }
+            filas.add(new Fila((Long) d[0], (String) d[1], texto, minutos, capacidad));
+        }
+        return filas;
+    }
+
+    private static void escribir(Map<List<Object>, Integer> deltas) {
+        deltas.values().removeIf(minutos -> minutos == 0);
+        if (deltas.isEmpty()) return;
+        XPersistence.getManager().unwrap(Session.class).doWork(con -> {
+            List<List<Object>> claves = new ArrayList<>(deltas.keySet());
+            int[] filas;
+            try (PreparedStatement ps = con.prepareStatement(
+                    "UPDATE OcupacionHora SET minutosOcupados = minutosOcupados + ? " +
+                    "WHERE laboratorio_id = ? AND fecha = ? AND hora = ?")) {
+                for (List<Object> clave : claves) {
+                    ps.setInt(1, deltas.get(clave));
+                    ponerClave(ps, 2, clave);
+                    ps.addBatch();
+                }
+                filas = ps.executeBatch();
+            }
+            for (int i = 0; i < claves.size(); i++) {
+                if (filas[i] == 0) insertar(con, claves.get(i), deltas.get(claves.get(i)));
+            }
+        });
+        deltas.clear();
+    }
+
+    /**
+     * Primera vez que se ocupa esa hora. Si otra transaccion inserto la misma
+     * fila a la vez, la restriccion unica falla y se suma sobre la suya.
+     */
+    private static void insertar(Connection con, List<Object> clave, int minutos) throws SQLException {
+        Savepoint antes = con.setSavepoint();
+        try (PreparedStatement ps = con.prepareStatement(
+                "INSERT INTO OcupacionHora (minutosOcupados, laboratorio_id, fecha, hora, semana) VALUES (?, ?, ?, ?, ?)")) {
+            ps.setInt(1, minutos);
+            ponerClave(ps, 2, clave);
+            ps.setDate(5, java.sql.Date.valueOf(semana((LocalDate) clave.get(1))));
+            ps.executeUpdate();
+        } catch (SQLException ex) {
+            con.rollback(antes);
+            try (PreparedStatement ps = con.prepareStatement(
+                    "UPDATE OcupacionHora SET minutosOcupados = minutosOcupados + ? " +
+                    "WHERE laboratorio_id = ? AND fecha = ? AND hora = ?")) {
+                ps.setInt(1, minutos);
+                ponerClave(ps, 2, clave);
+                if (ps.executeUpdate() == 0) throw ex;
+            }
+        }
+    }
+
+    private static void ponerClave(PreparedStatement ps, int desde, List<Object> clave) throws SQLException {
+        ps.setLong(desde, (Long) clave.get(0));
+        ps.setDate(desde + 1, java.sql.Date.valueOf((LocalDate) clave.get(1)));
+        ps.setInt(desde + 2, (Integer) clave.get(2));
+    }
+}
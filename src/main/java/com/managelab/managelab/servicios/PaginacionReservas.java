@@ -0,0 +1,142 @@
+package com.managelab.managelab.servicios;
+
+import java.time.*;
+import java.util.*;
+
+import javax.persistence.*;
+
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+
+/**
+ * Lista reservas por paginas con keyset sobre (fecha, minutoInicio, id) en
+ * lugar de OFFSET: cada pagina parte del cursor de la anterior, asi la pagina
+ * N cuesta lo mismo que la primera. Usa el indice
+ * (estadoReserva, fecha, minutoInicio, id).
+ */
+public class PaginacionReservas {
+
+    public static final int MAXIMO_POR_PAGINA = 200;
+
+    public static class Fila {
+
+        private final long id;
+        private final String laboratorio;
+        private final String solicitante;
+        private final LocalDate fecha;
+        private final String horaInicio;
+        private final String horaFin;
+        private final int minutoInicio;
+        private final EstadoReserva estado;
+
+        Fila(Object[] datos) {
+            this.id = (Long) datos[0];
+            this.laboratorio = (String) datos[1];
+            this.solicitante = (String) datos[2];
+            this.fecha = ClaveFranja.aLocalDate((java.util.Date) datos[3]);
+            this.horaInicio = (String) datos[4];
+            this.horaFin = (String) datos[5];
+            this.minutoInicio = (Integer) datos[6];
+            this.estado = (EstadoReserva) datos[7];
+        }
+
+        public long getId() { return id; }
+        public String getLaboratorio() { return laboratorio; }
+        public String getSolicitante() { return solicitante; }
+        public LocalDate getFecha() { return fecha; }
+        public String getHoraInicio() { return horaInicio; }
+        public String getHoraFin() { return horaFin; }
+        public EstadoReserva getEstado() { return estado; }
+
+        /** Cursor que apunta a esta fila. */
+        public String getCursor() { return fecha + "," + minutoInicio + "," + id; }
+    }
+
+    public static class Pagina {
+
+        private final List<Fila> filas;
+        private final String anterior;
+        private final String siguiente;
+
+        Pagina(List<Fila> filas, String anterior, String siguiente) {
+            this.filas = filas;
+            this.anterior = anterior;
+            this.siguiente = siguiente;
+        }
+
+        public List<Fila> getFilas() { return filas; }
+        /** Cursor para pedir la pagina anterior, o null si esta es la primera. */
+        public String getAnterior() { return anterior; }
+        /** Cursor para pedir la pagina siguiente, o null si esta es la ultima. */
+        public String getSiguiente() { return siguiente; }
+    }
+
+    /**
+     * @param estado  null para todos los estados
+     * @param desde   primera fecha a listar
+     * @param cursor  cursor devuelto por una pagina anterior, o null para empezar
+     * @param haciaAtras true para ir a la pagina anterior al cursor
+     */
+    public Pagina buscar(EstadoReserva estado, LocalDate desde, String cursor, boolean haciaAtras, int tamano) {
+        if (tamano < 1 || tamano > MAXIMO_POR_PAGINA) {
+            throw new javax.validation.ValidationException(
+                "El tamano de pagina debe estar entre 1 y " + MAXIMO_POR_PAGINA);
+        }
+        Object[] posicion = cursor == null ? null : leerCursor(cursor);
+        String mayor = haciaAtras ? "<" : ">";
+        String orden = haciaAtras ? "DESC" : "ASC";
+
+        StringBuilder q = new StringBuilder(
+            "SELECT r.id, r.laboratorio.nombre, r.solicitante.nombre, r.fecha, r.horaInicio, r.horaFin, " +
+            "r.minutoInicio, r.estadoReserva FROM Reserva r " +
+            "WHERE r.fecha >= :desde AND r.minutoInicio IS NOT NULL");
+        if (estado != null) q.append(" AND r.estadoReserva = :estado");
+        if (posicion != null) {
+            q.append(" AND (r.fecha ").append(mayor).append(" :fecha")
+             .append(" OR (r.fecha = :fecha AND r.minutoInicio ").append(mayor).append(" :minuto)")
+             .append(" OR (r.fecha = :fecha AND r.minutoInicio = :minuto AND r.id ").append(mayor).append(" :id))");
+        }
+        q.append(" ORDER BY r.fecha ").append(orden)
+         .append(", r.minutoInicio ").append(orden)
+         .append(", r.id ").append(orden);
+
+        Query consulta = XPersistence.getManager().createQuery(q.toString())
+            .setParameter("desde", java.sql.Date.valueOf(desde));
+        if (estado != null) consulta.setParameter("estado", estado);
+        if (posicion != null) {
+            consulta.setParameter("fecha", posicion[0])
+                .setParameter("minuto", posicion[1])
+                .setParameter("id", posicion[2]);
+        }
+        @SuppressWarnings("unchecked")
+        List<Object[]> datos = consulta.setMaxResults(tamano + 1).getResultList();
+
+        boolean hayMas = datos.size() > tamano;
+        List<Fila> filas = new ArrayList<>(Math.min(datos.size(), tamano));
+        for (int i = 0; i < datos.size() && i < tamano; i++) filas.add(new Fila(datos.get(i)));
+        if (haciaAtras) Collections.reverse(filas);
+        if (filas.isEmpty()) return new Pagina(filas, null, null);
+
+        String primera = filas.get(0).getCursor();
+        String ultima = filas.get(filas.size() - 1).getCursor();
+        if (haciaAtras) {
+            return new Pagina(filas, hayMas ? primera : null, ultima);
+        }
+        return new Pagina(filas, cursor == null ? null : primera, hayMas ? ultima : null);
+    }
+
+    private static Object[] leerCursor(String cursor) {
+        String[] partes = cursor.split(",");
+        try {
+            if (partes.length != 3) throw new IllegalArgumentException();
+            return new Object[] {
+                java.sql.Date.valueOf(LocalDate.parse(partes[0])),
+                Integer.valueOf(partes[1]),
+                Long.valueOf(partes[2])
+            };
+        } catch (RuntimeException ex) {
+            throw new javax.validation.ValidationException("Cursor invalido: " + cursor);
+        }
+    }
+}
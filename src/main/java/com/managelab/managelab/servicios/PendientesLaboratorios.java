@@ -0,0 +1,153 @@
+package com.managelab.managelab.servicios;
+
+import java.sql.*;
+import java.util.*;
+
+import org.apache.commons.logging.*;
+import org.hibernate.Session;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Contadores de reservas PENDIENTES por laboratorio (PendientesLaboratorio).
+ *
+ * TransicionesReserva llama a ajustar() con cada reserva que entra o sale de
+ * PENDIENTE; los cambios de la transaccion se suman por laboratorio y se
+ * escriben justo antes del commit. Asi la bandeja de un responsable lee un
+ * numero por laboratorio en lugar de contar filas de Reserva.
+ */
+public class PendientesLaboratorios {
+
+    private static final Log log = LogFactory.getLog(PendientesLaboratorios.class);
+
+    private static final ThreadLocal<Map<Long, Integer>> pendientes = new ThreadLocal<>();
+
+    private PendientesLaboratorios() {
+    }
+
+    public static void ajustar(Long laboratorioId, int delta) {
+        if (laboratorioId == null || delta == 0) return;
+        Map<Long, Integer> deltas = pendientes.get();
+        if (deltas == null) {
+            Map<Long, Integer> nuevos = new LinkedHashMap<>();
+            TransaccionActual.antesDeConfirmar(() -> {
+                // Lo que se ajuste despues (promociones de ListaEspera) abre otra tanda
+                pendientes.remove();
+                escribir(nuevos);
+            });
+            TransaccionActual.alFinalizar(pendientes::remove);
+            pendientes.set(nuevos);
+            deltas = nuevos;
+        }
+        deltas.merge(laboratorioId, delta, Integer::sum);
+    }
+
+    /**
+     * Pendientes de cada laboratorio dado; los que no tienen fila valen 0.
+     */
+    public static Map<Long, Integer> contar(Collection<Long> laboratorioIds) {
+        Map<Long, Integer> cuentas = new LinkedHashMap<>();
+        if (laboratorioIds.isEmpty()) return cuentas;
+        for (Long id : laboratorioIds) cuentas.put(id, 0);
+        @SuppressWarnings("unchecked")
+        List<Object[]> filas = XPersistence.getManager()
+            .createQuery("SELECT p.laboratorioId, p.pendientes FROM PendientesLaboratorio p " +
+                "WHERE p.laboratorioId IN :ids")
+            .setParameter("ids", laboratorioIds)
+            .getResultList();
+        for (Object[] f : filas) cuentas.put((Long) f[0], Math.max(0, (Integer) f[1]));
+        return cuentas;
+    }
+
+    /**
+     * Total de pendientes de los laboratorios del usuario dado.
+     */
+    public static int totalDe(String usuario) {
+        int total = 0;
+        for (int cuenta : contar(laboratoriosDe(usuario)).values()) total += cuenta;
+        return total;
+    }
+
+    /**
+     * Laboratorios cuyo responsable es el usuario de OpenXava dado (por su email).
+     */
+    public static List<Long> laboratoriosDe(String usuario) {
+        if (usuario == null) return Collections.emptyList();
+        @SuppressWarnings("unchecked")
+        List<Long> ids = XPersistence.getManager()
+            .createQuery("SELECT l.id FROM Laboratorio l " +
+                "WHERE l.responsable.email = :usuario ORDER BY l.nombre")
+            .setParameter("usuario", usuario.trim())
+            .getResultList();
+        return ids;
+    }
+
+    /**
+     * Rehace todos los contadores desde Reserva. Se llama al arrancar, antes de
+     * que corran las tareas, para corregir cualquier desvio.
+     */
+    public static void recalcular() {
+        try {
+            XPersistence.getManager().createQuery("DELETE FROM PendientesLaboratorio").executeUpdate();
+            int laboratorios = XPersistence.getManager().unwrap(Session.class).doReturningWork(con -> {
+                try (PreparedStatement ps = con.prepareStatement(
+                        "INSERT INTO PendientesLaboratorio (laboratorioId, pendientes) " +
+                        "SELECT laboratorio_id, COUNT(*) FROM Reserva WHERE estadoReserva = ? " +
+                        "GROUP BY laboratorio_id")) {
+                    ps.setString(1, EstadoReserva.PENDIENTE.name());
+                    return ps.executeUpdate();
+                }
+            });
+            XPersistence.commit();
+            log.info("Contadores de pendientes recalculados para " + laboratorios + " laboratorio(s)");
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+
+    private static void escribir(Map<Long, Integer> deltas) {
+        deltas.values().removeIf(delta -> delta == 0);
+        if (deltas.isEmpty()) return;
+        XPersistence.getManager().unwrap(Session.class).doWork(con -> {
+            List<Long> ids = new ArrayList<>(deltas.keySet());
+            int[] filas;
+            try (PreparedStatement ps = con.prepareStatement(
+                    "UPDATE PendientesLaboratorio SET pendientes = pendientes + ? WHERE laboratorioId = ?")) {
+                for (Long id : ids) {
+                    ps.setInt(1, deltas.get(id));
+                    ps.setLong(2, id);
+                    ps.addBatch();
+                }
+                filas = ps.executeBatch();
+            }
+            for (int i = 0; i < ids.size(); i++) {
+                if (filas[i] == 0) insertar(con, ids.get(i), deltas.get(ids.get(i)));
+            }
+        });
+        deltas.clear();
+    }
+
+    /**
+     * Primera pendiente del laboratorio. Si otra transaccion inserto la fila a
+     * la vez, la clave primaria falla y se suma sobre la suya.
+     */
+    private static void insertar(Connection con, long laboratorioId, int delta) throws SQLException {
+        Savepoint antes = con.setSavepoint();
+        try (PreparedStatement ps = con.prepareStatement(
+                "INSERT INTO PendientesLaboratorio (laboratorioId, pendientes) VALUES (?, ?)")) {
+            ps.setLong(1, laboratorioId);
+            ps.setInt(2, delta);
+            ps.executeUpdate();
+        } catch (SQLException ex) {
+            con.rollback(antes);
+            try (PreparedStatement ps = con.prepareStatement(
+                    "UPDATE PendientesLaboratorio SET pendientes = pendientes + ? WHERE laboratorioId = ?")) {
+                ps.setInt(1, delta);
+                ps.setLong(2, laboratorioId);
+                if (ps.executeUpdate() == 0) throw ex;
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.managelab.managelab.servicios;
+
+import java.time.*;
+import java.util.*;
+
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Elige, en cada dia de cada laboratorio, el subconjunto de reservas PENDIENTES
+ * sin traslapes que maximiza la cantidad aprobada o el peso por rol del
+ * solicitante (planificacion de intervalos con pesos).
+ *
+ * Dos consultas para todo el rango: las PENDIENTES ordenadas por hora de fin
+ * y las APROBADAS. Las que chocan con algo ya aprobado quedan fuera; con el
+ * resto, por dia, se resuelve la recurrencia mejor[j] = max(mejor[j-1],
+ * peso[j] + mejor[p(j)]), donde p(j) es la ultima que termina antes de que
+ * empiece j (busqueda binaria). O(n log n) por dia.
+ */
+public class PlanificadorAprobacion {
+
+    public static final int MAXIMO_DIAS = 366;
+
+    /** Plan de un dia de un laboratorio. */
+    public static class Dia {
+
+        private final ClaveFranja clave;
+        private final String laboratorio;
+        private final int pendientes;
+        private final List<Long> aprobar;
+
+        Dia(ClaveFranja clave, String laboratorio, int pendientes, List<Long> aprobar) {
+            this.clave = clave;
+            this.laboratorio = laboratorio;
+            this.pendientes = pendientes;
+            this.aprobar = aprobar;
+        }
+
+        public ClaveFranja getClave() { return clave; }
+        public String getLaboratorio() { return laboratorio; }
+        public int getPendientes() { return pendientes; }
+        public List<Long> getAprobar() { return aprobar; }
+    }
+
+    /** PENDIENTE con lo justo para planificar. */
+    static class Solicitud {
+        long id;
+        int inicio;
+        int fin;
+        long peso;
+
+        Solicitud() {
+        }
+
+        Solicitud(long id, int inicio, int fin, long peso) {
+            this.id = id;
+            this.inicio = inicio;
+            this.fin = fin;
+            this.peso = peso;
+        }
+    }
+
+    /**
+     * @param laboratorioIds laboratorios a planificar; null = todos
+     */
+    public List<Dia> calcular(Collection<Long> laboratorioIds, LocalDate desde, LocalDate hasta, CriterioPlan criterio) {
+        if (desde == null || hasta == null || hasta.isBefore(desde)) {
+            throw new javax.validation.ValidationException("Rango de fechas invalido");
+        }
+        if (desde.plusDays(MAXIMO_DIAS).isBefore(hasta)) {
+            throw new javax.validation.ValidationException("El rango no puede pasar de " + MAXIMO_DIAS + " dias");
+        }
+        if (laboratorioIds != null && laboratorioIds.isEmpty()) return new ArrayList<>();
+        Map<ClaveFranja, IntervalosDia> aprobadas = cargarAprobadas(laboratorioIds, desde, hasta);
+        Map<Rol, Long> pesos = pesos(criterio);
+
+        javax.persistence.Query consulta = XPersistence.getManager()
+            .createQuery(
+                "SELECT r.id, r.laboratorio.id, r.laboratorio.nombre, r.fecha, r.minutoInicio, r.minutoFin, " +
+                "u.rol FROM Reserva r LEFT JOIN r.solicitante u " +
+                "WHERE r.estadoReserva = :pendiente AND r.fecha BETWEEN :desde AND :hasta " +
+                "AND r.minutoInicio IS NOT NULL AND r.minutoFin > r.minutoInicio " +
+                (laboratorioIds == null ? "" : "AND r.laboratorio.id IN :laboratorios ") +
+                "ORDER BY r.laboratorio.id, r.fecha, r.minutoFin, r.id")
+            .setParameter("pendiente", EstadoReserva.PENDIENTE)
+            .setParameter("desde", java.sql.Date.valueOf(desde))
+            .setParameter("hasta", java.sql.Date.valueOf(hasta));
+        if (laboratorioIds != null) consulta.setParameter("laboratorios", laboratorioIds);
+        @SuppressWarnings("unchecked")
+        List<Object[]> filas = consulta.getResultList();
+
+        List<Dia> plan = new ArrayList<>();
+        ClaveFranja actual = null;
+        String nombre = null;
+        int pendientes = 0;
+        List<Solicitud> candidatas = new ArrayList<>();
+        for (Object[] f : filas) {
+            ClaveFranja clave = ClaveFranja.de((Long) f[1], (java.util.Date) f[3]);
+            if (!clave.equals(actual)) {
+                if (actual != null) plan.add(new Dia(actual, nombre, pendientes, elegir(candidatas)));
+                actual = clave;
+                nombre = (String) f[2];
+                pendientes = 0;
+                candidatas = new ArrayList<>();
+            }
+            pendientes++;
+            Solicitud s = new Solicitud();
+            s.id = (Long) f[0];
+            s.inicio = (Integer) f[4];
+            s.fin = (Integer) f[5];
+            s.peso = f[6] == null ? 1L : pesos.get((Rol) f[6]);
+            if (!aprobadas.getOrDefault(clave, IntervalosDia.VACIO).traslapa(s.inicio, s.fin, -1)) candidatas.add(s);
+        }
+        if (actual != null) plan.add(new Dia(actual, nombre, pendientes, elegir(candidatas)));
+        return plan;
+    }
+
+    /**
+     * Mejor subconjunto sin traslapes de candidatas ya ordenadas por fin. A igual
+     * peso total gana el que aprueba mas reservas.
+     */
+    static List<Long> elegir(List<Solicitud> candidatas) {
+        int n = candidatas.size();
+        if (n == 0) return Collections.emptyList();
+        long desempate = n + 1L;
+        int[] fines = new int[n];
+        for (int i = 0; i < n; i++) fines[i] = candidatas.get(i).fin;
+
+        long[] mejor = new long[n + 1];
+        int[] previa = new int[n];
+        for (int j = 0; j < n; j++) {
+            Solicitud s = candidatas.get(j);
+            previa[j] = ultimaQueTerminaAntes(fines, j, s.inicio);
+            long tomando = s.peso * desempate + 1 + mejor[previa[j] + 1];
+            mejor[j + 1] = Math.max(mejor[j], tomando);
+        }
+
+        LinkedList<Long> elegidas = new LinkedList<>();
+        for (int j = n - 1; j >= 0; ) {
+            Solicitud s = candidatas.get(j);
+            if (s.peso * desempate + 1 + mejor[previa[j] + 1] >= mejor[j]) {
+                elegidas.addFirst(s.id);
+                j = previa[j];
+            } else {
+                j--;
+            }
+        }
+        return elegidas;
+    }
+
+    /** Indice de la ultima candidata antes de hasta cuyo fin es <= inicio, o -1. */
+    private static int ultimaQueTerminaAntes(int[] fines, int hasta, int inicio) {
+        int bajo = 0;
+        int alto = hasta - 1;
+        int encontrada = -1;
+        while (bajo <= alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (fines[medio] <= inicio) {
+                encontrada = medio;
+                bajo = medio + 1;
+            } else {
+                alto = medio - 1;
+            }
+        }
+        return encontrada;
+    }
+
+    private static Map<ClaveFranja, IntervalosDia> cargarAprobadas(Collection<Long> laboratorioIds,
+            LocalDate desde, LocalDate hasta) {
+        javax.persistence.Query consulta = XPersistence.getManager()
+            .createQuery(
+                "SELECT r.id, r.laboratorio.id, r.fecha, r.minutoInicio, r.minutoFin FROM Reserva r " +
+                "WHERE r.estadoReserva = :aprobada AND r.fecha BETWEEN :desde AND :hasta " +
+                "AND r.minutoInicio IS NOT NULL " +
+                (laboratorioIds == null ? "" : "AND r.laboratorio.id IN :laboratorios"))
+            .setParameter("aprobada", EstadoReserva.APROBADA)
+            .setParameter("desde", java.sql.Date.valueOf(desde))
+            .setParameter("hasta", java.sql.Date.valueOf(hasta));
+        if (laboratorioIds != null) consulta.setParameter("laboratorios", laboratorioIds);
+        @SuppressWarnings("unchecked")
+        List<Object[]> filas = consulta.getResultList();
+        Map<ClaveFranja, List<long[]>> porDia = new HashMap<>();
+        for (Object[] f : filas) {
+            porDia.computeIfAbsent(ClaveFranja.de((Long) f[1], (java.util.Date) f[2]), k -> new ArrayList<>())
+                .add(new long[] { (Long) f[0], (Integer) f[3], (Integer) f[4] });
+        }
+        Map<ClaveFranja, IntervalosDia> intervalos = new HashMap<>();
+        for (Map.Entry<ClaveFranja, List<long[]>> dia : porDia.entrySet()) {
+            intervalos.put(dia.getKey(), IntervalosDia.de(dia.getValue()));
+        }
+        return intervalos;
+    }
+
+    private static Map<Rol, Long> pesos(CriterioPlan criterio) {
+        Map<Rol, Long> pesos = new EnumMap<>(Rol.class);
+        for (Rol rol : Rol.values()) {
+            pesos.put(rol, criterio == CriterioPlan.ROL
+                ? (long) Math.max(1, Configuracion.getInt("reservas.plan.peso." + rol, 1)) : 1L);
+        }
+        return pesos;
+    }
+}
@@ -0,0 +1,86 @@
+package com.managelab.managelab.servicios;
+
+import java.util.*;
+
+import javax.persistence.*;
+
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+
+/**
+ * Rechaza un conjunto de reservas con un mismo motivo mediante un UPDATE por
+ * bloque de ids. Solo cambian las que siguen PENDIENTES; no se valida
+ * disponibilidad porque rechazar solo libera horario. No confirma la transaccion.
+ */
+public class RechazoMasivo {
+
+    private static final int TAMANO_IN = 500;
+
+    public static class Resultado {
+
+        private final int rechazadas;
+        private final int omitidas;
+
+        Resultado(int rechazadas, int omitidas) {
+            this.rechazadas = rechazadas;
+            this.omitidas = omitidas;
+        }
+
+        public int getRechazadas() { return rechazadas; }
+        public int getOmitidas() { return omitidas; }
+    }
+
+    public Resultado rechazar(Collection<Long> ids, String motivo) {
+        EntityManager em = XPersistence.getManager();
+        List<Long> lista = new ArrayList<>(new LinkedHashSet<>(ids));
+        int rechazadas = 0;
+
+        for (int i = 0; i < lista.size(); i += TAMANO_IN) {
+            List<Long> bloque = lista.subList(i, Math.min(i + TAMANO_IN, lista.size()));
+            List<Long> pendientes = bloquearPendientes(bloque);
+            if (pendientes.isEmpty()) continue;
+            rechazadas += em
+                .createQuery(
+                    "UPDATE Reserva r SET r.estadoReserva = :rechazada, r.motivoRechazo = :motivo, " +
+                    "r.ultimoCambio = :ahora " +
+                    "WHERE r.id IN :ids AND r.estadoReserva = :pendiente")
+                .setParameter("rechazada", EstadoReserva.RECHAZADA)
+                .setParameter("motivo", motivo)
+                .setParameter("ahora", new Date())
+                .setParameter("ids", pendientes)
+                .setParameter("pendiente", EstadoReserva.PENDIENTE)
+                .executeUpdate();
+        }
+        return new Resultado(rechazadas, lista.size() - rechazadas);
+    }
+
+    /**
+     * Bloquea las reservas del bloque que siguen PENDIENTES, para que el UPDATE
+     * cambie exactamente esas. Por cada una deja el evento de cambio de estado y
+     * descarta su dia del indice al confirmar.
+     */
+    private List<Long> bloquearPendientes(List<Long> ids) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> filas = XPersistence.getManager()
+            .createQuery(
+                "SELECT r.id, r.laboratorio.id, r.fecha, r.minutoInicio, r.minutoFin FROM Reserva r " +
+                "WHERE r.id IN :ids AND r.estadoReserva = :pendiente")
+            .setFlushMode(FlushModeType.COMMIT)
+            .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+            .setParameter("ids", ids)
+            .setParameter("pendiente", EstadoReserva.PENDIENTE)
+            .getResultList();
+        IndiceReservas indice = IndiceReservas.getInstance();
+        Set<ClaveFranja> dias = new HashSet<>();
+        List<Long> pendientes = new ArrayList<>(filas.size());
+        for (Object[] fila : filas) {
+            ClaveFranja clave = ClaveFranja.de((Long) fila[1], (Date) fila[2]);
+            pendientes.add((Long) fila[0]);
+            TransicionesReserva.registrar((Long) fila[0], clave, (Integer) fila[3], (Integer) fila[4],
+                EstadoReserva.PENDIENTE, EstadoReserva.RECHAZADA);
+            if (dias.add(clave)) indice.invalidarAlConfirmar(clave);
+        }
+        return pendientes;
+    }
+}
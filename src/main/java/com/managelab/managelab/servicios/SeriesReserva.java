@@ -0,0 +1,272 @@
+package com.managelab.managelab.servicios;
+
+import java.sql.*;
+import java.time.*;
+import java.util.*;
+
+import javax.persistence.*;
+
+import org.hibernate.Session;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Genera, aprueba y rechaza las reservas de una SerieReserva.
+ *
+ * Al generar, bloquea todos los dias de la serie, busca traslapes para todas
+ * las fechas con una sola consulta por rango y, si no hay ninguno, inserta
+ * las reservas con un batch JDBC. Aprobar y rechazar bloquean las PENDIENTES
+ * de la serie y las cambian con un solo UPDATE.
+ * No confirma la transaccion: eso le toca a quien la llama.
+ */
+public class SeriesReserva {
+
+    /** Cuantas fechas en conflicto se muestran en el mensaje de error. */
+    private static final int MAXIMO_CONFLICTOS_MENSAJE = 10;
+
+    /**
+     * Crea una Reserva PENDIENTE por cada fecha de la serie. Si alguna fecha
+     * choca con una reserva APROBADA o PENDIENTE no se crea ninguna.
+     */
+    public int generar(Long serieId) {
+        EntityManager em = XPersistence.getManager();
+        SerieReserva serie = buscar(serieId);
+
+        Long yaGeneradas = (Long) em
+            .createQuery("SELECT COUNT(r) FROM Reserva r WHERE r.serie.id = :serie")
+            .setParameter("serie", serieId)
+            .getSingleResult();
+        Long yaArchivadas = (Long) em
+            .createQuery("SELECT COUNT(r) FROM ReservaHistorica r WHERE r.serie.id = :serie")
+            .setParameter("serie", serieId)
+            .getSingleResult();
+        if (yaGeneradas + yaArchivadas > 0) {
+            throw new javax.validation.ValidationException("La serie ya tiene sus reservas generadas");
+        }
+
+        List<LocalDate> fechas = serie.calcularFechas();
+        if (fechas.isEmpty()) {
+            throw new javax.validation.ValidationException("La serie no tiene ninguna fecha para reservar");
+        }
+        long laboratorioId = serie.getLaboratorio().getId();
+        int inicio = Horas.aMinutos(serie.getHoraInicio(), "horaInicio");
+        int fin = Horas.aMinutos(serie.getHoraFin(), "horaFin");
+
+        List<ClaveFranja> dias = new ArrayList<>(fechas.size());
+        for (LocalDate fecha : fechas) dias.add(new ClaveFranja(laboratorioId, fecha));
+        BloqueoFranjas.bloquear(dias);
+
+        SortedSet<LocalDate> conflictos = buscarConflictos(laboratorioId, fechas, inicio, fin);
+        if (!conflictos.isEmpty()) {
+            throw new javax.validation.ValidationException(mensajeConflictos(conflictos));
+        }
+
+        insertar(serie, fechas, inicio, fin);
+        registrarCreadas(serieId);
+
+        IndiceReservas indice = IndiceReservas.getInstance();
+        for (ClaveFranja dia : dias) indice.invalidarAlConfirmar(dia);
+        return fechas.size();
+    }
+
+    /**
+     * Aprueba las reservas PENDIENTES de la serie en un solo UPDATE. Se omiten
+     * las que ya chocan con una reserva APROBADA del mismo dia.
+     */
+    public int aprobar(Long serieId) {
+        buscar(serieId);
+        BloqueoFranjas.bloquear(invalidarDiasAlConfirmar(serieId));
+        List<Long> ids = bloquearPendientes(serieId,
+            "AND NOT EXISTS (SELECT o.id FROM Reserva o " +
+                "WHERE o.laboratorio = r.laboratorio AND o.fecha = r.fecha " +
+                "AND o.estadoReserva = :aprobada " +
+                "AND o.minutoInicio < r.minutoFin AND o.minutoFin > r.minutoInicio)",
+            EstadoReserva.APROBADA);
+        if (ids.isEmpty()) return 0;
+        return XPersistence.getManager()
+            .createQuery(
+                "UPDATE Reserva r SET r.estadoReserva = :aprobada, r.ultimoCambio = :ahora " +
+                "WHERE r.id IN :ids AND r.estadoReserva = :pendiente")
+            .setParameter("aprobada", EstadoReserva.APROBADA)
+            .setParameter("ahora", new java.util.Date())
+            .setParameter("pendiente", EstadoReserva.PENDIENTE)
+            .setParameter("ids", ids)
+            .executeUpdate();
+    }
+
+    /**
+     * Rechaza con un mismo motivo las reservas PENDIENTES de la serie en un solo UPDATE.
+     */
+    public int rechazar(Long serieId, String motivo) {
+        buscar(serieId);
+        invalidarDiasAlConfirmar(serieId);
+        List<Long> ids = bloquearPendientes(serieId, "", EstadoReserva.RECHAZADA);
+        if (ids.isEmpty()) return 0;
+        return XPersistence.getManager()
+            .createQuery(
+                "UPDATE Reserva r SET r.estadoReserva = :rechazada, r.motivoRechazo = :motivo, " +
+                "r.ultimoCambio = :ahora " +
+                "WHERE r.id IN :ids AND r.estadoReserva = :pendiente")
+            .setParameter("rechazada", EstadoReserva.RECHAZADA)
+            .setParameter("motivo", motivo)
+            .setParameter("ahora", new java.util.Date())
+            .setParameter("ids", ids)
+            .setParameter("pendiente", EstadoReserva.PENDIENTE)
+            .executeUpdate();
+    }
+
+    /**
+     * Bloquea las reservas PENDIENTES de la serie que cumplen la condicion extra
+     * y deja el evento de su paso al estado nuevo (y, si se aprueban, su
+     * ocupacion en el resumen). Una serie abarca como mucho
+     * un anio, asi que los ids caben en un solo IN.
+     */
+    private List<Long> bloquearPendientes(Long serieId, String condicion, EstadoReserva nuevo) {
+        Query consulta = XPersistence.getManager()
+            .createQuery(
+                "SELECT r.id, r.laboratorio.id, r.fecha, r.minutoInicio, r.minutoFin FROM Reserva r " +
+                "WHERE r.serie.id = :serie AND r.estadoReserva = :pendiente " + condicion)
+            .setFlushMode(FlushModeType.COMMIT)
+            .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+            .setParameter("serie", serieId)
+            .setParameter("pendiente", EstadoReserva.PENDIENTE);
+        if (!condicion.isEmpty()) consulta.setParameter("aprobada", EstadoReserva.APROBADA);
+        @SuppressWarnings("unchecked")
+        List<Object[]> filas = consulta.getResultList();
+
+        List<Long> ids = new ArrayList<>(filas.size());
+        for (Object[] fila : filas) {
+            ClaveFranja clave = ClaveFranja.de((Long) fila[1], (java.util.Date) fila[2]);
+            ids.add((Long) fila[0]);
+            TransicionesReserva.registrar((Long) fila[0], clave, (Integer) fila[3], (Integer) fila[4],
+                EstadoReserva.PENDIENTE, nuevo);
+            if (nuevo == EstadoReserva.APROBADA && fila[3] != null && fila[4] != null) {
+                OcupacionLaboratorios.ajustar(clave, (Integer) fila[3], (Integer) fila[4], 1);
+            }
+        }
+        return ids;
+    }
+
+    private SerieReserva buscar(Long serieId) {
+        SerieReserva serie = serieId == null ? null : XPersistence.getManager().find(SerieReserva.class, serieId);
+        if (serie == null) {
+            throw new javax.validation.ValidationException("Serie de reservas no encontrada");
+        }
+        return serie;
+    }
+
+    /**
+     * Todas las fechas de la serie comparten horario, asi que el traslape se
+     * filtra en la consulta; el rango BETWEEN usa el indice por laboratorio y
+     * fecha y las fechas que no son de la serie se descartan en memoria.
+     */
+    private SortedSet<LocalDate> buscarConflictos(long laboratorioId, List<LocalDate> fechas, int inicio, int fin) {
+        @SuppressWarnings("unchecked")
+        List<java.util.Date> filas = XPersistence.getManager()
+            .createQuery(
+                "SELECT r.fecha FROM Reserva r " +
+                "WHERE r.laboratorio.id = :laboratorio " +
+                "AND r.fecha BETWEEN :desde AND :hasta " +
+                "AND r.estadoReserva IN :estados " +
+                "AND r.minutoInicio < :fin AND r.minutoFin > :inicio")
+            .setFlushMode(FlushModeType.COMMIT)
+            .setParameter("laboratorio", laboratorioId)
+            .setParameter("desde", java.sql.Date.valueOf(fechas.get(0)))
+            .setParameter("hasta", java.sql.Date.valueOf(fechas.get(fechas.size() - 1)))
+            .setParameter("estados", Arrays.asList(EstadoReserva.APROBADA, EstadoReserva.PENDIENTE))
+            .setParameter("inicio", inicio)
+            .setParameter("fin", fin)
+            .getResultList();
+
+        Set<LocalDate> deLaSerie = new HashSet<>(fechas);
+        SortedSet<LocalDate> conflictos = new TreeSet<>();
+        for (java.util.Date fecha : filas) {
+            LocalDate dia = ClaveFranja.aLocalDate(fecha);
+            if (deLaSerie.contains(dia)) conflictos.add(dia);
+        }
+        return conflictos;
+    }
+
+    private void insertar(SerieReserva serie, List<LocalDate> fechas, int inicio, int fin) {
+        XPersistence.getManager().unwrap(Session.class).doWork(con -> {
+            try (PreparedStatement ps = con.prepareStatement(
+                    "INSERT INTO Reserva (laboratorio_id, solicitante_id, fecha, horaInicio, horaFin, " +
+                    "minutoInicio, minutoFin, estadoReserva, serie_id, fechaCreacion, ultimoCambio) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                Timestamp ahora = new Timestamp(System.currentTimeMillis());
+                for (LocalDate fecha : fechas) {
+                    ps.setLong(1, serie.getLaboratorio().getId());
+                    ps.setLong(2, serie.getSolicitante().getId());
+                    ps.setDate(3, java.sql.Date.valueOf(fecha));
+                    ps.setString(4, Horas.formato(inicio));
+                    ps.setString(5, Horas.formato(fin));
+                    ps.setInt(6, inicio);
+                    ps.setInt(7, fin);
+                    ps.setString(8, EstadoReserva.PENDIENTE.name());
+                    ps.setLong(9, serie.getId());
+                    ps.setTimestamp(10, ahora);
+                    ps.setTimestamp(11, ahora);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        });
+    }
+
+    /**
+     * El batch JDBC no devuelve los ids; se leen para dejar el evento de cada reserva creada.
+     */
+    private void registrarCreadas(Long serieId) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> filas = XPersistence.getManager()
+            .createQuery("SELECT r.id, r.laboratorio.id, r.fecha FROM Reserva r WHERE r.serie.id = :serie")
+            .setFlushMode(FlushModeType.COMMIT)
+            .setParameter("serie", serieId)
+            .getResultList();
+        for (Object[] fila : filas) {
+            TransicionesReserva.registrar((Long) fila[0], ClaveFranja.de((Long) fila[1], (java.util.Date) fila[2]),
+                null, EstadoReserva.PENDIENTE);
+        }
+    }
+
+    /**
+     * Los UPDATE masivos no pasan por la entidad: se descartan del indice los
+     * dias de la serie. Devuelve esos dias para poder bloquearlos.
+     */
+    private List<ClaveFranja> invalidarDiasAlConfirmar(Long serieId) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> filas = XPersistence.getManager()
+            .createQuery(
+                "SELECT DISTINCT r.laboratorio.id, r.fecha FROM Reserva r " +
+                "WHERE r.serie.id = :serie AND r.estadoReserva = :pendiente")
+            .setFlushMode(FlushModeType.COMMIT)
+            .setParameter("serie", serieId)
+            .setParameter("pendiente", EstadoReserva.PENDIENTE)
+            .getResultList();
+        IndiceReservas indice = IndiceReservas.getInstance();
+        List<ClaveFranja> dias = new ArrayList<>(filas.size());
+        for (Object[] fila : filas) {
+            ClaveFranja clave = ClaveFranja.de((Long) fila[0], (java.util.Date) fila[1]);
+            indice.invalidarAlConfirmar(clave);
+            dias.add(clave);
+        }
+        return dias;
+    }
+
+    private static String mensajeConflictos(SortedSet<LocalDate> conflictos) {
+        StringBuilder mensaje = new StringBuilder("El laboratorio ya tiene reservas (aprobadas o pendientes) en ese horario el ");
+        int i = 0;
+        for (LocalDate fecha : conflictos) {
+            if (i == MAXIMO_CONFLICTOS_MENSAJE) {
+                mensaje.append(" y ").append(conflictos.size() - i).append(" fecha(s) mas");
+                break;
+            }
+            if (i > 0) mensaje.append(", ");
+            mensaje.append(fecha);
+            i++;
+        }
+        return mensaje.append(". No se genero ninguna reserva.").toString();
+    }
+}
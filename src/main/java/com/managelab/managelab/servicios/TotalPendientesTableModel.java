@@ -0,0 +1,25 @@
+package com.managelab.managelab.servicios;
+
+import org.openxava.tab.impl.*;
+
+/**
+ * Lista de la bandeja de aprobacion cuyo total (pie y paginacion) se lee de
+ * los contadores de PendientesLaboratorio en lugar del COUNT(*) sobre Reserva
+ * que lanzaria OpenXava. Solo vale mientras la lista no tiene condiciones del
+ * usuario; TotalPendientesAction lo quita en cuanto las hay.
+ */
+public class TotalPendientesTableModel extends XTableModelDecoratorBase {
+    private static final long serialVersionUID = 1L;
+
+    private final String usuario;
+
+    public TotalPendientesTableModel(IXTableModel impl, String usuario) {
+        super(impl);
+        this.usuario = usuario;
+    }
+
+    @Override
+    public int getTotalSize() {
+        return PendientesLaboratorios.totalDe(usuario);
+    }
+}
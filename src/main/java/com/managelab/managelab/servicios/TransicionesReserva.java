@@ -0,0 +1,102 @@
+package com.managelab.managelab.servicios;
+
+import java.sql.*;
+import java.util.*;
+
+import org.hibernate.Session;
+import org.openxava.jpa.*;
+import org.openxava.util.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * Registra los cambios de estado de las reservas en EventoReserva.
+ *
+ * Los eventos de una transaccion se juntan y se insertan con un batch JDBC
+ * justo antes del commit, dentro de la misma transaccion: si el cambio se
+ * revierte, el evento tambien. Lo usan los callbacks de Reserva y los procesos
+ * que cambian estados con UPDATE masivos.
+ *
+ * Si la reserva deja de ocupar el laboratorio avisa a ListaEspera con el tramo
+ * liberado, que promueve las solicitudes en espera que lo pisan en la misma
+ * transaccion, y
+ * mantiene los contadores de PendientesLaboratorios.
+ */
+public class TransicionesReserva {
+
+    private static final ThreadLocal<List<Object[]>> pendientes = new ThreadLocal<>();
+
+    private TransicionesReserva() {
+    }
+
+    /**
+     * Para transiciones que no liberan horario (altas y aprobaciones); si lo
+     * liberan, ListaEspera revisa el dia entero.
+     */
+    public static void registrar(long reservaId, ClaveFranja clave, EstadoReserva anterior, EstadoReserva nuevo) {
+        registrar(reservaId, clave, null, null, anterior, nuevo);
+    }
+
+    /**
+     * @param inicio   minuto de inicio de la reserva, o null si no se conoce
+     * @param fin      minuto de fin de la reserva, o null si no se conoce
+     * @param anterior null si la reserva es nueva
+     * @param nuevo    null si la reserva se borra
+     */
+    public static void registrar(long reservaId, ClaveFranja clave, Integer inicio, Integer fin,
+            EstadoReserva anterior, EstadoReserva nuevo) {
+        List<Object[]> eventos = pendientes.get();
+        if (eventos == null) {
+            List<Object[]> nuevos = new ArrayList<>();
+            TransaccionActual.antesDeConfirmar(() -> {
+                // Lo que se registre despues (ListaEspera) abre otra tanda
+                pendientes.remove();
+                escribir(nuevos);
+            });
+            TransaccionActual.alFinalizar(pendientes::remove);
+            pendientes.set(nuevos);
+            eventos = nuevos;
+        }
+        eventos.add(new Object[] {
+            reservaId,
+            clave == null ? null : clave.getLaboratorioId(),
+            clave == null ? null : clave.getFechaSql(),
+            anterior,
+            nuevo,
+            Users.getCurrent()
+        });
+        if (ocupa(anterior) && !ocupa(nuevo)) ListaEspera.liberadoAlConfirmar(clave, inicio, fin);
+        if (clave != null && (anterior == EstadoReserva.PENDIENTE) != (nuevo == EstadoReserva.PENDIENTE)) {
+            PendientesLaboratorios.ajustar(clave.getLaboratorioId(), nuevo == EstadoReserva.PENDIENTE ? 1 : -1);
+        }
+    }
+
+    private static boolean ocupa(EstadoReserva estado) {
+        return estado == EstadoReserva.APROBADA || estado == EstadoReserva.PENDIENTE;
+    }
+
+    private static void escribir(List<Object[]> eventos) {
+        if (eventos.isEmpty()) return;
+        XPersistence.getManager().unwrap(Session.class).doWork(con -> {
+            try (PreparedStatement ps = con.prepareStatement(
+                    "INSERT INTO EventoReserva (reservaId, laboratorioId, fecha, estadoAnterior, estadoNuevo, " +
+                    "usuario, momento) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+                Timestamp ahora = new Timestamp(System.currentTimeMillis());
+                for (Object[] e : eventos) {
+                    ps.setLong(1, (Long) e[0]);
+                    ps.setObject(2, e[1], Types.BIGINT);
+                    ps.setDate(3, (java.sql.Date) e[2]);
+                    ps.setString(4, e[3] == null ? null : ((EstadoReserva) e[3]).name());
+                    ps.setString(5, e[4] == null ? null : ((EstadoReserva) e[4]).name());
+                    ps.setString(6, (String) e[5]);
+                    ps.setTimestamp(7, ahora);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        });
+        Metricas.contador("eventos.registrados").add(eventos.size());
+        eventos.clear();
+    }
+}
@@ -0,0 +1,44 @@
+package com.managelab.managelab.util;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Acceso a las propiedades de managelab.properties. Una propiedad de sistema
+ * con el mismo nombre (-Dnombre=valor) tiene prioridad sobre el archivo.
+ */
+public class Configuracion {
+
+    private static Properties propiedades;
+
+    private Configuracion() {
+    }
+
+    public static String getString(String nombre, String porDefecto) {
+        String valor = System.getProperty(nombre, getPropiedades().getProperty(nombre));
+        return valor == null || valor.trim().isEmpty() ? porDefecto : valor.trim();
+    }
+
+    public static int getInt(String nombre, int porDefecto) {
+        String valor = getString(nombre, null);
+        return valor == null ? porDefecto : Integer.parseInt(valor);
+    }
+
+    public static boolean getBoolean(String nombre, boolean porDefecto) {
+        String valor = getString(nombre, null);
+        return valor == null ? porDefecto : Boolean.parseBoolean(valor);
+    }
+
+    private static synchronized Properties getPropiedades() {
+        if (propiedades == null) {
+            Properties p = new Properties();
+            try (InputStream in = Configuracion.class.getResourceAsStream("/managelab.properties")) {
+                if (in != null) p.load(in);
+            } catch (IOException ex) {
+                throw new IllegalStateException("No se pudo leer managelab.properties", ex);
+            }
+            propiedades = p;
+        }
+        return propiedades;
+    }
+}
@@ -0,0 +1,32 @@
+package com.managelab.managelab.util;
+
+/**
+ * Conversion entre horas en texto (HH:mm) y minutos del dia.
+ */
+public class Horas {
+
+    private Horas() {
+    }
+
+    public static int aMinutos(String h, String campo) {
+        try {
+            String v = h.trim();
+            String[] parts = v.split(":");
+            if (parts.length != 2) throw new IllegalArgumentException();
+            int hh = Integer.parseInt(parts[0]);
+            int mm = Integer.parseInt(parts[1]);
+            if (hh < 0 || hh > 23 || mm < 0 || mm > 59) throw new IllegalArgumentException();
+            return hh * 60 + mm;
+        } catch (Exception ex) {
+            throw new javax.validation.ValidationException(
+                "Formato invalido en " + campo + ". Use HH:mm (ej: 09:30)"
+            );
+        }
+    }
+
+    public static String formato(int minutos) {
+        int hh = minutos / 60;
+        int mm = minutos % 60;
+        return String.format("%02d:%02d", hh, mm);
+    }
+}
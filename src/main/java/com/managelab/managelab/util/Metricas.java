@@ -0,0 +1,42 @@
+package com.managelab.managelab.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/**
+ * Registro de contadores y medidores de la aplicacion, expuesto en /api/metricas.
+ *
+ * Los contadores solo crecen; los medidores se leen en el momento de consultar.
+ */
+public class Metricas {
+
+    private static final ConcurrentMap<String, LongAdder> contadores = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LongSupplier> medidores = new ConcurrentHashMap<>();
+
+    private Metricas() {
+    }
+
+    public static LongAdder contador(String nombre) {
+        return contadores.computeIfAbsent(nombre, n -> new LongAdder());
+    }
+
+    public static void medidor(String nombre, LongSupplier valor) {
+        medidores.put(nombre, valor);
+    }
+
+    /**
+     * Valor actual de todas las metricas, ordenadas por nombre.
+     */
+    public static SortedMap<String, Long> leer() {
+        SortedMap<String, Long> valores = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> c : contadores.entrySet()) {
+            valores.put(c.getKey(), c.getValue().sum());
+        }
+        for (Map.Entry<String, LongSupplier> m : medidores.entrySet()) {
+            valores.put(m.getKey(), m.getValue().getAsLong());
+        }
+        return valores;
+    }
+}
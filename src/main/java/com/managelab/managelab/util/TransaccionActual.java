@@ -0,0 +1,102 @@
+package com.managelab.managelab.util;
+
+import java.util.*;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.openxava.jpa.*;
+
+/**
+ * Permite diferir trabajo hasta que la transaccion JPA del hilo actual termine.
+ *
+ * Las acciones registradas con antesDeConfirmar() corren justo antes del commit,
+ * dentro de la misma transaccion; si fallan, la transaccion se revierte.
+ * Las registradas con alConfirmar() solo se ejecutan si la transaccion
+ * se confirma; si se revierte se descartan. Las registradas con alFinalizar()
+ * se ejecutan siempre, despues de las de alConfirmar().
+ */
+public class TransaccionActual {
+
+    private static final ThreadLocal<Acciones> actual = new ThreadLocal<>();
+
+    private TransaccionActual() {
+    }
+
+    public static void antesDeConfirmar(Runnable accion) {
+        acciones().antesDeConfirmar.add(accion);
+    }
+
+    public static void alConfirmar(Runnable accion) {
+        acciones().alConfirmar.add(accion);
+    }
+
+    public static void alFinalizar(Runnable accion) {
+        acciones().alFinalizar.add(accion);
+    }
+
+    /**
+     * Indica si la transaccion actual tiene cambios pendientes de confirmar,
+     * es decir, si lo que ve en la base de datos puede no estar confirmado.
+     */
+    public static boolean tieneCambiosPendientes() {
+        Acciones a = actual.get();
+        return a != null && !a.alConfirmar.isEmpty();
+    }
+
+    private static Acciones acciones() {
+        Transaction transaccion = XPersistence.getManager().unwrap(Session.class).getTransaction();
+        Acciones a = actual.get();
+        if (a == null || a.transaccion != transaccion) {
+            // Una transaccion anterior que nunca notifico su fin (EntityManager cerrado sin commit ni rollback)
+            if (a != null) a.finalizar();
+            a = new Acciones(transaccion);
+            transaccion.registerSynchronization(a);
+            actual.set(a);
+        }
+        return a;
+    }
+
+    private static class Acciones implements Synchronization {
+
+        private final Transaction transaccion;
+        private final List<Runnable> antesDeConfirmar = new ArrayList<>();
+        private final List<Runnable> alConfirmar = new ArrayList<>();
+        private final List<Runnable> alFinalizar = new ArrayList<>();
+
+        Acciones(Transaction transaccion) {
+            this.transaccion = transaccion;
+        }
+
+        @Override
+        public void beforeCompletion() {
+            // Una accion puede registrar otras mientras se recorre la lista
+            for (int i = 0; i < antesDeConfirmar.size(); i++) {
+                antesDeConfirmar.get(i).run();
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (actual.get() == this) actual.remove();
+            try {
+                if (status == Status.STATUS_COMMITTED) {
+                    for (Runnable accion : alConfirmar) {
+                        accion.run();
+                    }
+                }
+            } finally {
+                finalizar();
+            }
+        }
+
+        void finalizar() {
+            for (Runnable accion : alFinalizar) {
+                accion.run();
+            }
+            alFinalizar.clear();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.managelab.managelab.web;
+
+import java.io.*;
+import java.time.*;
+import java.time.format.*;
+
+import javax.servlet.http.*;
+
+import org.openxava.util.*;
+
+/**
+ * Utilidades comunes de los servlets JSON de ManageLab.
+ */
+class Api {
+
+    private Api() {
+    }
+
+    /**
+     * Deja el usuario de la sesion como usuario actual; si no hay sesion iniciada
+     * responde 401 y devuelve false.
+     */
+    static boolean autenticar(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        HttpSession session = request.getSession(false);
+        Object usuario = session == null ? null : session.getAttribute("xava.user");
+        if (usuario == null && session != null) usuario = session.getAttribute("naviox.user");
+        if (usuario == null) {
+            error(response, HttpServletResponse.SC_UNAUTHORIZED, "Debe iniciar sesion");
+            return false;
+        }
+        Users.setCurrent(usuario.toString());
+        return true;
+    }
+
+    static Long getLong(HttpServletRequest request, String nombre) {
+        String valor = request.getParameter(nombre);
+        if (valor == null || valor.trim().isEmpty()) return null;
+        try {
+            return Long.valueOf(valor.trim());
+        } catch (NumberFormatException ex) {
+            throw new javax.validation.ValidationException("Parametro " + nombre + " invalido: " + valor);
+        }
+    }
+
+    static int getInt(HttpServletRequest request, String nombre, int porDefecto) {
+        Long valor = getLong(request, nombre);
+        return valor == null ? porDefecto : valor.intValue();
+    }
+
+    static LocalDate getFecha(HttpServletRequest request, String nombre, LocalDate porDefecto) {
+        String valor = request.getParameter(nombre);
+        if (valor == null || valor.trim().isEmpty()) return porDefecto;
+        try {
+            return LocalDate.parse(valor.trim());
+        } catch (DateTimeParseException ex) {
+            throw new javax.validation.ValidationException("Parametro " + nombre + " invalido, use yyyy-MM-dd: " + valor);
+        }
+    }
+
+    static PrintWriter json(HttpServletResponse response) throws IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        return response.getWriter();
+    }
+
+    static void error(HttpServletResponse response, int status, String mensaje) throws IOException {
+        response.setStatus(status);
+        json(response).print("{\"error\":" + texto(mensaje) + "}");
+    }
+
+    static String texto(String valor) {
+        if (valor == null) return "null";
+        StringBuilder sb = new StringBuilder(valor.length() + 2).append('"');
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
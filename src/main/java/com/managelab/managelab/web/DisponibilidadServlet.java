@@ -0,0 +1,50 @@
+package com.managelab.managelab.web;
+
+import java.io.*;
+import java.time.*;
+import java.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.servicios.*;
+
+/**
+ * GET /api/disponibilidad?laboratorio=ID&amp;desde=yyyy-MM-dd&amp;hasta=yyyy-MM-dd&amp;duracion=60&amp;cantidad=10
+ *
+ * Devuelve los primeros huecos libres del laboratorio en JSON.
+ */
+public class DisponibilidadServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!Api.autenticar(request, response)) return;
+        try {
+            Long laboratorioId = Api.getLong(request, "laboratorio");
+            LocalDate desde = Api.getFecha(request, "desde", LocalDate.now());
+            LocalDate hasta = Api.getFecha(request, "hasta", desde.plusDays(7));
+            int duracion = Api.getInt(request, "duracion", 60);
+            int cantidad = Api.getInt(request, "cantidad", 10);
+
+            List<BuscadorHorarios.Hueco> huecos =
+                new BuscadorHorarios().buscar(laboratorioId, desde, hasta, duracion, cantidad);
+
+            PrintWriter out = Api.json(response);
+            out.print("{\"laboratorio\":" + laboratorioId + ",\"duracion\":" + duracion + ",\"huecos\":[");
+            for (int i = 0; i < huecos.size(); i++) {
+                BuscadorHorarios.Hueco h = huecos.get(i);
+                if (i > 0) out.print(',');
+                out.print("{\"fecha\":\"" + h.getFecha() + "\",\"inicio\":\"" + h.getHoraInicio()
+                    + "\",\"fin\":\"" + h.getHoraFin() + "\"}");
+            }
+            out.print("]}");
+        } catch (javax.validation.ValidationException ex) {
+            Api.error(response, HttpServletResponse.SC_BAD_REQUEST, ex.getMessage());
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+}
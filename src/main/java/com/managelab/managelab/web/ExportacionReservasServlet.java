@@ -0,0 +1,99 @@
+package com.managelab.managelab.web;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.security.*;
+import java.time.*;
+import java.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.servicios.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * GET /api/reservas/exportar?laboratorio=ID&amp;desde=yyyy-MM-dd&amp;hasta=yyyy-MM-dd&amp;formato=ics|csv&amp;estado=APROBADA,PENDIENTE
+ *
+ * Reservas de un laboratorio como calendario ICS (por defecto) o CSV. Responde
+ * 304 si el cliente ya tiene la version actual (If-None-Match / If-Modified-Since).
+ * Por defecto: APROBADAS y PENDIENTES desde hace 30 dias hasta dentro de un ano.
+ */
+public class ExportacionReservasServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!tokenValido(request.getParameter("token")) && !Api.autenticar(request, response)) return;
+        try {
+            boolean csv = "csv".equalsIgnoreCase(request.getParameter("formato"));
+            LocalDate desde = Api.getFecha(request, "desde", LocalDate.now().minusDays(30));
+            LocalDate hasta = Api.getFecha(request, "hasta", desde.plusDays(395));
+            ExportacionReservas exportacion = new ExportacionReservas(
+                Api.getLong(request, "laboratorio"), desde, hasta, leerEstados(request.getParameter("estado")));
+
+            ExportacionReservas.Version version = exportacion.version();
+            response.setHeader("ETag", version.getEtag());
+            if (version.getUltimoCambio() > 0) response.setDateHeader("Last-Modified", version.getUltimoCambio());
+            response.setHeader("Cache-Control", "private, no-cache");
+            if (sinCambios(request, version)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+
+            response.setContentType(csv ? "text/csv" : "text/calendar");
+            response.setCharacterEncoding("UTF-8");
+            response.setHeader("Content-Disposition",
+                "inline; filename=\"reservas-" + desde + "-" + hasta + (csv ? ".csv" : ".ics") + "\"");
+            Writer salida = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+            if (csv) exportacion.escribirCsv(salida);
+            else exportacion.escribirIcs(salida);
+        } catch (javax.validation.ValidationException ex) {
+            Api.error(response, HttpServletResponse.SC_BAD_REQUEST, ex.getMessage());
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+
+    /**
+     * If-None-Match manda; If-Modified-Since solo se mira si no viene ETag,
+     * porque una baja no mueve la fecha del ultimo cambio.
+     */
+    private static boolean sinCambios(HttpServletRequest request, ExportacionReservas.Version version) {
+        String etags = request.getHeader("If-None-Match");
+        if (etags != null) {
+            for (String etag : etags.split(",")) {
+                etag = etag.trim();
+                if (etag.startsWith("W/")) etag = etag.substring(2);
+                if (etag.equals("*") || etag.equals(version.getEtag())) return true;
+            }
+            return false;
+        }
+        long desde = request.getDateHeader("If-Modified-Since");
+        return desde > 0 && version.getUltimoCambio() > 0 && version.getUltimoCambio() / 1000 <= desde / 1000;
+    }
+
+    private static boolean tokenValido(String token) {
+        String esperado = Configuracion.getString("reservas.exportacion.token", "");
+        if (token == null || esperado.trim().isEmpty()) return false;
+        return MessageDigest.isEqual(esperado.trim().getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Set<EstadoReserva> leerEstados(String valor) {
+        if (valor == null || valor.trim().isEmpty()) return EnumSet.of(EstadoReserva.APROBADA, EstadoReserva.PENDIENTE);
+        Set<EstadoReserva> estados = EnumSet.noneOf(EstadoReserva.class);
+        for (String estado : valor.split(",")) {
+            if (estado.trim().isEmpty()) continue;
+            try {
+                estados.add(EstadoReserva.valueOf(estado.trim().toUpperCase()));
+            } catch (IllegalArgumentException ex) {
+                throw new javax.validation.ValidationException("Parametro estado invalido: " + estado);
+            }
+        }
+        if (estados.isEmpty()) throw new javax.validation.ValidationException("Parametro estado vacio");
+        return estados;
+    }
+}
@@ -0,0 +1,47 @@
+package com.managelab.managelab.web;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.servicios.*;
+
+/**
+ * POST /api/reservas/importar con el CSV en el cuerpo (UTF-8 si no se indica otra codificacion).
+ *
+ * Importa las filas validas como reservas PENDIENTES y responde con el CSV de
+ * filas rechazadas; los totales van en las cabeceras X-Leidas, X-Importadas y X-Errores.
+ */
+public class ImportacionReservasServlet extends HttpServlet {
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!Api.autenticar(request, response)) return;
+        if (request.getCharacterEncoding() == null) request.setCharacterEncoding("UTF-8");
+        // El informe se escribe a un temporal: las cabeceras con los totales deben ir antes del cuerpo
+        Path temporal = Files.createTempFile("importacion-reservas", ".csv");
+        try {
+            ImportacionReservas.Resultado resultado;
+            try (Writer informe = Files.newBufferedWriter(temporal, StandardCharsets.UTF_8)) {
+                resultado = new ImportacionReservas().importar(request.getReader(), informe);
+            }
+            response.setContentType("text/csv");
+            response.setCharacterEncoding("UTF-8");
+            response.setHeader("Content-Disposition", "attachment; filename=\"errores-importacion.csv\"");
+            response.setHeader("X-Leidas", String.valueOf(resultado.getLeidas()));
+            response.setHeader("X-Importadas", String.valueOf(resultado.getImportadas()));
+            response.setHeader("X-Errores", String.valueOf(resultado.getErrores()));
+            response.setContentLength((int) Files.size(temporal));
+            Files.copy(temporal, response.getOutputStream());
+        } finally {
+            XPersistence.rollback();
+            Files.deleteIfExists(temporal);
+        }
+    }
+}
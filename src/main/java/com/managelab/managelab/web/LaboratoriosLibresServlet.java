@@ -0,0 +1,57 @@
+package com.managelab.managelab.web;
+
+import java.io.*;
+import java.time.*;
+import java.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.servicios.*;
+import com.managelab.managelab.util.*;
+
+/**
+ * GET /api/laboratorios-libres?fecha=yyyy-MM-dd&amp;inicio=HH:mm&amp;fin=HH:mm&amp;orden=nombre|ubicacion
+ *
+ * Devuelve en JSON los laboratorios activos libres en esa ventana.
+ */
+public class LaboratoriosLibresServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!Api.autenticar(request, response)) return;
+        try {
+            LocalDate fecha = Api.getFecha(request, "fecha", LocalDate.now());
+            String inicio = request.getParameter("inicio");
+            String fin = request.getParameter("fin");
+            if (inicio == null || fin == null) {
+                throw new javax.validation.ValidationException("Indique inicio y fin (HH:mm)");
+            }
+            OrdenLaboratorios orden = "ubicacion".equalsIgnoreCase(request.getParameter("orden"))
+                ? OrdenLaboratorios.UBICACION : OrdenLaboratorios.NOMBRE;
+
+            List<BuscadorLaboratorios.LaboratorioLibre> libres = new BuscadorLaboratorios()
+                .buscarLibres(fecha, Horas.aMinutos(inicio, "inicio"), Horas.aMinutos(fin, "fin"), orden);
+
+            PrintWriter out = Api.json(response);
+            out.print("{\"fecha\":\"" + fecha + "\",\"laboratorios\":[");
+            for (int i = 0; i < libres.size(); i++) {
+                BuscadorLaboratorios.LaboratorioLibre lab = libres.get(i);
+                if (i > 0) out.print(',');
+                out.print("{\"id\":" + lab.getId()
+                    + ",\"codigo\":" + Api.texto(lab.getCodigo())
+                    + ",\"nombre\":" + Api.texto(lab.getNombre())
+                    + ",\"ubicacion\":" + Api.texto(lab.getUbicacion()) + "}");
+            }
+            out.print("]}");
+        } catch (javax.validation.ValidationException ex) {
+            Api.error(response, HttpServletResponse.SC_BAD_REQUEST, ex.getMessage());
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+}
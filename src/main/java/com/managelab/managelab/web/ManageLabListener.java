@@ -0,0 +1,48 @@
+package com.managelab.managelab.web;
+
+import javax.servlet.*;
+
+import org.apache.commons.logging.*;
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.procesos.*;
+import com.managelab.managelab.servicios.*;
+
+/**
+ * Tareas de arranque y parada de la aplicacion.
+ */
+public class ManageLabListener implements ServletContextListener {
+
+    private static final Log log = LogFactory.getLog(ManageLabListener.class);
+
+    @Override
+    public void contextInitialized(ServletContextEvent evento) {
+        try {
+            new MigracionMinutosReserva().ejecutar();
+        } catch (Exception ex) {
+            log.error("No se pudo migrar el horario de las reservas", ex);
+        } finally {
+            XPersistence.reset();
+        }
+        try {
+            new RecalculoOcupacion().ejecutarSiVacio();
+        } catch (Exception ex) {
+            log.error("No se pudo calcular el resumen de ocupacion", ex);
+        } finally {
+            XPersistence.reset();
+        }
+        try {
+            PendientesLaboratorios.recalcular();
+        } catch (Exception ex) {
+            log.error("No se pudieron recalcular los contadores de pendientes", ex);
+        } finally {
+            XPersistence.reset();
+        }
+        TareasProgramadas.iniciar();
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent evento) {
+        TareasProgramadas.detener();
+    }
+}
@@ -0,0 +1,32 @@
+package com.managelab.managelab.web;
+
+import java.io.*;
+import java.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import com.managelab.managelab.util.*;
+
+/**
+ * GET /api/metricas
+ *
+ * Devuelve en JSON los contadores y medidores registrados en Metricas.
+ */
+public class MetricasServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!Api.autenticar(request, response)) return;
+        PrintWriter out = Api.json(response);
+        out.print('{');
+        boolean primera = true;
+        for (Map.Entry<String, Long> metrica : Metricas.leer().entrySet()) {
+            if (!primera) out.print(',');
+            out.print(Api.texto(metrica.getKey()) + ":" + metrica.getValue());
+            primera = false;
+        }
+        out.print('}');
+    }
+}
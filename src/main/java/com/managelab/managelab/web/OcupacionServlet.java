@@ -0,0 +1,63 @@
+package com.managelab.managelab.web;
+
+import java.io.*;
+import java.time.*;
+import java.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import org.openxava.jpa.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.servicios.*;
+
+/**
+ * GET /api/ocupacion?laboratorio=ID&amp;desde=yyyy-MM-dd&amp;hasta=yyyy-MM-dd&amp;agrupacion=hora|dia|semana
+ *
+ * Porcentaje de ocupacion por laboratorio y periodo en JSON, leido del resumen
+ * OcupacionHora. Sin laboratorio devuelve todos.
+ */
+public class OcupacionServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!Api.autenticar(request, response)) return;
+        try {
+            Long laboratorioId = Api.getLong(request, "laboratorio");
+            LocalDate hasta = Api.getFecha(request, "hasta", LocalDate.now());
+            LocalDate desde = Api.getFecha(request, "desde", hasta.minusDays(6));
+            AgrupacionOcupacion agrupacion = leerAgrupacion(request.getParameter("agrupacion"));
+
+            List<OcupacionLaboratorios.Fila> filas =
+                new OcupacionLaboratorios().consultar(laboratorioId, desde, hasta, agrupacion);
+
+            PrintWriter out = Api.json(response);
+            out.print("{\"agrupacion\":\"" + agrupacion + "\",\"ocupacion\":[");
+            for (int i = 0; i < filas.size(); i++) {
+                OcupacionLaboratorios.Fila f = filas.get(i);
+                if (i > 0) out.print(',');
+                out.print("{\"laboratorio\":" + f.getLaboratorioId()
+                    + ",\"nombre\":" + Api.texto(f.getLaboratorio())
+                    + ",\"periodo\":\"" + f.getPeriodo()
+                    + "\",\"minutos\":" + f.getMinutos()
+                    + ",\"porcentaje\":" + f.getPorcentaje() + "}");
+            }
+            out.print("]}");
+        } catch (javax.validation.ValidationException ex) {
+            Api.error(response, HttpServletResponse.SC_BAD_REQUEST, ex.getMessage());
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+
+    private static AgrupacionOcupacion leerAgrupacion(String valor) {
+        if (valor == null || valor.trim().isEmpty()) return AgrupacionOcupacion.DIA;
+        try {
+            return AgrupacionOcupacion.valueOf(valor.trim().toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new javax.validation.ValidationException("Parametro agrupacion invalido: " + valor);
+        }
+    }
+}
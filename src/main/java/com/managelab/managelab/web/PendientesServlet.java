@@ -0,0 +1,43 @@
+package com.managelab.managelab.web;
+
+import java.io.*;
+import java.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import org.openxava.jpa.*;
+import org.openxava.util.*;
+
+import com.managelab.managelab.servicios.*;
+
+/**
+ * GET /api/pendientes
+ *
+ * Reservas PENDIENTES de los laboratorios de los que el usuario es responsable,
+ * en total y por laboratorio, para el contador de la bandeja. Lee los
+ * contadores de PendientesLaboratorio; nunca cuenta filas de Reserva.
+ */
+public class PendientesServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!Api.autenticar(request, response)) return;
+        try {
+            Map<Long, Integer> cuentas =
+                PendientesLaboratorios.contar(PendientesLaboratorios.laboratoriosDe(Users.getCurrent()));
+            int total = 0;
+            StringBuilder laboratorios = new StringBuilder();
+            for (Map.Entry<Long, Integer> c : cuentas.entrySet()) {
+                if (laboratorios.length() > 0) laboratorios.append(',');
+                laboratorios.append("{\"laboratorio\":").append(c.getKey())
+                    .append(",\"pendientes\":").append(c.getValue()).append('}');
+                total += c.getValue();
+            }
+            Api.json(response).print("{\"total\":" + total + ",\"laboratorios\":[" + laboratorios + "]}");
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+}
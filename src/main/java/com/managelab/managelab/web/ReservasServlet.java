@@ -0,0 +1,163 @@
+package com.managelab.managelab.web;
+
+import java.io.*;
+import java.time.*;
+
+import javax.persistence.*;
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import org.openxava.jpa.*;
+import org.openxava.util.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.servicios.*;
+
+/**
+ * GET /api/reservas?estado=PENDIENTE|TODAS&amp;desde=yyyy-MM-dd&amp;tamano=50&amp;despues=CURSOR|antes=CURSOR
+ *
+ * Lista reservas por paginas con keyset en JSON; "siguiente" y "anterior" son
+ * los cursores para moverse. Por defecto: PENDIENTES desde hoy.
+ *
+ * POST /api/reservas con laboratorio=ID&amp;solicitante=ID&amp;fecha=yyyy-MM-dd&amp;horaInicio=HH:mm&amp;horaFin=HH:mm
+ *
+ * Crea una reserva PENDIENTE. Con la cabecera Idempotency-Key (o el parametro
+ * clave) se puede reintentar sin miedo: si el usuario ya creo una reserva con
+ * esa clave se responde 200 con la misma, sin validar ni insertar; si no, 201.
+ * Datos invalidos o un traslape dan 400; si otra transaccion impidio guardar,
+ * 409.
+ */
+public class ReservasServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!Api.autenticar(request, response)) return;
+        try {
+            EstadoReserva estado = leerEstado(request.getParameter("estado"));
+            LocalDate desde = Api.getFecha(request, "desde", LocalDate.now());
+            int tamano = Api.getInt(request, "tamano", 50);
+            String antes = request.getParameter("antes");
+            String cursor = antes != null ? antes : request.getParameter("despues");
+
+            PaginacionReservas.Pagina pagina =
+                new PaginacionReservas().buscar(estado, desde, cursor, antes != null, tamano);
+
+            PrintWriter out = Api.json(response);
+            out.print("{\"reservas\":[");
+            boolean primera = true;
+            for (PaginacionReservas.Fila r : pagina.getFilas()) {
+                if (!primera) out.print(',');
+                out.print("{\"id\":" + r.getId()
+                    + ",\"laboratorio\":" + Api.texto(r.getLaboratorio())
+                    + ",\"solicitante\":" + Api.texto(r.getSolicitante())
+                    + ",\"fecha\":\"" + r.getFecha()
+                    + "\",\"horaInicio\":" + Api.texto(r.getHoraInicio())
+                    + ",\"horaFin\":" + Api.texto(r.getHoraFin())
+                    + ",\"estado\":\"" + r.getEstado() + "\"}");
+                primera = false;
+            }
+            out.print("],\"anterior\":" + Api.texto(pagina.getAnterior())
+                + ",\"siguiente\":" + Api.texto(pagina.getSiguiente()) + "}");
+        } catch (javax.validation.ValidationException ex) {
+            Api.error(response, HttpServletResponse.SC_BAD_REQUEST, ex.getMessage());
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!Api.autenticar(request, response)) return;
+        String clave = request.getHeader("Idempotency-Key");
+        if (clave == null) clave = request.getParameter("clave");
+        try {
+            Long previa = clave == null ? null : Idempotencia.buscar(Users.getCurrent(), clave);
+            if (previa != null) {
+                responder(response, previa, true);
+                return;
+            }
+            Long id;
+            try {
+                id = crear(request, clave);
+            } catch (PersistenceException | javax.validation.ValidationException ex) {
+                // Otra solicitud con la misma clave confirmo primero: falla por la clave o, si
+                // esperaba el bloqueo del horario, por traslape con la reserva que creo esa
+                XPersistence.rollback();
+                previa = clave == null ? null : Idempotencia.buscar(Users.getCurrent(), clave);
+                if (previa != null) {
+                    responder(response, previa, true);
+                    return;
+                }
+                javax.validation.ValidationException invalida = validacion(ex);
+                if (invalida != null) throw invalida;
+                Api.error(response, HttpServletResponse.SC_CONFLICT,
+                    "No se pudo guardar la reserva por un cambio concurrente; vuelva a intentarlo");
+                return;
+            }
+            response.setStatus(HttpServletResponse.SC_CREATED);
+            responder(response, id, false);
+        } catch (javax.validation.ValidationException ex) {
+            Api.error(response, HttpServletResponse.SC_BAD_REQUEST, ex.getMessage());
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+
+    private static Long crear(HttpServletRequest request, String clave) {
+        EntityManager em = XPersistence.getManager();
+        Long laboratorioId = Api.getLong(request, "laboratorio");
+        Long solicitanteId = Api.getLong(request, "solicitante");
+        LocalDate fecha = Api.getFecha(request, "fecha", null);
+        if (laboratorioId == null || solicitanteId == null || fecha == null) {
+            throw new javax.validation.ValidationException("Indique laboratorio, solicitante, fecha, horaInicio y horaFin");
+        }
+        Laboratorio laboratorio = em.find(Laboratorio.class, laboratorioId);
+        Usuario solicitante = em.find(Usuario.class, solicitanteId);
+        if (laboratorio == null) throw new javax.validation.ValidationException("No existe el laboratorio " + laboratorioId);
+        if (solicitante == null) throw new javax.validation.ValidationException("No existe el usuario " + solicitanteId);
+
+        Reserva reserva = new Reserva();
+        reserva.setLaboratorio(laboratorio);
+        reserva.setSolicitante(solicitante);
+        reserva.setFecha(java.sql.Date.valueOf(fecha));
+        reserva.setHoraInicio(request.getParameter("horaInicio"));
+        reserva.setHoraFin(request.getParameter("horaFin"));
+        if (reserva.getHoraInicio() == null || reserva.getHoraFin() == null) {
+            throw new javax.validation.ValidationException("Indique horaInicio y horaFin (HH:mm)");
+        }
+        em.persist(reserva);
+        if (clave != null) Idempotencia.registrar(Users.getCurrent(), clave, reserva.getId());
+        XPersistence.commit();
+        return reserva.getId();
+    }
+
+    /**
+     * La validacion que hizo fallar el alta; al confirmar, JPA la entrega envuelta.
+     */
+    private static javax.validation.ValidationException validacion(RuntimeException ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof javax.validation.ValidationException) return (javax.validation.ValidationException) t;
+        }
+        return null;
+    }
+
+    private static void responder(HttpServletResponse response, Long id, boolean repetida) throws IOException {
+        Reserva reserva = XPersistence.getManager().find(Reserva.class, id);
+        PrintWriter out = Api.json(response);
+        out.print("{\"id\":" + id
+            + ",\"estado\":" + (reserva == null ? "null" : "\"" + reserva.getEstadoReserva() + "\"")
+            + ",\"repetida\":" + repetida + "}");
+    }
+
+    private static EstadoReserva leerEstado(String valor) {
+        if (valor == null || valor.trim().isEmpty()) return EstadoReserva.PENDIENTE;
+        if ("TODAS".equalsIgnoreCase(valor.trim())) return null;
+        try {
+            return EstadoReserva.valueOf(valor.trim().toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new javax.validation.ValidationException("Parametro estado invalido: " + valor);
+        }
+    }
+}
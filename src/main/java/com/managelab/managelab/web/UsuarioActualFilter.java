@@ -0,0 +1,35 @@
+package com.managelab.managelab.web;
+
+import java.io.*;
+
+import javax.servlet.*;
+
+import org.openxava.util.*;
+
+/**
+ * Limpia el usuario actual antes y despues de cada peticion a /api/*. Los
+ * hilos del contenedor se reutilizan y Api.autenticar deja el usuario en el
+ * hilo; sin esto, una peticion sin sesion (por ejemplo la exportacion con
+ * token) correria como el usuario de la peticion anterior.
+ */
+public class UsuarioActualFilter implements Filter {
+
+    @Override
+    public void init(FilterConfig config) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        Users.setCurrent((String) null);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            Users.setCurrent((String) null);
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
@@ -0,0 +1,180 @@
+package com.managelab.managelab.procesos;
+
+import java.net.*;
+import java.util.*;
+
+import javax.mail.*;
+import javax.mail.internet.*;
+
+import org.openxava.jpa.*;
+
+import com.icegreen.greenmail.util.*;
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.pruebas.*;
+
+import junit.framework.*;
+
+/**
+ * EnvioNotificaciones contra un servidor SMTP en el mismo proceso (GreenMail):
+ * agrupa por destinatario, reintenta con espera exponencial y deja FALLIDAS
+ * las que agotan notificaciones.maximoIntentos.
+ */
+public class EnvioNotificacionesTest extends TestCase {
+
+    private static final int ESPERA_SEGUNDOS = 60;
+    private static final int MAXIMO_INTENTOS = 3;
+
+    private GreenMail smtp;
+
+    @Override
+    protected void setUp() throws Exception {
+        BaseDatosPruebas.iniciar();
+        int puerto;
+        try (ServerSocket libre = new ServerSocket(0)) {
+            puerto = libre.getLocalPort();
+        }
+        System.setProperty("notificaciones.smtp.host", "127.0.0.1");
+        System.setProperty("notificaciones.smtp.puerto", String.valueOf(puerto));
+        System.setProperty("notificaciones.esperaSegundos", String.valueOf(ESPERA_SEGUNDOS));
+        System.setProperty("notificaciones.maximoIntentos", String.valueOf(MAXIMO_INTENTOS));
+        EnvioNotificaciones.cerrar();
+        smtp = new GreenMail(new ServerSetup(puerto, "127.0.0.1", "smtp"));
+        smtp.start();
+        borrarNotificaciones();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        smtp.stop();
+        EnvioNotificaciones.cerrar();
+        System.clearProperty("notificaciones.smtp.host");
+        System.clearProperty("notificaciones.smtp.puerto");
+        System.clearProperty("notificaciones.esperaSegundos");
+        System.clearProperty("notificaciones.maximoIntentos");
+    }
+
+    public void testJuntaLosCorreosDeUnDestinatario() throws Exception {
+        Long a1 = crear("Ana@Pruebas.local", "Reserva 1 aprobada");
+        Long a2 = crear("ana@pruebas.local", "Reserva 2 rechazada");
+        Long a3 = crear("ana@pruebas.local ", "Reserva 3 expirada");
+        Long b1 = crear("beto@pruebas.local", "Reserva 4 aprobada");
+
+        new EnvioNotificaciones().ejecutar();
+
+        assertTrue(smtp.waitForIncomingEmail(5000, 2));
+        MimeMessage[] recibidos = smtp.getReceivedMessages();
+        assertEquals("Un mensaje por destinatario", 2, recibidos.length);
+        MimeMessage paraAna = destinadoA(recibidos, "ana@pruebas.local");
+        assertEquals("3 novedades en sus reservas", paraAna.getSubject());
+        String cuerpo = GreenMailUtil.getBody(paraAna);
+        assertTrue(cuerpo.contains("Reserva 1 aprobada"));
+        assertTrue(cuerpo.contains("Reserva 2 rechazada"));
+        assertTrue(cuerpo.contains("Reserva 3 expirada"));
+        assertEquals("Reserva 4 aprobada", destinadoA(recibidos, "beto@pruebas.local").getSubject());
+
+        for (Long id : Arrays.asList(a1, a2, a3, b1)) {
+            assertEquals(EstadoNotificacion.ENVIADA, buscar(id).getEstado());
+        }
+    }
+
+    public void testReintentaConEsperaExponencial() throws Exception {
+        Long id = crear("ana@pruebas.local", "Reserva aprobada");
+        smtp.stop();
+
+        long antes = System.currentTimeMillis();
+        new EnvioNotificaciones().ejecutar();
+        NotificacionCorreo n = buscar(id);
+        assertEquals(EstadoNotificacion.PENDIENTE, n.getEstado());
+        assertEquals(1, n.getIntentos());
+        assertNotNull(n.getUltimoError());
+        assertEsperaDe(ESPERA_SEGUNDOS, antes, n.getProximoIntento());
+
+        vencer(id);
+        antes = System.currentTimeMillis();
+        new EnvioNotificaciones().ejecutar();
+        n = buscar(id);
+        assertEquals(2, n.getIntentos());
+        assertEsperaDe(2 * ESPERA_SEGUNDOS, antes, n.getProximoIntento());
+    }
+
+    public void testQuedaFallidaAlAgotarLosIntentos() throws Exception {
+        Long id = crear("ana@pruebas.local", "Reserva aprobada");
+        smtp.stop();
+
+        for (int intento = 1; intento <= MAXIMO_INTENTOS; intento++) {
+            new EnvioNotificaciones().ejecutar();
+            NotificacionCorreo n = buscar(id);
+            assertEquals(intento, n.getIntentos());
+            assertEquals(intento < MAXIMO_INTENTOS ? EstadoNotificacion.PENDIENTE : EstadoNotificacion.FALLIDA,
+                n.getEstado());
+            vencer(id);
+        }
+
+        // Una FALLIDA no se vuelve a intentar
+        new EnvioNotificaciones().ejecutar();
+        assertEquals(MAXIMO_INTENTOS, buscar(id).getIntentos());
+    }
+
+    private static void assertEsperaDe(int segundos, long antes, Date proximoIntento) {
+        long espera = proximoIntento.getTime() - antes;
+        assertTrue("Espera de " + espera + " ms, se esperaban " + segundos + " s",
+            espera >= (segundos - 1) * 1000L && espera <= (segundos + 5) * 1000L);
+    }
+
+    private static MimeMessage destinadoA(MimeMessage[] mensajes, String destinatario) throws MessagingException {
+        for (MimeMessage mensaje : mensajes) {
+            for (Address a : mensaje.getRecipients(Message.RecipientType.TO)) {
+                if (a.toString().equalsIgnoreCase(destinatario)) return mensaje;
+            }
+        }
+        fail("Ningun mensaje para " + destinatario);
+        return null;
+    }
+
+    private static Long crear(String destinatario, String asunto) {
+        try {
+            NotificacionCorreo n = new NotificacionCorreo();
+            n.setDestinatario(destinatario);
+            n.setAsunto(asunto);
+            n.setCuerpo("Detalle de: " + asunto);
+            n.setCreada(new Date());
+            n.setProximoIntento(new Date(System.currentTimeMillis() - 1000));
+            XPersistence.getManager().persist(n);
+            XPersistence.commit();
+            return n.getId();
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+
+    private static NotificacionCorreo buscar(Long id) {
+        try {
+            return XPersistence.getManager().find(NotificacionCorreo.class, id);
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+
+    /** Adelanta el proximo intento para no esperar la pausa real. */
+    private static void vencer(Long id) {
+        try {
+            XPersistence.getManager()
+                .createQuery("UPDATE NotificacionCorreo n SET n.proximoIntento = :ahora WHERE n.id = :id")
+                .setParameter("ahora", new Date(System.currentTimeMillis() - 1000))
+                .setParameter("id", id)
+                .executeUpdate();
+            XPersistence.commit();
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+
+    private static void borrarNotificaciones() {
+        try {
+            XPersistence.getManager().createQuery("DELETE FROM NotificacionCorreo").executeUpdate();
+            XPersistence.commit();
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.managelab.managelab.pruebas;
+
+import javax.persistence.*;
+
+import org.openxava.jpa.*;
+import org.openxava.util.*;
+
+import com.managelab.managelab.modelo.*;
+
+/**
+ * Base HSQLDB propia para las pruebas (managelab-pruebas) con la unidad de
+ * persistencia junit, y altas de los datos que necesitan.
+ */
+public class BaseDatosPruebas {
+
+    private static boolean iniciada;
+
+    private BaseDatosPruebas() {
+    }
+
+    public static synchronized void iniciar() throws Exception {
+        if (iniciada) return;
+        DBServer.start("managelab-pruebas");
+        XPersistence.setPersistenceUnit("junit");
+        iniciada = true;
+    }
+
+    /** Prefijo distinto en cada llamada, para no chocar con datos de otras pruebas. */
+    public static String prefijo() {
+        return "P" + Long.toString(System.nanoTime(), 36).toUpperCase();
+    }
+
+    /** Laboratorio nuevo ya confirmado. */
+    public static Long crearLaboratorio(String prefijo) {
+        try {
+            Laboratorio lab = new Laboratorio();
+            lab.setCodigo(prefijo);
+            lab.setNombre("Prueba " + prefijo);
+            lab.setUbicacion("Pruebas");
+            XPersistence.getManager().persist(lab);
+            XPersistence.commit();
+            return lab.getId();
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+
+    /** Usuario solicitante nuevo ya confirmado. */
+    public static Long crearUsuario(String prefijo, String email) {
+        try {
+            EntityManager em = XPersistence.getManager();
+            Usuario usuario = new Usuario();
+            usuario.setNombre("Prueba " + prefijo);
+            usuario.setEmail(email);
+            usuario.setPassword("prueba");
+            usuario.setRol(Rol.USUARIO_SOLICITANTE);
+            em.persist(usuario);
+            XPersistence.commit();
+            return usuario.getId();
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+}
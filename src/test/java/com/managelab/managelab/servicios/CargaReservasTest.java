@@ -0,0 +1,251 @@
+package com.managelab.managelab.servicios;
+
+import java.sql.*;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.persistence.*;
+
+import org.apache.commons.logging.*;
+import org.openxava.jpa.*;
+import org.openxava.util.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.procesos.*;
+import com.managelab.managelab.pruebas.*;
+import com.managelab.managelab.util.*;
+
+import junit.framework.*;
+
+/**
+ * Prueba de carga de reservas: varios hilos crean, aprueban y rechazan
+ * reservas a la vez sobre unos pocos laboratorios. Deja en el log el
+ * rendimiento, las latencias p50/p99, los deadlocks y las esperas de bloqueo
+ * agotadas (de la base de datos y de BloqueoFranjas), y falla si quedan
+ * reservas aprobadas traslapadas o hay errores inesperados.
+ *
+ * El tamano se ajusta con propiedades de sistema (por ejemplo
+ * -Dcarga.operacionesPorHilo=500): carga.hilos, carga.laboratorios,
+ * carga.operacionesPorHilo y carga.dias.
+ */
+public class CargaReservasTest extends TestCase {
+
+    private static final Log log = LogFactory.getLog(CargaReservasTest.class);
+
+    private static final String[] OPERACIONES = { "crear", "aprobar", "rechazar" };
+
+    private final int hilos = Integer.getInteger("carga.hilos", 8);
+    private final int laboratorios = Integer.getInteger("carga.laboratorios", 5);
+    private final int operacionesPorHilo = Integer.getInteger("carga.operacionesPorHilo", 100);
+    private final int dias = Integer.getInteger("carga.dias", 5);
+
+    private final List<Long> laboratorioIds = new ArrayList<>();
+    private final List<Long> usuarioIds = new ArrayList<>();
+    /** Reservas creadas que quiza sigan PENDIENTES; aprobar y rechazar toman de aqui. */
+    private final ConcurrentLinkedQueue<Long> pendientes = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong traslapesRechazados = new AtomicLong();
+    private final AtomicLong conflictosAprobacion = new AtomicLong();
+    private final AtomicLong deadlocks = new AtomicLong();
+    private final AtomicLong esperasAgotadas = new AtomicLong();
+    private final AtomicLong esperasFranja = new AtomicLong();
+    private final AtomicLong optimistas = new AtomicLong();
+    private final List<Throwable> errores = Collections.synchronizedList(new ArrayList<>());
+
+    @Override
+    protected void setUp() throws Exception {
+        BaseDatosPruebas.iniciar();
+    }
+
+    public void testCargaConcurrenteSinDobleReserva() throws Exception {
+        preparar();
+
+        // Latencias en nanos por hilo y operacion; se juntan al final
+        long[][][] latencias = new long[hilos][OPERACIONES.length][operacionesPorHilo];
+        int[][] cuantas = new int[hilos][OPERACIONES.length];
+        ExecutorService ejecutor = Executors.newFixedThreadPool(hilos);
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Future<?>> trabajos = new ArrayList<>();
+        for (int h = 0; h < hilos; h++) {
+            final int hilo = h;
+            trabajos.add(ejecutor.submit(() -> {
+                Users.setCurrent("carga" + hilo);
+                ThreadLocalRandom azar = ThreadLocalRandom.current();
+                salida.await();
+                for (int i = 0; i < operacionesPorHilo; i++) {
+                    int sorteo = azar.nextInt(100);
+                    int operacion = sorteo < 60 ? 0 : sorteo < 85 ? 1 : 2;
+                    long comienzo = System.nanoTime();
+                    operar(operacion, azar);
+                    latencias[hilo][operacion][cuantas[hilo][operacion]++] = System.nanoTime() - comienzo;
+                }
+                XPersistence.reset();
+                return null;
+            }));
+        }
+
+        long comienzo = System.nanoTime();
+        salida.countDown();
+        for (Future<?> trabajo : trabajos) trabajo.get(10, TimeUnit.MINUTES);
+        long duracion = System.nanoTime() - comienzo;
+        ejecutor.shutdown();
+
+        long traslapes = contarTraslapes();
+        informar(latencias, cuantas, duracion, traslapes);
+
+        if (!errores.isEmpty()) {
+            AssertionFailedError fallo = new AssertionFailedError(errores.size() + " error(es) inesperado(s)");
+            fallo.initCause(errores.get(0));
+            throw fallo;
+        }
+        assertEquals("Reservas aprobadas traslapadas (ver TraslapeReserva)", 0, traslapes);
+    }
+
+    private void preparar() {
+        String prefijo = BaseDatosPruebas.prefijo();
+        for (int i = 0; i < laboratorios; i++) {
+            laboratorioIds.add(BaseDatosPruebas.crearLaboratorio(prefijo + "-" + i));
+        }
+        for (int i = 0; i < Math.max(hilos, 4); i++) {
+            usuarioIds.add(BaseDatosPruebas.crearUsuario(prefijo + "-" + i,
+                prefijo.toLowerCase() + "-" + i + "@carga.local"));
+        }
+    }
+
+    private void operar(int operacion, ThreadLocalRandom azar) {
+        try {
+            switch (operacion) {
+                case 0: crear(azar); break;
+                case 1: aprobar(azar); break;
+                default: rechazar(azar); break;
+            }
+        } catch (javax.validation.ValidationException ex) {
+            if (String.valueOf(ex.getMessage()).startsWith("El horario esta siendo")) esperasFranja.incrementAndGet();
+            else traslapesRechazados.incrementAndGet();
+        } catch (RuntimeException ex) {
+            clasificar(ex);
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+
+    private void crear(ThreadLocalRandom azar) {
+        EntityManager em = XPersistence.getManager();
+        int inicio = 7 * 60 + azar.nextInt(26) * 30;
+        Reserva reserva = new Reserva();
+        reserva.setLaboratorio(em.getReference(Laboratorio.class, laboratorioIds.get(azar.nextInt(laboratorioIds.size()))));
+        reserva.setSolicitante(em.getReference(Usuario.class, usuarioIds.get(azar.nextInt(usuarioIds.size()))));
+        reserva.setFecha(java.sql.Date.valueOf(LocalDate.now().plusDays(1 + azar.nextInt(dias))));
+        reserva.setHoraInicio(Horas.formato(inicio));
+        reserva.setHoraFin(Horas.formato(inicio + 30 * (2 + azar.nextInt(3))));
+        em.persist(reserva);
+        XPersistence.commit();
+        pendientes.add(reserva.getId());
+    }
+
+    private void aprobar(ThreadLocalRandom azar) {
+        List<Long> ids = tomar(1 + azar.nextInt(3));
+        if (ids.isEmpty()) return;
+        for (AprobacionMasiva.Resultado r : new AprobacionMasiva().aprobar(ids)) {
+            if (!r.isAprobada()) conflictosAprobacion.incrementAndGet();
+        }
+        XPersistence.commit();
+    }
+
+    private void rechazar(ThreadLocalRandom azar) {
+        List<Long> ids = tomar(1 + azar.nextInt(3));
+        if (ids.isEmpty()) return;
+        new RechazoMasivo().rechazar(ids, "Prueba de carga");
+        XPersistence.commit();
+    }
+
+    private List<Long> tomar(int cuantas) {
+        List<Long> ids = new ArrayList<>(cuantas);
+        Long id;
+        while (ids.size() < cuantas && (id = pendientes.poll()) != null) ids.add(id);
+        return ids;
+    }
+
+    private void clasificar(RuntimeException ex) {
+        // El deadlock se busca en toda la cadena: JPA lo suele envolver en una PessimisticLockException
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransactionRollbackException
+                    || String.valueOf(t.getMessage()).toLowerCase().contains("deadlock")) {
+                deadlocks.incrementAndGet();
+                return;
+            }
+        }
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof javax.validation.ValidationException) {
+                // Lanzada al confirmar, envuelta por JPA
+                traslapesRechazados.incrementAndGet();
+                return;
+            }
+            if (t instanceof OptimisticLockException) {
+                optimistas.incrementAndGet();
+                return;
+            }
+            if (t instanceof PessimisticLockException || t instanceof LockTimeoutException
+                    || String.valueOf(t.getMessage()).toLowerCase().contains("lock timeout")) {
+                esperasAgotadas.incrementAndGet();
+                return;
+            }
+        }
+        errores.add(ex);
+    }
+
+    /**
+     * Corre la auditoria de traslapes y cuenta los de los laboratorios de esta prueba.
+     */
+    private long contarTraslapes() {
+        new AuditoriaTraslapes().ejecutar();
+        try {
+            return (Long) XPersistence.getManager()
+                .createQuery("SELECT count(t) FROM TraslapeReserva t WHERE t.laboratorio.id IN :labs")
+                .setParameter("labs", laboratorioIds)
+                .getSingleResult();
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+
+    private void informar(long[][][] latencias, int[][] cuantas, long duracion, long traslapes) {
+        double segundos = duracion / 1e9;
+        int total = hilos * operacionesPorHilo;
+        StringBuilder informe = new StringBuilder();
+        informe.append(String.format("Prueba de carga: %d hilos, %d laboratorios, %d dias, %d operaciones%n",
+            hilos, laboratorios, dias, total));
+        informe.append(String.format("Duracion: %.2f s  Rendimiento: %.1f op/s%n", segundos, total / segundos));
+        for (int op = 0; op < OPERACIONES.length; op++) {
+            int n = 0;
+            for (int h = 0; h < hilos; h++) n += cuantas[h][op];
+            long[] todas = new long[n];
+            int i = 0;
+            for (int h = 0; h < hilos; h++) {
+                System.arraycopy(latencias[h][op], 0, todas, i, cuantas[h][op]);
+                i += cuantas[h][op];
+            }
+            Arrays.sort(todas);
+            informe.append(String.format("  %-9s %6d op  p50 %8.2f ms  p99 %8.2f ms  max %8.2f ms%n",
+                OPERACIONES[op], n, percentil(todas, 50), percentil(todas, 99),
+                n == 0 ? 0 : todas[n - 1] / 1e6));
+        }
+        informe.append("Rechazadas por traslape: ").append(traslapesRechazados.get())
+            .append(", aprobaciones con conflicto: ").append(conflictosAprobacion.get())
+            .append(", deadlocks: ").append(deadlocks.get())
+            .append(", esperas de bloqueo agotadas: ").append(esperasAgotadas.get())
+            .append(", esperas de franja agotadas: ").append(esperasFranja.get())
+            .append(", conflictos optimistas: ").append(optimistas.get())
+            .append(", otros errores: ").append(errores.size())
+            .append(", aprobadas traslapadas: ").append(traslapes);
+        log.info(informe);
+    }
+
+    private static double percentil(long[] ordenadas, int percentil) {
+        if (ordenadas.length == 0) return 0;
+        int i = (int) Math.ceil(percentil / 100.0 * ordenadas.length) - 1;
+        return ordenadas[Math.max(i, 0)] / 1e6;
+    }
+}
@@ -0,0 +1,129 @@
+package com.managelab.managelab.servicios;
+
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Eleccion del plan de un dia (PlanificadorAprobacion.elegir) sin base de
+ * datos: casos a mano y, con pocas solicitudes, comparacion contra probar
+ * todos los subconjuntos. Gana el mayor peso total y, a igual peso, el que
+ * aprueba mas.
+ */
+public class PlanificadorAprobacionTest extends TestCase {
+
+    public void testTodasDisjuntas() {
+        List<Long> elegidas = elegir(
+            s(1, 0, 30, 1), s(2, 30, 60, 1), s(3, 90, 120, 1), s(4, 120, 180, 1));
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), elegidas);
+    }
+
+    public void testAnidadasPorCantidad() {
+        // La de fuera pisa a las dos de dentro: con el mismo peso ganan las dos
+        List<Long> elegidas = elegir(s(1, 0, 100, 1), s(2, 10, 20, 1), s(3, 30, 40, 1));
+        assertEquals(Arrays.asList(2L, 3L), elegidas);
+    }
+
+    public void testAnidadasPorPeso() {
+        List<Long> elegidas = elegir(s(1, 0, 100, 5), s(2, 10, 20, 1), s(3, 30, 40, 1));
+        assertEquals(Collections.singletonList(1L), elegidas);
+    }
+
+    public void testMismoFin() {
+        List<Long> elegidas = elegir(s(1, 0, 60, 1), s(2, 30, 60, 2), s(3, 50, 60, 1), s(4, 60, 90, 1));
+        assertEquals(Arrays.asList(2L, 4L), elegidas);
+    }
+
+    public void testEmpatePesoGanaCantidad() {
+        // {1} y {2, 3} pesan 2; se aprueban las dos
+        List<Long> elegidas = elegir(s(1, 0, 60, 2), s(2, 0, 30, 1), s(3, 30, 60, 1));
+        assertEquals(Arrays.asList(2L, 3L), elegidas);
+    }
+
+    public void testPesoGanaACantidad() {
+        List<Long> elegidas = elegir(s(1, 0, 60, 3), s(2, 0, 30, 1), s(3, 30, 60, 1));
+        assertEquals(Collections.singletonList(1L), elegidas);
+    }
+
+    public void testSinCandidatas() {
+        assertTrue(PlanificadorAprobacion.elegir(new ArrayList<>()).isEmpty());
+    }
+
+    public void testOptimoContraFuerzaBruta() {
+        Random azar = new Random(20261018L);
+        for (int caso = 0; caso < 2000; caso++) {
+            int n = 1 + azar.nextInt(12);
+            List<PlanificadorAprobacion.Solicitud> solicitudes = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                int inicio = azar.nextInt(20) * 15;
+                int fin = inicio + (1 + azar.nextInt(8)) * 15;
+                solicitudes.add(s(i + 1, inicio, fin, 1 + azar.nextInt(4)));
+            }
+            ordenar(solicitudes);
+            List<Long> elegidas = PlanificadorAprobacion.elegir(solicitudes);
+
+            Map<Long, PlanificadorAprobacion.Solicitud> porId = new HashMap<>();
+            for (PlanificadorAprobacion.Solicitud s : solicitudes) porId.put(s.id, s);
+            List<PlanificadorAprobacion.Solicitud> plan = new ArrayList<>();
+            for (Long id : elegidas) plan.add(porId.get(id));
+            assertEquals("Ids repetidos en el caso " + caso, elegidas.size(), new HashSet<>(elegidas).size());
+            assertTrue("Traslape en el caso " + caso + ": " + elegidas, sinTraslapes(plan));
+
+            long[] optimo = fuerzaBruta(solicitudes);
+            assertEquals("Peso del caso " + caso, optimo[0], peso(plan));
+            assertEquals("Cantidad del caso " + caso, optimo[1], plan.size());
+        }
+    }
+
+    /** {peso, cantidad} del mejor subconjunto sin traslapes. */
+    private static long[] fuerzaBruta(List<PlanificadorAprobacion.Solicitud> solicitudes) {
+        long[] mejor = { 0, 0 };
+        int n = solicitudes.size();
+        for (int mascara = 1; mascara < 1 << n; mascara++) {
+            List<PlanificadorAprobacion.Solicitud> subconjunto = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                if ((mascara & 1 << i) != 0) subconjunto.add(solicitudes.get(i));
+            }
+            if (!sinTraslapes(subconjunto)) continue;
+            long peso = peso(subconjunto);
+            if (peso > mejor[0] || peso == mejor[0] && subconjunto.size() > mejor[1]) {
+                mejor[0] = peso;
+                mejor[1] = subconjunto.size();
+            }
+        }
+        return mejor;
+    }
+
+    private static boolean sinTraslapes(List<PlanificadorAprobacion.Solicitud> solicitudes) {
+        for (int i = 0; i < solicitudes.size(); i++) {
+            for (int j = i + 1; j < solicitudes.size(); j++) {
+                PlanificadorAprobacion.Solicitud a = solicitudes.get(i);
+                PlanificadorAprobacion.Solicitud b = solicitudes.get(j);
+                if (a.inicio < b.fin && b.inicio < a.fin) return false;
+            }
+        }
+        return true;
+    }
+
+    private static long peso(List<PlanificadorAprobacion.Solicitud> solicitudes) {
+        long total = 0;
+        for (PlanificadorAprobacion.Solicitud s : solicitudes) total += s.peso;
+        return total;
+    }
+
+    /** elegir() espera las candidatas ordenadas por fin, como las da la consulta. */
+    private static List<Long> elegir(PlanificadorAprobacion.Solicitud... solicitudes) {
+        List<PlanificadorAprobacion.Solicitud> lista = new ArrayList<>(Arrays.asList(solicitudes));
+        ordenar(lista);
+        return PlanificadorAprobacion.elegir(lista);
+    }
+
+    private static void ordenar(List<PlanificadorAprobacion.Solicitud> solicitudes) {
+        solicitudes.sort(Comparator.comparingInt((PlanificadorAprobacion.Solicitud s) -> s.fin)
+            .thenComparingLong(s -> s.id));
+    }
+
+    private static PlanificadorAprobacion.Solicitud s(long id, int inicio, int fin, long peso) {
+        return new PlanificadorAprobacion.Solicitud(id, inicio, fin, peso);
+    }
+}
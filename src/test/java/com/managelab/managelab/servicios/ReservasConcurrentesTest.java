@@ -0,0 +1,182 @@
+package com.managelab.managelab.servicios;
+
+import java.sql.*;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.hibernate.Session;
+import org.openxava.jpa.*;
+import org.openxava.util.*;
+
+import com.managelab.managelab.modelo.*;
+import com.managelab.managelab.pruebas.*;
+import com.managelab.managelab.procesos.*;
+import com.managelab.managelab.util.*;
+
+import junit.framework.*;
+
+/**
+ * Varios hilos aprueban a la vez reservas PENDIENTES que se pisan en un mismo
+ * laboratorio y dia. Las PENDIENTES se insertan por JDBC, sin pasar por la
+ * entidad, porque su validacion nunca dejaria crear dos que se traslapen. De
+ * cada horario debe quedar exactamente una APROBADA. Se prueba con los dos
+ * modos de reservas.bloqueo.
+ */
+public class ReservasConcurrentesTest extends TestCase {
+
+    private static final int HILOS = 8;
+    private static final int HORARIOS = 6;
+    private static final int PENDIENTES_POR_HORARIO = 8;
+
+    @Override
+    protected void setUp() throws Exception {
+        BaseDatosPruebas.iniciar();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        System.clearProperty("reservas.bloqueo");
+    }
+
+    public void testUnaAprobadaPorHorarioConBloqueoEnMemoria() throws Exception {
+        System.setProperty("reservas.bloqueo", "memoria");
+        competir();
+    }
+
+    public void testUnaAprobadaPorHorarioConBloqueoEnBaseDatos() throws Exception {
+        System.setProperty("reservas.bloqueo", "baseDatos");
+        competir();
+    }
+
+    private void competir() throws Exception {
+        String prefijo = BaseDatosPruebas.prefijo();
+        Long laboratorioId = BaseDatosPruebas.crearLaboratorio(prefijo);
+        Long usuarioId = BaseDatosPruebas.crearUsuario(prefijo, prefijo.toLowerCase() + "@pruebas.local");
+        java.sql.Date fecha = java.sql.Date.valueOf(LocalDate.now().plusDays(3));
+        List<List<Long>> horarios = sembrar(laboratorioId, usuarioId, fecha);
+
+        List<Long> todas = new ArrayList<>();
+        for (List<Long> horario : horarios) todas.addAll(horario);
+
+        AtomicInteger aprobadas = new AtomicInteger();
+        AtomicInteger noAprobadas = new AtomicInteger();
+        Queue<Throwable> fallos = new ConcurrentLinkedQueue<>();
+        CountDownLatch salida = new CountDownLatch(1);
+        ExecutorService ejecutor = Executors.newFixedThreadPool(HILOS);
+        List<Future<?>> trabajos = new ArrayList<>();
+        for (int h = 0; h < HILOS; h++) {
+            final int hilo = h;
+            trabajos.add(ejecutor.submit(() -> {
+                Users.setCurrent("prueba" + hilo);
+                List<Long> orden = new ArrayList<>(todas);
+                Collections.shuffle(orden, new Random(hilo));
+                salida.await();
+                for (Long id : orden) {
+                    try {
+                        for (AprobacionMasiva.Resultado r : new AprobacionMasiva().aprobar(Collections.singletonList(id))) {
+                            if (r.isAprobada()) aprobadas.incrementAndGet();
+                            else noAprobadas.incrementAndGet();
+                        }
+                        XPersistence.commit();
+                    } catch (javax.validation.ValidationException ex) {
+                        // Espera del bloqueo de horario agotada: la aprobacion no se hizo
+                        noAprobadas.incrementAndGet();
+                    } catch (Throwable ex) {
+                        fallos.add(ex);
+                    } finally {
+                        XPersistence.rollback();
+                    }
+                }
+                XPersistence.reset();
+                return null;
+            }));
+        }
+        salida.countDown();
+        for (Future<?> trabajo : trabajos) trabajo.get(5, TimeUnit.MINUTES);
+        ejecutor.shutdown();
+
+        if (!fallos.isEmpty()) {
+            AssertionFailedError error = new AssertionFailedError(
+                fallos.size() + " aprobacion(es) fallaron de forma inesperada");
+            error.initCause(fallos.peek());
+            throw error;
+        }
+        assertEquals("Aprobaciones", HORARIOS, aprobadas.get());
+        assertEquals("Intentos sin aprobar", HILOS * todas.size() - HORARIOS, noAprobadas.get());
+        for (int i = 0; i < horarios.size(); i++) {
+            assertEquals("APROBADAS del horario " + i, 1, contarAprobadas(horarios.get(i)));
+        }
+        assertEquals("Reservas aprobadas traslapadas", 0, contarTraslapes(laboratorioId));
+    }
+
+    /**
+     * Inserta por JDBC, para cada horario, PENDIENTES de una hora desplazadas
+     * cinco minutos entre si: todas las de un horario se traslapan.
+     */
+    private static List<List<Long>> sembrar(Long laboratorioId, Long usuarioId, java.sql.Date fecha) {
+        List<List<Long>> horarios = new ArrayList<>();
+        try {
+            XPersistence.getManager().unwrap(Session.class).doWork(con -> {
+                try (PreparedStatement ps = con.prepareStatement(
+                        "INSERT INTO Reserva (laboratorio_id, solicitante_id, fecha, horaInicio, horaFin, " +
+                        "minutoInicio, minutoFin, estadoReserva, fechaCreacion, ultimoCambio) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                        Statement.RETURN_GENERATED_KEYS)) {
+                    Timestamp ahora = new Timestamp(System.currentTimeMillis());
+                    for (int h = 0; h < HORARIOS; h++) {
+                        List<Long> ids = new ArrayList<>();
+                        for (int p = 0; p < PENDIENTES_POR_HORARIO; p++) {
+                            int inicio = 8 * 60 + h * 120 + p * 5;
+                            ps.setLong(1, laboratorioId);
+                            ps.setLong(2, usuarioId);
+                            ps.setDate(3, fecha);
+                            ps.setString(4, Horas.formato(inicio));
+                            ps.setString(5, Horas.formato(inicio + 60));
+                            ps.setInt(6, inicio);
+                            ps.setInt(7, inicio + 60);
+                            ps.setString(8, EstadoReserva.PENDIENTE.name());
+                            ps.setTimestamp(9, ahora);
+                            ps.setTimestamp(10, ahora);
+                            ps.executeUpdate();
+                            try (ResultSet claves = ps.getGeneratedKeys()) {
+                                claves.next();
+                                ids.add(claves.getLong(1));
+                            }
+                        }
+                        horarios.add(ids);
+                    }
+                }
+            });
+            XPersistence.commit();
+            return horarios;
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+
+    private static long contarAprobadas(List<Long> ids) {
+        try {
+            return (Long) XPersistence.getManager()
+                .createQuery("SELECT count(r) FROM Reserva r WHERE r.id IN :ids AND r.estadoReserva = :aprobada")
+                .setParameter("ids", ids)
+                .setParameter("aprobada", EstadoReserva.APROBADA)
+                .getSingleResult();
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+
+    private static long contarTraslapes(Long laboratorioId) {
+        new AuditoriaTraslapes().ejecutar();
+        try {
+            return (Long) XPersistence.getManager()
+                .createQuery("SELECT count(t) FROM TraslapeReserva t WHERE t.laboratorio.id = :lab")
+                .setParameter("lab", laboratorioId)
+                .getSingleResult();
+        } finally {
+            XPersistence.rollback();
+        }
+    }
+}